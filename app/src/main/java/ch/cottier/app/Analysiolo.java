@@ -1,11 +1,17 @@
 package ch.cottier.app;
 
 import ch.cottier.app.Options.TimeFilter;
+import ch.cottier.functionalUtilities.Effect;
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Map;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Tuple;
-import ch.cottier.functionalUtilities.Tuple3;
+import ch.cottier.stockAPI.DataSource;
+import ch.cottier.stockAPI.FetchPolicy;
+import ch.cottier.stockAPI.FilePriceSource;
+import ch.cottier.stockAPI.GrowthChain;
+import ch.cottier.stockAPI.Ingestion;
+import ch.cottier.stockAPI.MappedPriceStore;
 import ch.cottier.stockAPI.Portfolio;
 import ch.cottier.stockAPI.Stock;
 import ch.cottier.stockAPI.Symbol;
@@ -13,7 +19,10 @@ import ch.cottier.stockAPI.Transaction;
 import java.io.File;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.Period;
 import picocli.CommandLine;
 import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
@@ -31,6 +40,31 @@ class Options {
         description = "Ingest transactions inside file located at txFile.")
     File txFile;
 
+    @SuppressWarnings("FieldMayBeFinal")
+    @Option(names = "--batch-size",
+        description = "Number of transactions sent to the database at once while ingesting.")
+    int batchSize = DataSource.DEFAULT_BATCH_SIZE;
+
+    @SuppressWarnings("FieldMayBeFinal")
+    @Option(names = "--ingest-threads",
+        description = "Number of threads parsing large transaction files (above 64 MB).")
+    int ingestThreads = Runtime.getRuntime().availableProcessors();
+
+    @SuppressWarnings("FieldMayBeFinal")
+    @Option(names = "--fetch-threads",
+        description = "Maximum number of price histories downloaded at the same time.")
+    int fetchThreads = FetchPolicy.DEFAULT_CONCURRENCY;
+
+    @SuppressWarnings("FieldMayBeFinal")
+    @Option(names = "--fetch-timeout",
+        description = "Seconds after which downloading a single price history is given up.")
+    long fetchTimeout = FetchPolicy.DEFAULT_TIMEOUT.toSeconds();
+
+    @Option(names = "--prices",
+        description = "Read prices from file pricesFile, with one `symbol,date,close` per line "
+            + "or written by store-prices, instead of downloading them from Yahoo Finance.")
+    File pricesFile;
+
     @Option(names = "--filter", split = ",", arity = "1..*",
         description = "Only consider transactions involving listed ticker symbols.")
     java.util.List<String> symbol;
@@ -59,6 +93,25 @@ class Options {
             description = "Date written as YYYY-MM-DD.")
         LocalDate date;
     }
+
+    @Option(names = "--every",
+        description = "Value the portfolio at regular intervals during the period given with "
+            + "--period: ${COMPLETION-CANDIDATES}.")
+    Frequency every;
+    enum Frequency {
+        DAY(Period.ofDays(1)), WEEK(Period.ofWeeks(1)), MONTH(Period.ofMonths(1)),
+        YEAR(Period.ofYears(1));
+
+        final Period step;
+
+        Frequency(Period step) {
+            this.step = step;
+        }
+    }
+
+    FetchPolicy fetchPolicy() {
+        return FetchPolicy.fetchPolicy(fetchThreads, Duration.ofSeconds(fetchTimeout));
+    }
 }
 
 @SuppressWarnings("unused")
@@ -76,8 +129,20 @@ public class Analysiolo {
         return 0;
     }
 
+    static CommandLine commandLine() {
+        return new CommandLine(new Analysiolo())
+            .setCaseInsensitiveEnumValuesAllowed(true);
+    }
+
+    // Commands are forwarded to the daemon started with serve if there is one, run here otherwise
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new Analysiolo()).execute(args);
+        Result<Integer> forwarded = Daemon.isServe(args)
+            ? Result.empty()
+            : Daemon.forward(Daemon.socket(), Path.of(""), args, System.out, System.err);
+        forwarded.forEachOrFail(ignored -> {}).forEach(err -> System.err.println("Error: " + err));
+        int exitCode = forwarded.isFailure()
+            ? -1
+            : forwarded.getOrElse(() -> commandLine().execute(args));
         System.exit(exitCode);
     }
 
@@ -106,10 +171,10 @@ public class Analysiolo {
         System.out.println("Outputting result");
     }
 
-    static Result<List<Transaction>> list_(Options options) {
-        return Utilities.prepTransactions(options.dbOptions, options.txFile)
-                        .map(txs -> txs.filter(Utilities.symbolComparator(options.symbol)))
-                        .map(txs -> txs.filter(Utilities.timePeriodComparator(options.timeFilter)))
+    static Result<List<Transaction>> list_(Options options, Effect<Ingestion> ingested) {
+        return Utilities.prepTransactions(options.dbOptions, options.txFile, options.batchSize,
+                            options.ingestThreads, Utilities.parseStockFilter(options.symbol),
+                            options.timeFilter, ingested)
                         .mapEmptyCollection();
     }
 
@@ -130,7 +195,7 @@ public class Analysiolo {
             dryRunOutput();
             return 0;
         } else {
-            Result<List<Transaction>> lTx = list_(options);
+            Result<List<Transaction>> lTx = list_(options, System.out::println);
 
             lTx.failIfEmpty("No transaction corresponds to filter criteria")
                .forEachOrFail(l -> l.forEach(System.out::println))
@@ -185,7 +250,7 @@ public class Analysiolo {
         }
 
         if (db != null)
-            System.out.println("Database ignored with command price");
+            System.out.println("Database only used as cache for historical prices with command price");
 
         if (options.txFile != null)
             System.out.println("Transactions ignored with command price");
@@ -208,7 +273,8 @@ public class Analysiolo {
             System.out.println(s);
             return 0;
         } else {
-            Result<String> output = price_(options.timeFilter, options.symbol)
+            Result<String> output = Utilities.withPriceSource(options, () ->
+                    Utilities.withQuoteCache(db, () -> price_(tf, stockFilter)))
                 .map(Utilities::changeFormat)
                 .map(t -> {
                     if (t._1.size() == 1)
@@ -226,22 +292,18 @@ public class Analysiolo {
         }
     }
 
-  static Result<List<Tuple<LocalDate, BigDecimal>>> value_(Options options) {
+  static Result<List<Tuple<LocalDate, BigDecimal>>> value_(Options options,
+      Effect<Ingestion> ingested) {
     Result<List<Transaction>> lTx =
-        Utilities.prepTransactions(options.dbOptions, options.txFile)
-                 .map(txs -> txs.filter(Utilities.symbolComparator(options.symbol)));
-
-    return List.flattenResult(Utilities.parseTimeFilter(options.timeFilter)
-                                       .map(date -> lTx
-                                           .flatMap(txs -> valueOnDateFromTx(txs, date)
-                                               .map(value ->
-                                                   new Tuple<>(date, value)))))
-               .mapEmptyCollection();
-  }
-
-  static Result<BigDecimal> valueOnDateFromTx(final List<Transaction> lTx, final LocalDate date) {
-    return Portfolio.portfolio(lTx.filter(tx -> tx.getDate().compareTo(date) <= 0), date)
-                    .flatMap(pf -> pf.valueOn(date));
+        Utilities.prepTransactions(options.dbOptions, options.txFile, options.batchSize,
+            options.ingestThreads, Utilities.parseStockFilter(options.symbol), null, ingested);
+
+    // all dates are valued in one pass over the transactions, with all prices loaded beforehand
+    return lTx.flatMap(txs -> Utilities.withPriceSource(options, () ->
+                  Utilities.withQuoteCache(options.dbOptions, () ->
+                      Portfolio.valuesOn(txs, Utilities.valuationDates(txs,
+                          Utilities.parseTimeFilter(options.timeFilter), options.every)))))
+              .mapEmptyCollection();
   }
 
   @Command(name = "value", description = "Compute value of portfolio.")
@@ -258,14 +320,24 @@ public class Analysiolo {
       dryRunStockFilter(options.symbol);
 
       List<LocalDate> dates = Utilities.parseTimeFilter(options.timeFilter);
-      dates.forEach(date -> System.out.println("Computing value of portfolio on date " + date));
-      if (dates.size() == 2)
-        System.out.println("Adding change metrics");
+      if (options.every != null && dates.size() == 2)
+        System.out.println("Computing value of portfolio every " + options.every.name()
+            .toLowerCase() + " between " + dates.head() + " and " + dates.tail().head());
+      else {
+        dates.forEach(date -> System.out.println("Computing value of portfolio on date " + date));
+        if (dates.size() == 2)
+          System.out.println("Adding change metrics");
+      }
 
       dryRunOutput();
       return 0;
     } else {
-      Result<List<Tuple<LocalDate, BigDecimal>>> result = value_(options);
+      Result<List<Tuple<LocalDate, BigDecimal>>> result = value_(options, System.out::println);
+      if (options.every != null) {
+        Utilities.printResultTable(result.map(Utilities::seriesTable)
+                                         .map(Utilities::renderTable));
+        return result.isFailure() ? -1 : 0;
+      }
 
       Result<String> renderedTable =
           result.map(l -> l
@@ -293,27 +365,25 @@ public class Analysiolo {
     }
   }
 
-    static Result<Map<Symbol, List<BigDecimal>>> avgCost_(Options options) {
-        Result<Map<Symbol, List<Transaction>>> filteredTxs = list_(options)
-            .map(lTx -> lTx.filter(tx -> tx.getNumShares() > 0))
-            .mapEmptyCollection()
-            .map(lTx -> lTx.groupBy(Transaction::getSymbol));
-
-        return filteredTxs
-            .map(m -> m
-                .mapVal(lTx -> lTx
-                    .foldLeft(new Tuple3<>(new Tuple<>(BigDecimal.ZERO, 0),
-                            lTx.head().getPrice(), lTx.head().getPrice()),
-                        t3 -> tx -> {
-                            BigDecimal min = tx.getPrice().min(t3._2);
-                            BigDecimal max = tx.getPrice().max(t3._3);
-                            BigDecimal totCost = t3._1._1.add(
-                                tx.getPrice().multiply(new BigDecimal(tx.getNumShares())));
-                            int totNum = t3._1._2 + tx.getNumShares();
-                            return new Tuple3<>(new Tuple<>(totCost, totNum), min, max);
-                        })
-                    .mapVal1(t -> t._1.divide(new BigDecimal(t._2), RoundingMode.HALF_UP)))
-                .mapVal(t3 -> List.of(t3._1, t3._2, t3._3)))
+    static Result<Map<Symbol, List<BigDecimal>>> avgCost_(Options options,
+        Effect<Ingestion> ingested) {
+        // folded over the database cursor: total cost and shares bought, and min and max price
+        Result<Tuple<Map<Symbol, Tuple<BigDecimal, Integer>>,
+            Map<Symbol, Tuple<BigDecimal, BigDecimal>>>> totals = Utilities.foldTransactions(
+                options.dbOptions, options.txFile, options.batchSize, options.ingestThreads,
+                Utilities.parseStockFilter(options.symbol), options.timeFilter, ingested,
+                new Tuple<>(Map.empty(), Map.empty()),
+                t -> tx -> tx.getNumShares() <= 0 ? t : new Tuple<>(
+                    Transaction.addCost(t._1, tx),
+                    t._2.put(tx.getSymbol(), t._2.get(tx.getSymbol())
+                        .map(minMax -> new Tuple<>(tx.getPrice().min(minMax._1),
+                            tx.getPrice().max(minMax._2)))
+                        .getOrElse(new Tuple<>(tx.getPrice(), tx.getPrice())))));
+
+        return totals
+            .map(t -> t._1.zipValWith(t._2, ignoreSym -> cost -> minMax -> List.of(
+                cost._1.divide(new BigDecimal(cost._2), RoundingMode.HALF_UP),
+                minMax._1, minMax._2)))
             .mapEmptyCollection();
     }
 
@@ -342,7 +412,7 @@ public class Analysiolo {
             return 0;
         } else {
             List<String> colNames = List.of("avg cost", "min", "max");
-            Result<Map<Symbol, List<BigDecimal>>> result = avgCost_(options);
+            Result<Map<Symbol, List<BigDecimal>>> result = avgCost_(options, System.out::println);
             Result<String> renderedTable = result
                 .map(mapData ->
                     Utilities.applyTheme(colNames, mapData, Utilities.themeSimple()))
@@ -359,8 +429,10 @@ public class Analysiolo {
        complicated way of stating that the returns for each sub-period are multiplied by each
        other.
    */
-  static Result<Tuple<List<LocalDate>, List<BigDecimal>>> twrr_(Options options) {
-    return list_(options).flatMap(lTx -> {
+  static Result<Tuple<List<LocalDate>, List<BigDecimal>>> twrr_(Options options,
+      Effect<Ingestion> ingested) {
+    return list_(options, ingested).flatMap(lTx -> Utilities.withPriceSource(options, () ->
+        Utilities.withQuoteCache(options.dbOptions, () -> {
       List<LocalDate> dates = Utilities.parseTimeFilter(options.timeFilter);
       List<LocalDate> adjDates =
           dates.size() == 1
@@ -369,17 +441,21 @@ public class Analysiolo {
                     ? dates.tail().prepend(lTx.head().getDate())
                     : dates;
 
-      // portfolio value on date1 | value on date2 | TWRR
+      // portfolio value on date1 | value on date2 | TWRR, all from the same preloaded prices.
+      // Before the first transaction the portfolio is worth nothing.
       return Utilities.growthFactors(lTx, adjDates.tail().head())
-                      .map(factors -> factors.reduce(BigDecimal::multiply)
-                                             .subtract(BigDecimal.ONE)
-                                             .setScale(6, RoundingMode.HALF_UP))
-                      .flatMap(twrr -> List.flattenResult(adjDates
-                          .map(valuationDates -> valueOnDateFromTx(lTx, valuationDates)))
-                            .map(pfValuations -> pfValuations.append(twrr))
-                                .map(data ->
-                                    new Tuple<>(adjDates, data)));
-    });
+                      .map(factors -> factors.foldLeft(GrowthChain.growthChain(),
+                                                       chain -> chain::times)
+                                             .rate())
+                      .flatMap(twrr -> Portfolio.valuesOn(lTx, adjDates)
+                          .map(values -> values.foldLeft(Map.<LocalDate, BigDecimal>empty(),
+                              m -> t -> m.put(t._1, t._2)))
+                          .map(values -> adjDates
+                              .map(date -> values.get(date)
+                                  .getOrElse(BigDecimal.ZERO.setScale(6, RoundingMode.HALF_UP)))
+                              .append(twrr))
+                          .map(data -> new Tuple<>(adjDates, data)));
+    })));
   }
 
   @Command(name = "twrr", description = "Compute TWRR over a given period.")
@@ -399,7 +475,8 @@ public class Analysiolo {
       dryRunOutput();
       return 0;
     } else {
-      Result<Tuple<List<LocalDate>, List<BigDecimal>>> result = twrr_(options);
+      Result<Tuple<List<LocalDate>, List<BigDecimal>>> result =
+          twrr_(options, System.out::println);
       result.forEach(System.out::println);
       Result<String> renderedTable =
           result.map(tpl -> tpl._1.map(LocalDate::toString).append("TWRR"))
@@ -413,4 +490,91 @@ public class Analysiolo {
       return result.isFailure() ? -1 : 0;
     }
   }
-}
\ No newline at end of file
+
+  static Result<List<Tuple<LocalDate, BigDecimal>>> series_(Options options,
+      Effect<Ingestion> ingested) {
+    List<LocalDate> dates = Utilities.parseTimeFilter(options.timeFilter);
+    // without a period, the series starts at the first transaction
+    LocalDate from = dates.size() == 2 ? dates.head() : LocalDate.parse("1000-01-01");
+    LocalDate to = dates.size() == 2 ? dates.tail().head() : dates.head();
+    Result<List<Transaction>> lTx =
+        Utilities.prepTransactions(options.dbOptions, options.txFile, options.batchSize,
+            options.ingestThreads, Utilities.parseStockFilter(options.symbol), null, ingested);
+
+    return lTx.flatMap(txs -> Utilities.withPriceSource(options, () ->
+                  Utilities.withQuoteCache(options.dbOptions, () ->
+                      Portfolio.valueSeries(txs, from, to))))
+              .mapEmptyCollection();
+  }
+
+  @Command(name = "series",
+      description = "Output value of portfolio on every trading day as CSV.")
+  int series(@Mixin Options options,
+      @Option(names = {"--output", "-o"}, description = "Write CSV to file output instead of "
+          + "the terminal.") File output) throws Exception {
+    Result<String> dbValidation = Utilities.validationDBOptions(options.dbOptions);
+    if (dbValidation.isFailure()) {
+      dbValidation.forEachOrFail(doNothing -> {}).forEach(System.out::println);
+      return -1;
+    }
+
+    if (options.dryRun) {
+      dbValidation.forEach(System.out::println);
+      dryRunFile(options.txFile);
+      dryRunStockFilter(options.symbol);
+      dryRunTimeFiler(options.timeFilter);
+      System.out.println("Computing value of portfolio on every trading day");
+      if (output != null)
+        System.out.println("Writing CSV to " + output.getCanonicalPath());
+      else
+        dryRunOutput();
+      return 0;
+    } else {
+      // without --output, stdout only gets the CSV
+      Effect<Ingestion> ingested = output == null ? System.err::println : System.out::println;
+      Result<List<Tuple<LocalDate, BigDecimal>>> result = series_(options, ingested)
+          .failIfEmpty("No transaction corresponds to filter criteria");
+      Result<Integer> written = result.flatMap(series -> Utilities.writeCsv(series, output));
+      written.forEachOrFail(ignored -> {}).forEach(err -> System.out.println("Error: " + err));
+      return written.isFailure() ? -1 : 0;
+    }
+  }
+
+  @Command(name = "serve",
+      description = "Keep databases, transactions and prices in memory and answer the other "
+          + "commands, run by the same user, over a Unix-domain socket until stopped.")
+  int serve(
+      @Option(names = "--socket", description = "Socket to listen on, set the environment "
+          + "variable " + Daemon.SOCKET_ENV + " to the same for the other commands. Its "
+          + "directory mustn't be writable by other users. By default inside $XDG_RUNTIME_DIR, "
+          + "or inside a directory only for the user in the directory for temporary files.")
+      File socket,
+      @Option(names = "--max-age", defaultValue = "600", description = "Seconds after which "
+          + "prices are fetched again.") long maxAge) {
+    Result<Daemon> daemon = Daemon.bind(socket == null ? Daemon.socket() : socket.toPath(),
+        Duration.ofSeconds(maxAge));
+    daemon.forEach(d -> {
+      Runtime.getRuntime().addShutdownHook(new Thread(d::close));
+      System.out.println("Listening on " + (socket == null ? Daemon.socket() : socket.toPath()));
+    });
+    Result<Integer> answered = daemon.flatMap(Daemon::serve);
+    answered.forEachOrFail(n -> System.out.println("Answered " + n + " commands"))
+            .forEach(err -> System.out.println("Error: " + err));
+    return answered.isFailure() ? -1 : 0;
+  }
+
+  @Command(name = "store-prices",
+      description = "Convert a price file with one `symbol,date,close` per line into a binary "
+          + "price store, which --prices maps into memory instead of parsing it.")
+  int storePrices(
+      @Option(names = "--prices", required = true, description = "Price file to convert.")
+      File pricesFile,
+      @Option(names = {"--output", "-o"}, required = true, description = "Price store to write.")
+      File output) {
+    Result<Integer> written = FilePriceSource.priceSource(pricesFile.getPath())
+        .flatMap(source -> MappedPriceStore.write(output.toPath(), source.getHistories()));
+    written.forEachOrFail(n -> System.out.println("Stored prices of " + n + " stocks in " + output))
+           .forEach(err -> System.out.println("Error: " + err));
+    return written.isFailure() ? -1 : 0;
+  }
+}
@@ -0,0 +1,384 @@
+package ch.cottier.app;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import ch.cottier.stockAPI.DataSource;
+import ch.cottier.stockAPI.PriceSource;
+import ch.cottier.stockAPI.Stock;
+import ch.cottier.stockAPI.Transaction;
+import ch.cottier.stockAPI.YahooPriceSource;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/** Answers the commands of analysiolo in a JVM that stays up, listening on a Unix-domain socket,
+ * so that the commands don't pay for starting the JVM, opening the database, reading the
+ * transactions and fetching the prices every time.
+ *
+ * <p>Whoever listens on the socket gets the commands, with their paths, and decides what they
+ * output, so the socket has to be in a directory only its user can write to (created with
+ * permissions 0700 if missing), and both the socket and the directory have to belong to the user
+ * running analysiolo. Otherwise the daemon doesn't listen and the client doesn't connect.
+ *
+ * <p>The client sends its working directory and its arguments, the daemon runs them like main
+ * would (paths given as arguments are resolved against the working directory of the client) and
+ * sends back the exit code and everything printed to standard output and error. Commands are run
+ * one after the other on the thread calling serve, as they print to System.out and install their
+ * price source globally.
+ *
+ * <p>In between commands the daemon keeps
+ * <ul>
+ *   <li>the databases used so far open, with a connection of its own,</li>
+ *   <li>the transactions read from them for every filter, until transactions are ingested into
+ *   the same database (nothing else can write to it while it's open here),</li>
+ *   <li>the price files given with --prices, until they are modified, and</li>
+ *   <li>the stocks created by the commands, with their prices, for maxAge.</li>
+ * </ul>
+ */
+final class Daemon {
+  static final String SOCKET_ENV = "ANALYSIOLO_SOCKET";
+  static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(10);
+
+  // Daemon answering commands on the current thread, consulted by Utilities
+  private static volatile Result<Daemon> serving = Result.empty();
+
+  private final ServerSocketChannel server;
+  private final Path socket;
+  private final Duration maxAge;
+  private final java.util.Map<String, DataSource> databases = new HashMap<>();
+  private final java.util.Map<String, java.util.Map<String, List<Transaction>>> transactions =
+      new HashMap<>();
+  private final java.util.Map<Path, Tuple<FileTime, PriceSource>> priceSources = new HashMap<>();
+  private Instant pricesSince = Instant.now();
+
+  private Daemon(ServerSocketChannel server, Path socket, Duration maxAge) {
+    this.server = server;
+    this.socket = socket;
+    this.maxAge = maxAge;
+  }
+
+  /** Socket given with the environment variable ANALYSIOLO_SOCKET, otherwise one inside the
+   * runtime directory of the user (XDG_RUNTIME_DIR), or inside a directory of the user in the
+   * directory for temporary files.
+   */
+  static Path socket() {
+    String path = System.getenv(SOCKET_ENV);
+    if (path != null && !path.isEmpty())
+      return Path.of(path);
+
+    String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+    return runtimeDir != null && !runtimeDir.isEmpty()
+        ? Path.of(runtimeDir, "analysiolo.sock")
+        : Path.of(System.getProperty("java.io.tmpdir"),
+            "analysiolo-" + System.getProperty("user.name"), "analysiolo.sock");
+  }
+
+  /** Whether args run serve, which is never forwarded to a daemon nor run by one.
+   */
+  static boolean isServe(String[] args) {
+    return args.length > 0 && args[0].equals("serve");
+  }
+
+  /** Listens on socket, replacing it if it's left over from a daemon that is gone. Fails if
+   * another daemon is listening on it, or if the socket or its directory could be replaced by
+   * another user.
+   */
+  static Result<Daemon> bind(Path socket, Duration maxAge) {
+    Result<Path> directory = privateDirectory(socket.toAbsolutePath().getParent(), true);
+    if (directory.isFailure())
+      return directory.flatMap(ignored -> Result.empty());
+
+    if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+      Result<Path> owned = ownedByUser(socket);
+      if (owned.isFailure())
+        return owned.flatMap(ignored -> Result.empty());
+
+      try (SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+        return Result.failure("Another daemon is already listening on " + socket);
+      } catch (IOException e) {
+        try {
+          Files.deleteIfExists(socket);
+        } catch (IOException e1) {
+          return Result.failure(e1);
+        }
+      }
+    }
+
+    try {
+      ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      try {
+        server.bind(UnixDomainSocketAddress.of(socket));
+      } catch (IOException e) {
+        server.close();
+        throw e;
+      }
+      return Result.success(new Daemon(server, socket, maxAge));
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  static Result<Daemon> serving() {
+    return serving;
+  }
+
+  /** Answers commands until close is called, then forgets everything kept in memory. Returns the
+   * number of commands answered.
+   */
+  Result<Integer> serve() {
+    serving = Result.success(this);
+    int answered = 0;
+    try {
+      while (true) {
+        try (SocketChannel client = server.accept()) {
+          answer(client);
+          answered++;
+        } catch (ClosedChannelException e) {
+          return Result.success(answered);
+        } catch (EOFException e) {
+          // the client went away without sending a command, e.g. bind checking for a daemon
+        } catch (IOException e) {
+          // only this client is affected, e.g. it went away before the answer was sent
+          System.err.println("Error: " + e.getMessage());
+        }
+      }
+    } finally {
+      serving = Result.empty();
+      databases.values().forEach(DataSource::close);
+      databases.clear();
+      transactions.clear();
+      priceSources.clear();
+      Stock.useDefaultPriceSource();
+    }
+  }
+
+  /** Stops listening, a command being answered is still finished.
+   */
+  void close() {
+    try {
+      server.close();
+      Files.deleteIfExists(socket);
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+    }
+  }
+
+  /** Sends the command to the daemon listening on socket and writes its output to out and err.
+   * Returns the exit code, or empty if no daemon is listening. Fails if the daemon went away
+   * while answering, then the command may or may not have run.
+   */
+  static Result<Integer> forward(Path socket, Path cwd, String[] args, OutputStream out,
+      OutputStream err) {
+    if (!Files.exists(socket, LinkOption.NOFOLLOW_LINKS))
+      return Result.empty();
+
+    Result<Path> trusted = privateDirectory(socket.toAbsolutePath().getParent(), false)
+        .flatMap(ignored -> ownedByUser(socket));
+    if (trusted.isFailure())
+      return trusted.flatMap(ignored -> Result.empty());
+
+    SocketChannel channel;
+    try {
+      channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+    } catch (ConnectException e) {
+      return Result.empty();
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+
+    try (channel) {
+      DataOutputStream request =
+          new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      request.writeUTF(cwd.toAbsolutePath().toString());
+      request.writeInt(args.length);
+      for (String arg : args)
+        request.writeUTF(arg);
+      request.flush();
+
+      DataInputStream answer = new DataInputStream(Channels.newInputStream(channel));
+      int exitCode = answer.readInt();
+      out.write(answer.readNBytes(answer.readInt()));
+      err.write(answer.readNBytes(answer.readInt()));
+      out.flush();
+      err.flush();
+      return Result.success(exitCode);
+    } catch (IOException e) {
+      return Result.failure("Daemon on " + socket + " didn't answer: " + e.getMessage());
+    }
+  }
+
+  private void answer(SocketChannel client) throws IOException {
+    DataInputStream request = new DataInputStream(Channels.newInputStream(client));
+    Path cwd = Path.of(request.readUTF());
+    String[] args = new String[request.readInt()];
+    for (int i = 0; i < args.length; i++)
+      args[i] = request.readUTF();
+
+    if (isServe(args)) {
+      reply(client, -1, new byte[0],
+          "Error: serve can't be run by a daemon\n".getBytes(Charset.defaultCharset()));
+      return;
+    }
+
+    if (Instant.now().isAfter(pricesSince.plus(maxAge))) {
+      Stock.clearRegistry();
+      pricesSince = Instant.now();
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    int exitCode;
+    try (PrintStream o = new PrintStream(out, true, Charset.defaultCharset());
+         PrintStream e = new PrintStream(err, true, Charset.defaultCharset())) {
+      System.setOut(o);
+      System.setErr(e);
+      exitCode = Analysiolo.commandLine()
+          .registerConverter(File.class, path -> cwd.resolve(path).toFile())
+          .setOut(new PrintWriter(o, true))
+          .setErr(new PrintWriter(e, true))
+          .execute(args);
+    } finally {
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+
+    reply(client, exitCode, out.toByteArray(), err.toByteArray());
+  }
+
+  private static void reply(SocketChannel client, int exitCode, byte[] out, byte[] err)
+      throws IOException {
+    DataOutputStream answer =
+        new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+    answer.writeInt(exitCode);
+    answer.writeInt(out.length);
+    answer.write(out);
+    answer.writeInt(err.length);
+    answer.write(err);
+    answer.flush();
+  }
+
+  // The directory of the socket has to belong to the user and mustn't be writable by anybody
+  // else, who could replace the socket. If create, a missing directory is created for the user
+  // only.
+  private static Result<Path> privateDirectory(Path directory, boolean create) {
+    try {
+      if (create && Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+        Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(
+            PosixFilePermissions.fromString("rwx------")));
+        return Result.success(directory);
+      }
+      if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS))
+        return Result.failure(directory + " isn't a directory");
+
+      PosixFileAttributeView view = Files.getFileAttributeView(directory,
+          PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+      if (view != null) {
+        Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+            || permissions.contains(PosixFilePermission.OTHERS_WRITE))
+          return Result.failure(directory + " is writable by other users, refusing to use the "
+              + "socket inside it");
+      }
+      return ownedByUser(directory);
+    } catch (IOException | UnsupportedOperationException e) {
+      return Result.failure(e);
+    }
+  }
+
+  private static Result<Path> ownedByUser(Path path) {
+    try {
+      UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+          .lookupPrincipalByName(System.getProperty("user.name"));
+      UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+      return owner.equals(user)
+          ? Result.success(path)
+          : Result.failure(path + " belongs to " + owner.getName() + ", not to "
+              + user.getName() + ", refusing to use it");
+    } catch (IOException | UnsupportedOperationException e) {
+      return Result.failure(e);
+    }
+  }
+
+  /** Keeps the database at path open, so that opening it again only takes a new connection.
+   */
+  void keepOpen(String path) {
+    if (!databases.containsKey(path))
+      DataSource.openIfExists(path).forEach(ds -> databases.put(path, ds));
+  }
+
+  /** Forgets all the transactions read from the database at path, once others were ingested.
+   */
+  void forget(String path) {
+    transactions.remove(path);
+  }
+
+  /** Transactions of the database at path matching filter, read only the first time unless
+   * ingesting, which forgets all the transactions read from that database before.
+   */
+  Result<List<Transaction>> transactions(String path, String filter, boolean ingesting,
+      Supplier<Result<List<Transaction>>> read) {
+    java.util.Map<String, List<Transaction>> byFilter =
+        transactions.computeIfAbsent(path, ignored -> new HashMap<>());
+    if (ingesting)
+      byFilter.clear();
+    else if (byFilter.containsKey(filter))
+      return Result.success(byFilter.get(filter));
+
+    Result<List<Transaction>> res = read.get();
+    keepOpen(path);
+    res.forEach(lTx -> byFilter.put(filter, lTx));
+    return res;
+  }
+
+  /** Same source as Utilities.priceSource, but a price file is only read again once modified.
+   */
+  Result<PriceSource> priceSource(File pricesFile) {
+    if (pricesFile == null)
+      return Result.success(YahooPriceSource.yahooPriceSource());
+
+    try {
+      Path path = pricesFile.toPath().toRealPath();
+      FileTime modified = Files.getLastModifiedTime(path);
+      Tuple<FileTime, PriceSource> known = priceSources.get(path);
+      if (known != null && known._1.equals(modified))
+        return Result.success(known._2);
+
+      Result<PriceSource> res = Utilities.priceSource(path.toFile());
+      res.forEach(source -> priceSources.put(path, new Tuple<>(modified, source)));
+      return res;
+    } catch (IOException e) {
+      return Utilities.priceSource(pricesFile);
+    }
+  }
+}
@@ -1,40 +1,166 @@
 package ch.cottier.app;
 
 import ch.cottier.app.Options.TimeFilter;
-import ch.cottier.functionalUtilities.FileReader;
+import ch.cottier.functionalUtilities.Effect;
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Map;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Stream;
 import ch.cottier.functionalUtilities.Tuple;
 import ch.cottier.functionalUtilities.Tuple3;
+import ch.cottier.functionalUtilities.Vector;
 import ch.cottier.stockAPI.DataSource;
+import ch.cottier.stockAPI.FetchPolicy;
+import ch.cottier.stockAPI.FilePriceSource;
+import ch.cottier.stockAPI.Ingestion;
 import ch.cottier.stockAPI.Parser;
 import ch.cottier.stockAPI.Portfolio;
+import ch.cottier.stockAPI.PriceSource;
 import ch.cottier.stockAPI.Stock;
 import ch.cottier.stockAPI.Symbol;
 import ch.cottier.stockAPI.Transaction;
+import ch.cottier.stockAPI.YahooPriceSource;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Comparator;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 final class Utilities {
-  static Result<List<Transaction>> prepTransactions(Options.DBOptions db, File txFile) {
+  // Transaction files above this size are parsed in chunks, if there's more than one thread
+  static final long PARALLEL_INGEST_SIZE = 64L << 20;
+
+  // Filtering for symbols and time period happens inside the database. While serving, the
+  // transactions read are kept for the next commands with the same database and filter.
+  static Result<List<Transaction>> prepTransactions(Options.DBOptions db, File txFile,
+      int batchSize, int ingestThreads, List<Symbol> symbols, TimeFilter tf,
+      Effect<Ingestion> ingested) {
+      Tuple<Result<LocalDate>, Result<LocalDate>> range = timeFilterRange(tf);
+      Supplier<Result<List<Transaction>>> read = () -> openAndIngest(db, txFile, batchSize,
+              ingestThreads, ingested)
+          .flatMap(ds -> ds.getTransactions(symbols, range._1, range._2))
+          .flatMap(t -> t._2.close()
+              .map(ignoreReturn -> t._1));
+      return Daemon.serving()
+          .flatMap(daemon -> dbPath(db).map(path -> daemon.transactions(path,
+              symbols + " " + range._1 + " " + range._2, txFile != null || db.dbPath == null,
+              read)))
+          .getOrElse(read);
+  }
+
+  /* Same transactions as prepTransactions, but folded with f one at a time straight from the
+   * database cursor, so that they never all are in memory. Nothing is kept while serving.
+   */
+  static <U> Result<U> foldTransactions(Options.DBOptions db, File txFile, int batchSize,
+      int ingestThreads, List<Symbol> symbols, TimeFilter tf, Effect<Ingestion> ingested,
+      U identity, Function<U, Function<Transaction, U>> f) {
+      Tuple<Result<LocalDate>, Result<LocalDate>> range = timeFilterRange(tf);
+      Result<U> res = openAndIngest(db, txFile, batchSize, ingestThreads, ingested)
+          .flatMap(ds -> {
+              Result<U> folded = ds.foldTransactions(symbols, range._1, range._2,
+                  DataSource.DEFAULT_FETCH_SIZE, identity, f);
+              return ds.close().flatMap(ignoreReturn -> folded);
+          });
+      Daemon.serving().forEach(daemon -> dbPath(db).forEach(path -> {
+          if (txFile != null || db.dbPath == null)
+              daemon.forget(path);
+          daemon.keepOpen(path);
+      }));
+      return res;
+  }
+
+  // The report of the ingestion is handed to ingested, for the command to print it with its
+  // other messages, away from its results
+  private static Result<DataSource> openAndIngest(Options.DBOptions db, File txFile,
+      int batchSize, int ingestThreads, Effect<Ingestion> ingested) {
       Result<File> file = txFile == null ? Result.empty() : Result.success(txFile);
       return parseDbOption(db)
           .flatMap(ds -> file
-              .flatMap(Utilities::checkTxIn)
-              .flatMap(ds::insertTransactions)
-              .mapEmpty(() -> ds))
-          .flatMap(DataSource::getTransactions)
-          .flatMap(t -> t._2.close()
-              .map(ignoreReturn -> t._1));
+              .flatMap(f -> checkTxIn(f, ingestThreads))
+              .flatMap(lTx -> ds.ingestTransactions(lTx, batchSize))
+              .map(t -> {
+                  ingested.apply(t._1);
+                  return t._2;
+              })
+              .mapEmpty(() -> ds));
+  }
+
+  /* Runs the computation with the database serving as cache for historical prices, so closed trading
+   * days are only downloaded once over all runs. Without a database, prices are always downloaded.
+   * An existing database (-d) must be there, only a new one is created.
+   */
+  static <T> Result<T> withQuoteCache(Options.DBOptions dbOptions, Supplier<Result<T>> computation) {
+      Result<String> path = dbPath(dbOptions);
+      Result<DataSource> rDS = path.flatMap(p -> dbOptions.dbPath == null
+          ? DataSource.open(p)
+          : DataSource.openIfExists(p));
+      if (rDS.isFailure())
+          return rDS.flatMap(ignored -> computation.get());
+
+      rDS.forEach(Stock::useQuoteCache);
+      Daemon.serving().forEach(daemon -> path.forEach(daemon::keepOpen));
+      Result<T> res;
+      Result<Boolean> closed;
+      try {
+          res = computation.get();
+      } finally {
+          // also if computation throws, so that later computations don't use the closed database
+          Stock.disableQuoteCache();
+          closed = rDS.flatMap(DataSource::close);
+      }
+      Result<T> computed = res;
+      return closed.flatMap(ignored -> computed)
+                   .flatMapEmpty(() -> computed);
+  }
+
+  /** Runs computation with the prices coming from the file given with --prices (Yahoo Finance if
+   * none is given), and the fetch policy given with --fetch-threads and --fetch-timeout. While
+   * serving, the price source stays installed afterwards, so that the next command using the same
+   * one finds the stocks created by this one.
+   */
+  static <T> Result<T> withPriceSource(Options options, Supplier<Result<T>> computation) {
+      Result<Daemon> daemon = Daemon.serving();
+      Result<PriceSource> rSource = daemon
+          .map(d -> d.priceSource(options.pricesFile))
+          .getOrElse(() -> priceSource(options.pricesFile));
+      return rSource.flatMap(source -> {
+          Parser.useFetchPolicy(options.fetchPolicy());
+          if (daemon.isEmpty() || source != Stock.getPriceSource())
+              Stock.usePriceSource(source);
+          try {
+              return computation.get();
+          } finally {
+              if (daemon.isEmpty())
+                  Stock.useDefaultPriceSource();
+              Parser.useFetchPolicy(FetchPolicy.DEFAULT);
+          }
+      });
+  }
+
+  static Result<PriceSource> priceSource(File pricesFile) {
+      return pricesFile == null
+          ? Result.success(YahooPriceSource.yahooPriceSource())
+          : FilePriceSource.priceSource(pricesFile.getPath()).map(source -> (PriceSource) source);
+  }
+
+  static Result<String> dbPath(Options.DBOptions dbOptions) {
+      try {
+          return dbOptions == null
+              ? Result.empty()
+              : Result.success(removePossibleExtensions(dbOptions.dbPath == null
+                  ? dbOptions.newDBPath.getCanonicalPath()
+                  : dbOptions.dbPath.getCanonicalPath()));
+      } catch (IOException e) {
+          return Result.failure(e);
+      }
   }
 
   static Result<String> validationDBOptions(Options.DBOptions dbOptions) {
@@ -81,44 +207,8 @@ final class Utilities {
    * selling share at the end of the period, the relevant difference is between the value at the
    * beginning of the period and the selling price at the end.
    */
-  static Result<Tuple<Portfolio, Result<BigDecimal>>> computeFactor(
-      Portfolio currPortfolio, Transaction currTx, Transaction nxtTx) {
-    return currPortfolio.updateWith(currTx).map(updPf -> {
-      Result<BigDecimal> Vinit = currTx.getNumShares() > 0 // BUY
-          ? Result.map2(updPf.valueOn(currTx.getDate()), premium(currTx), val -> val::add)
-          : updPf.valueOn(currTx.getDate());
-      Result<BigDecimal> Vend = nxtTx.getNumShares() < 0 // SELL
-          ? Result.map2(updPf.valueOn(nxtTx.getDate()), premium(nxtTx), val -> val::add)
-          : updPf.valueOn(nxtTx.getDate());
-
-      Result<BigDecimal> factor = Result.map2(Vinit, Vend,
-          init -> end -> end.divide(init, RoundingMode.HALF_UP));
-
-      return new Tuple<>(updPf, factor);
-    });
-  }
-
   static Result<List<BigDecimal>> growthFactors(List<Transaction> lTx, LocalDate endDate) {
-    // Empty transaction at the end, to be able to apply computeFactors() to the entire list,
-    // without special case for the last transaction
-    List<Transaction> lTx2 = lTx.tail()
-                                .append(Transaction.transaction(endDate, "", 1, BigDecimal.ZERO));
-
-    List<Result<BigDecimal>> factors = List.list();
-    return lTx.zip(lTx2)
-              .foldLeft(Result.success(new Tuple<>(Portfolio.empty(), factors)), acc -> txs ->
-                  acc.flatMap(t -> computeFactor(t._1, txs._1, txs._2)
-                                       .map(res -> new Tuple<>(res._1, t._2.prepend(res._2)))))
-              .map(Tuple::_2)
-              .flatMap(List::flattenResult);
-  }
-
-  static Result<BigDecimal> premium(Transaction tx) {
-    return Stock.stock(tx.getSymbol().toString())
-                .flatMap(s -> s.getPriceOn(tx.getDate()))
-                .map(price -> tx.getPrice()
-                                .subtract(price)
-                                .multiply(new BigDecimal(tx.getNumShares())));
+    return Portfolio.growthFactors(lTx, endDate);
   }
 
   private enum Theme {
@@ -179,16 +269,26 @@ final class Utilities {
     }
 
     static Result<List<Transaction>> checkTxIn(File path) {
-        Result<FileReader> fR = FileReader.read(path);
-        Result<List<Transaction>> listTx =fR
-            .flatMap(Parser::parseTransactions)
-            .flatMap(t -> t._1.isEmpty()
+        return checkTxIn(path, 1);
+    }
+
+    /* Files larger than PARALLEL_INGEST_SIZE are parsed in chunks on ingestThreads threads, with
+     * the same checks and result as for smaller files.
+     */
+    static Result<List<Transaction>> checkTxIn(File path, int ingestThreads) {
+        if (ingestThreads > 1 && path.length() > PARALLEL_INGEST_SIZE)
+            return Parser.parseSortedTransactionFile(path, ingestThreads)
+                .flatMap(l -> l.isEmpty()
+                    ? Result.empty()
+                    : Result.success(l));
+
+        return Parser.parseTransactionFile(path)
+            .flatMap(l -> l.isEmpty()
                 ? Result.empty()
-                : Result.success(t._1))
+                : Result.success(l))
             .map(Utilities::getOrderSeq)
             .flatMap(t -> Utilities.checkCorrectSequence(t._2, t._1))
             .map(l -> l.sortFP(Comparator.comparing(Transaction::getDate)));
-        return fR.flatMap(FileReader::close).flatMap(ignore -> listTx);
     }
 
     // Default: true for ascending and all the same date
@@ -236,6 +336,30 @@ final class Utilities {
         }
     }
 
+    /* With a frequency, the period given by dates is split into dates every day/week/month/year
+     * from its start, plus its end date. The start of the period "inception" becomes the date of
+     * the first transaction.
+     */
+    static List<LocalDate> valuationDates(List<Transaction> lTx, List<LocalDate> dates,
+        Options.Frequency every) {
+        if (every == null || dates.size() != 2)
+            return dates;
+
+        LocalDate start = dates.head().equals(LocalDate.parse("1000-01-01")) && !lTx.isEmpty()
+            ? lTx.head().getDate()
+            : dates.head();
+        LocalDate end = dates.tail().head();
+        Vector<LocalDate> res = Vector.empty();
+        LocalDate date = start;
+        for (int i = 1; !date.isAfter(end); i++) {
+            res = res.append(date);
+            date = start.plus(every.step.multipliedBy(i));
+        }
+        return res.last().map(last -> last.equals(end)).getOrElse(false)
+            ? res.toList()
+            : res.append(end).toList();
+    }
+
     static LocalDate parsePeriod(String s) {
         return switch (s) {
             case "now" -> LocalDate.now();
@@ -258,6 +382,27 @@ final class Utilities {
             : List.of(filter).map(Symbol::symbol);
     }
 
+    // Same time period as timePeriodComparator(), as optional start and end dates (both inclusive)
+    static Tuple<Result<LocalDate>, Result<LocalDate>> timeFilterRange(final TimeFilter tf) {
+        if (tf == null)
+            return new Tuple<>(Result.empty(), Result.empty());
+        if (tf.date != null)
+            return new Tuple<>(Result.empty(), Result.success(tf.date));
+
+        List<String> period = List.of(tf.period);
+        if (period.size() == 1) {
+            return switch (period.head()) {
+                case "now" -> new Tuple<>(Result.success(LocalDate.now()),
+                    Result.success(LocalDate.now()));
+                case "inception" -> new Tuple<>(Result.empty(), Result.empty());
+                default -> new Tuple<>(Result.success(parsePeriod(period.head())), Result.empty());
+            };
+        } else { // period.size() == 2
+            List<LocalDate> dates = period.map(Utilities::parsePeriod);
+            return new Tuple<>(Result.success(dates.head()), Result.success(dates.tail().head()));
+        }
+    }
+
     static Function<Transaction, Boolean> timePeriodComparator(final TimeFilter tf) {
         if (tf == null)
             return tx -> true;
@@ -389,8 +534,8 @@ final class Utilities {
     }
 
     static List<BigDecimal> addChangeMetrics(List<BigDecimal> prices) {
-        BigDecimal origPrice = prices.get(0).setScale(6, RoundingMode.HALF_UP);
-        BigDecimal newPrice = prices.get(1).setScale(6, RoundingMode.HALF_UP);
+        BigDecimal origPrice = prices.head().setScale(6, RoundingMode.HALF_UP);
+        BigDecimal newPrice = prices.tail().head().setScale(6, RoundingMode.HALF_UP);
         BigDecimal abs = newPrice.subtract(origPrice);
         BigDecimal percent = abs.divide(origPrice, RoundingMode.HALF_UP)
                                 .multiply(BigDecimal.valueOf(100));
@@ -404,6 +549,36 @@ final class Utilities {
                 + "\n");
     }
 
+  /* One row per date, for series too long to be shown as one column per date
+   */
+  static List<List<String>> seriesTable(List<Tuple<LocalDate, BigDecimal>> series) {
+    return themeSimple().apply(series
+        .map(t -> List.of(t._1.toString(), renderPrice(t._2)))
+        .prepend(List.of("Date", "Value")));
+  }
+
+  /* One `date,value` line per entry of the series, written to file (or stdout if file is null)
+   * line by line. Returns the number of entries written.
+   */
+  static Result<Integer> writeCsv(List<Tuple<LocalDate, BigDecimal>> series, File file) {
+      try (PrintWriter w = file == null
+          ? new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+              @Override
+              public void close() {
+                  flush(); // keep stdout open
+              }
+            }
+          : new PrintWriter(file, StandardCharsets.UTF_8)) {
+          w.println("date,value");
+          series.forEach(t -> w.println(t._1 + "," + t._2.toPlainString()));
+          if (w.checkError())
+              return Result.failure("Couldn't write CSV" + (file == null ? "" : " to " + file));
+          return Result.success(series.size());
+      } catch (IOException e) {
+          return Result.failure(e);
+      }
+  }
+
   static void printResultTable(Result<String> table) {
     table.failIfEmpty("No transaction corresponds to filter criteria")
          .forEachOrFail(System.out::println)
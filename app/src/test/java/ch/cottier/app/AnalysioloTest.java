@@ -12,16 +12,21 @@ import ch.cottier.functionalUtilities.Map;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Tuple;
 import ch.cottier.stockAPI.DataSource;
+import ch.cottier.stockAPI.Ingestion;
 import ch.cottier.stockAPI.Parser;
 import ch.cottier.stockAPI.Symbol;
 import ch.cottier.stockAPI.Transaction;
 import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.Comparator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class AnalysioloTest {
   String path = "src/test/resources/testdata.txt";
@@ -109,23 +114,27 @@ class AnalysioloTest {
     options.symbol = java.util.List.of("VTI");
     options.txFile = new File("src/test/resources/testdata.txt");
 
-    Result<List<Transaction>> res = Analysiolo.list_(options);
+    java.util.List<Ingestion> ingested = new java.util.ArrayList<>();
+    Result<List<Transaction>> res = Analysiolo.list_(options, ingested::add);
     assertSuccess(res)
         .forEachOrFail(lTx -> assertEquals(3, lTx.size()))
         .forEach(Assertions::fail);
+    // the report is handed to the command, not printed with the transactions
+    assertEquals(1, ingested.size());
+    assertEquals(13, ingested.get(0).getNumTransactions());
     assertSuccess(deleteDB(options.dbOptions));
 
     options.symbol = null;
     options.timeFilter.date = LocalDate.parse("2021-09-08");
     options.timeFilter.period = null;
-    res = Analysiolo.list_(options);
+    res = Analysiolo.list_(options, ignored -> {});
     assertSuccess(res)
         .forEachOrFail(lTx -> assertEquals(5, lTx.size()))
         .forEach(Assertions::fail);
     assertSuccess(deleteDB(options.dbOptions));
 
     options.symbol = java.util.List.of("MSFT");
-    res = Analysiolo.list_(options);
+    res = Analysiolo.list_(options, ignored -> {});
     assertTrue(res.isEmpty());
 
     options.dbOptions.dbPath = new File("src/test/resources/testdb.mv.db");
@@ -133,7 +142,7 @@ class AnalysioloTest {
     options.timeFilter = null;
     options.txFile = null;
     options.symbol = null;
-    res = Analysiolo.list_(options);
+    res = Analysiolo.list_(options, ignored -> {});
     assertSuccess(res)
         .forEachOrFail(lTx -> assertEquals(13, lTx.size()))
         .forEach(Assertions::fail);
@@ -148,7 +157,7 @@ class AnalysioloTest {
     options.symbol = java.util.List.of("VTI");
     options.txFile = new File("src/test/resources/testdata.txt");
 
-    var res = assertSuccess(Analysiolo.value_(options));
+    var res = assertSuccess(Analysiolo.value_(options, ignored -> {}));
     BigDecimal expValue;
     res.forEachOrFail(l -> assertFalse(l.isEmpty()))
         .forEach(Assertions::fail);
@@ -167,7 +176,7 @@ class AnalysioloTest {
 //    options.tfOptions = prepTimeFilterOptions();
     options.timeFilter = new TimeFilter();
     options.timeFilter.date = LocalDate.parse(dateStr1);
-    res = Analysiolo.value_(options);
+    res = Analysiolo.value_(options, ignored -> {});
     expValue = new BigDecimal("158375.242809");
     assertSuccess(res)
         .forEachOrFail(l -> assertEquals(expValue, l.head()._2))
@@ -175,13 +184,13 @@ class AnalysioloTest {
 
     options.timeFilter.date = null;
     options.timeFilter.period = java.util.List.of(dateStr1);
-    res = Analysiolo.value_(options);
+    res = Analysiolo.value_(options, ignored -> {});
     assertSuccess(res)
         .forEachOrFail(l -> assertEquals(expValue, l.head()._2))
         .forEach(Assertions::fail);
 
     options.timeFilter.period = java.util.List.of(dateStr1, dateStr2);
-    res = Analysiolo.value_(options);
+    res = Analysiolo.value_(options, ignored -> {});
     assertSuccess(res)
         .forEachOrFail(l -> {
           assertEquals(new BigDecimal("158375.242809"), l.head()._2);
@@ -293,7 +302,7 @@ class AnalysioloTest {
     options.dbOptions.newDBPath = new File("src/test/resources/testdb.mv.db");
     options.txFile = new File("src/test/resources/testdata.txt");
     options.symbol = java.util.List.of("AVUV");
-    Result<Map<Symbol, List<BigDecimal>>> res = Analysiolo.avgCost_(options);
+    Result<Map<Symbol, List<BigDecimal>>> res = Analysiolo.avgCost_(options, ignored -> {});
 
     Map<Symbol, List<BigDecimal>> expRes1 =
         Map.<Symbol, List<BigDecimal>>empty().put(Symbol.symbol("AVUV"),
@@ -312,7 +321,7 @@ class AnalysioloTest {
             List.of(new BigDecimal("43.109451"),
                 new BigDecimal("40.110000"),
                 new BigDecimal("90.000000")));
-    res = Analysiolo.avgCost_(options);
+    res = Analysiolo.avgCost_(options, ignored -> {});
     res.forEachOrFail(m -> assertEquals(expRes2, m)).forEach(Assertions::fail);
 
     // 3. existing database, no ingesting -> date & single stock VTI
@@ -324,7 +333,7 @@ class AnalysioloTest {
             List.of(new BigDecimal("85.464545"),
                 new BigDecimal("40.110000"),
                 new BigDecimal("90.000000")));
-    res = Analysiolo.avgCost_(options);
+    res = Analysiolo.avgCost_(options, ignored -> {});
     res.forEachOrFail(m -> assertEquals(expRes3, m)).forEach(Assertions::fail);
 
     // 4. existing database, no ingesting -> two periods & single stock VTI
@@ -335,12 +344,12 @@ class AnalysioloTest {
             List.of(new BigDecimal("43.121260"),
                 new BigDecimal("41.200000"),
                 new BigDecimal("90.000000")));
-    res = Analysiolo.avgCost_(options);
+    res = Analysiolo.avgCost_(options, ignored -> {});
     res.forEachOrFail(m -> assertEquals(expRes4, m)).forEach(Assertions::fail);
 
     // No transaction with filtered stock
     options.symbol = java.util.List.of("TSLA");
-    res = Analysiolo.avgCost_(options);
+    res = Analysiolo.avgCost_(options, ignored -> {});
     assertTrue(res.isEmpty());
 
     // Clean up database
@@ -508,7 +517,8 @@ class AnalysioloTest {
     options.txFile = new File("src/test/resources/testdata.txt");
     options.symbol = null;
 
-    Result<Tuple<List<LocalDate>, List<BigDecimal>>> res = Analysiolo.twrr_(options);
+    Result<Tuple<List<LocalDate>, List<BigDecimal>>> res =
+        Analysiolo.twrr_(options, ignored -> {});
 
     res.forEachOrFail(tpl -> System.out.println("Current result " + tpl))
        .forEach(Assertions::fail);
@@ -521,7 +531,7 @@ class AnalysioloTest {
     options.dbOptions.dbPath = new File("src/test/resources/testdb.mv.db");
     options.timeFilter = new TimeFilter();
     options.timeFilter.date = LocalDate.parse(dateStr1);
-    res = Analysiolo.twrr_(options);
+    res = Analysiolo.twrr_(options, ignored -> {});
 
     List<LocalDate> dates = List.of(LocalDate.parse("2021-02-18"), LocalDate.parse(dateStr1));
     List<BigDecimal> values = List.of(new BigDecimal("2055.000000"),
@@ -535,7 +545,7 @@ class AnalysioloTest {
     // Test case 3: single date, filter VTI -> only VTI transactions up to given date, TWRR on date
     // Expected: ((2021-02-18, 2021-10-12, NIL), (2055.000000, 24481.400654, 11.368508, NIL))
     options.symbol = java.util.List.of("VTI");
-    res = Analysiolo.twrr_(options);
+    res = Analysiolo.twrr_(options, ignored -> {});
 
     values = List.of(new BigDecimal("2055.000000"),
                      new BigDecimal("24481.400654"),
@@ -549,7 +559,7 @@ class AnalysioloTest {
     // Expected: ((2021-10-12, 2022-11-07, NIL), (22460.000600, 170068.723568, 33.133043, NIL))
     options.timeFilter.date = null;
     options.timeFilter.period = List.of(dateStr1, dateStr2);
-    res = Analysiolo.twrr_(options);
+    res = Analysiolo.twrr_(options, ignored -> {});
 
     dates = List.of(LocalDate.parse(dateStr1), LocalDate.parse(dateStr2));
     values = List.of(new BigDecimal("22460.000600"),
@@ -560,4 +570,42 @@ class AnalysioloTest {
     res.forEachOrFail(tpl -> assertEquals(expRes4, tpl))
        .forEach(Assertions::fail);
   }
-}
\ No newline at end of file
+
+  // Constant daily closes of the stocks in testdata.txt, so that no price is downloaded
+  File writePrices(Path dir) throws IOException {
+    StringBuilder prices = new StringBuilder();
+    for (LocalDate d = LocalDate.parse("2020-01-01"); d.isBefore(LocalDate.parse("2023-01-01"));
+        d = d.plusDays(1))
+      prices.append("VTI,").append(d).append(",100\n")
+            .append("VXUS,").append(d).append(",50\n")
+            .append("AVUV,").append(d).append(",40\n");
+    return Files.writeString(dir.resolve("prices.csv"), prices).toFile();
+  }
+
+  @Test
+  void twrrValuesFromPriceFile(@TempDir Path dir) throws IOException {
+    Options options = new Options();
+    options.dbOptions = new DBOptions();
+    options.dbOptions.newDBPath = dir.resolve("db").toFile();
+    options.txFile = new File(path);
+    options.pricesFile = writePrices(dir);
+    options.timeFilter = new TimeFilter();
+    options.timeFilter.date = LocalDate.parse("2022-11-07");
+    BigDecimal value =
+        assertSuccess(Analysiolo.value_(options, ignored -> {})).getOrThrow().head()._2;
+
+    // the values next to the TWRR are the same as the ones of value, and nothing before the first
+    // transaction
+    options.dbOptions.newDBPath = null;
+    options.dbOptions.dbPath = dir.resolve("db").toFile();
+    options.txFile = null;
+    options.timeFilter.date = null;
+    options.timeFilter.period = List.of("2020-06-01", "2022-11-07");
+    Tuple<List<LocalDate>, List<BigDecimal>> res =
+        assertSuccess(Analysiolo.twrr_(options, ignored -> {})).getOrThrow();
+    assertEquals(List.of(LocalDate.parse("2020-06-01"), LocalDate.parse("2022-11-07")), res._1);
+    assertEquals(3, res._2.size());
+    assertEquals(new BigDecimal("0.000000"), res._2.head());
+    assertEquals(value, res._2.tail().head());
+  }
+}
@@ -0,0 +1,126 @@
+package ch.cottier.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DaemonTest {
+  Path path = Path.of("src/test/resources/testdata.txt").toAbsolutePath();
+  Path pathAdditional = Path.of("src/test/resources/testdata_additional.txt").toAbsolutePath();
+
+  @TempDir
+  Path dir;
+
+  <T> Result<T> assertSuccess(Result<T> r) {
+    assertTrue(r.isSuccess(), r.toString());
+    return r;
+  }
+
+  // Exit code and output of the command answered by the daemon, run inside dir
+  Tuple<Integer, String> forward(Path socket, String... args) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    int exitCode = assertSuccess(Daemon.forward(socket, dir, args, out, err)).getOrThrow();
+    return new Tuple<>(exitCode, out.toString(Charset.defaultCharset())
+        + err.toString(Charset.defaultCharset()));
+  }
+
+  void writePrices(Path file, String close) throws IOException {
+    Files.writeString(file, "VTI,2021-12-31," + close + "\n"
+        + "VXUS,2021-12-31," + close + "\n"
+        + "AVUV,2021-12-31," + close + "\n");
+  }
+
+  @Test
+  void serve() throws Exception {
+    Path socket = dir.resolve("test.sock");
+    assertEquals(Result.empty(), Daemon.forward(socket, dir, new String[] {"list"},
+        new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+
+    Daemon daemon = assertSuccess(Daemon.bind(socket, Duration.ofMinutes(1))).getOrThrow();
+    assertTrue(Daemon.bind(socket, Duration.ofMinutes(1)).isFailure());
+    CompletableFuture<Result<Integer>> answered = CompletableFuture.supplyAsync(daemon::serve);
+    try {
+      // relative paths are inside the working directory of the client
+      Tuple<Integer, String> created = forward(socket, "list", "-c", "db", "-f", path.toString());
+      assertEquals(0, created._1, created._2);
+      assertTrue(Files.exists(dir.resolve("db.mv.db")));
+
+      Tuple<Integer, String> listed = forward(socket, "list", "-d", "db");
+      assertEquals(0, listed._1, listed._2);
+      // the command prints the report of the ingestion before the transactions
+      assertTrue(created._2.startsWith("Ingested 13 transactions"), created._2);
+      assertTrue(created._2.endsWith(listed._2));
+      assertEquals(listed, forward(socket, "list", "-d", "db"));
+
+      // ingesting forgets the transactions read before
+      Tuple<Integer, String> ingested =
+          forward(socket, "list", "-d", "db", "-f", pathAdditional.toString());
+      Tuple<Integer, String> listedAgain = forward(socket, "list", "-d", "db");
+      assertTrue(ingested._2.endsWith(listedAgain._2));
+      assertEquals(listed._2.lines().count() + 4, listedAgain._2.lines().count());
+
+      // price files are read again once modified (without a database, that would cache them)
+      Path prices = dir.resolve("prices.csv");
+      writePrices(prices, "10.00");
+      String[] price = {"price", "--filter", "VTI", "--prices", "prices.csv", "--date", "2021-12-31"};
+      Tuple<Integer, String> priced = forward(socket, price);
+      assertEquals(0, priced._1, priced._2);
+      assertTrue(priced._2.contains("10.00"), priced._2);
+      assertEquals(priced, forward(socket, price));
+      writePrices(prices, "20.00");
+      Files.setLastModifiedTime(prices, FileTime.fromMillis(0));
+      assertTrue(forward(socket, price)._2.contains("20.00"));
+
+      assertEquals(-1, forward(socket, "list", "-d", "missing")._1);
+
+      // a daemon doesn't start another one, which would stop it from answering
+      Tuple<Integer, String> served = forward(socket, "serve", "--socket", "other.sock");
+      assertEquals(-1, served._1, served._2);
+      assertTrue(Files.notExists(dir.resolve("other.sock")));
+    } finally {
+      daemon.close();
+    }
+    assertEquals(Result.success(10), answered.get());
+    assertTrue(Daemon.serving().isEmpty());
+    assertTrue(Files.notExists(socket));
+  }
+
+  @Test
+  void privateDirectory() throws Exception {
+    // a missing directory is created only for the user
+    Path socket = dir.resolve("run").resolve("test.sock");
+    Daemon daemon = assertSuccess(Daemon.bind(socket, Duration.ofMinutes(1))).getOrThrow();
+    daemon.close();
+    assertEquals(PosixFilePermissions.fromString("rwx------"),
+        Files.getPosixFilePermissions(socket.getParent()));
+
+    // anybody able to write to the directory could have replaced the socket
+    Path shared = Files.createDirectory(dir.resolve("shared"));
+    Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+    Path sharedSocket = shared.resolve("test.sock");
+    assertTrue(Daemon.bind(sharedSocket, Duration.ofMinutes(1)).isFailure());
+    try (ServerSocketChannel other = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      other.bind(UnixDomainSocketAddress.of(sharedSocket));
+      assertTrue(Daemon.forward(sharedSocket, dir, new String[] {"list"},
+          new ByteArrayOutputStream(), new ByteArrayOutputStream()).isFailure());
+    }
+  }
+}
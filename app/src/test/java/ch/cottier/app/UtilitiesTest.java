@@ -2,6 +2,7 @@ package ch.cottier.app;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import ch.cottier.app.Options.DBOptions;
@@ -10,14 +11,21 @@ import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Map;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Tuple;
+import ch.cottier.stockAPI.DataSource;
+import ch.cottier.stockAPI.FilePriceSource;
+import ch.cottier.stockAPI.PriceHistory;
+import ch.cottier.stockAPI.Stock;
 import ch.cottier.stockAPI.Symbol;
 import ch.cottier.stockAPI.Transaction;
 import java.io.File;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class UtilitiesTest {
   String pathAdditionalError = "src/test/resources/testdata_additional_error.txt";
@@ -119,6 +127,33 @@ class UtilitiesTest {
     assertTrue(comp.apply(LocalDate.parse("2021-10-10")));
   }
 
+  @Test
+  void timeFilterRangeTest() {
+    TimeFilter tf = new TimeFilter();
+    Result<LocalDate> none = Result.empty();
+    assertEquals(new Tuple<>(none, none), Utilities.timeFilterRange(null));
+
+    tf.date = LocalDate.parse("2021-10-10");
+    assertEquals(new Tuple<>(none, Result.success(tf.date)), Utilities.timeFilterRange(tf));
+
+    tf.date = null;
+    tf.period = List.of("inception");
+    assertEquals(new Tuple<>(none, none), Utilities.timeFilterRange(tf));
+
+    tf.period = List.of("now");
+    assertEquals(new Tuple<>(Result.success(LocalDate.now()), Result.success(LocalDate.now())),
+        Utilities.timeFilterRange(tf));
+
+    tf.period = List.of("2021-10-10");
+    assertEquals(new Tuple<>(Result.success(LocalDate.parse("2021-10-10")), none),
+        Utilities.timeFilterRange(tf));
+
+    tf.period = List.of("inception", "2021-10-10");
+    assertEquals(new Tuple<>(Result.success(LocalDate.parse("1000-01-01")),
+            Result.success(LocalDate.parse("2021-10-10"))),
+        Utilities.timeFilterRange(tf));
+  }
+
   @Test
   void parseDbOptionTest() {
     Options.DBOptions dbOptions = new DBOptions();
@@ -167,6 +202,41 @@ class UtilitiesTest {
     assertEquals(expRes, res);
   }
 
+  @Test
+  void valuationDatesTest() {
+    List<Transaction> lTx = List.of(Transaction.transaction(LocalDate.parse("2021-01-31"), "VTI",
+        1, BigDecimal.TEN));
+    List<LocalDate> period = List.of(LocalDate.parse("2021-01-31"), LocalDate.parse("2021-05-15"));
+
+    assertEquals(period, Utilities.valuationDates(lTx, period, null));
+    // months are counted from the start, so that the end of the month isn't lost after February
+    assertEquals(List.of("2021-01-31", "2021-02-28", "2021-03-31", "2021-04-30", "2021-05-15")
+            .map(LocalDate::parse),
+        Utilities.valuationDates(lTx, period, Options.Frequency.MONTH));
+    assertEquals(List.of("2021-01-31", "2021-02-07", "2021-02-14").map(LocalDate::parse),
+        Utilities.valuationDates(lTx, List.of("2021-01-31", "2021-02-14").map(LocalDate::parse),
+            Options.Frequency.WEEK));
+    assertEquals(List.of("2021-01-31", "2022-01-31").map(LocalDate::parse),
+        Utilities.valuationDates(lTx, List.of("inception", "2022-01-31")
+            .map(Utilities::parsePeriod), Options.Frequency.YEAR));
+    assertEquals(List.of(LocalDate.parse("2021-01-31")),
+        Utilities.valuationDates(lTx, List.of(LocalDate.parse("2021-01-31")),
+            Options.Frequency.DAY));
+  }
+
+  @Test
+  void writeCsvTest() throws Exception {
+    File f = File.createTempFile("series", ".csv");
+    f.deleteOnExit();
+    List<Tuple<LocalDate, BigDecimal>> series = List.of(
+        new Tuple<>(LocalDate.parse("2022-01-03"), new BigDecimal("1000.000000")),
+        new Tuple<>(LocalDate.parse("2022-01-04"), new BigDecimal("1010.500000")));
+
+    assertEquals(Result.success(2), Utilities.writeCsv(series, f));
+    assertEquals(java.util.List.of("date,value", "2022-01-03,1000.000000", "2022-01-04,1010.500000"),
+        java.nio.file.Files.readAllLines(f.toPath()));
+  }
+
   @Test
   void checkSequenceTest() {
     List<Transaction> lTx = List.of(
@@ -306,4 +376,42 @@ class UtilitiesTest {
     var f = Utilities.themeSimple().apply(data);
     System.out.println(Utilities.renderTable(f));
   }
-}
\ No newline at end of file
+
+  @Test
+  void withQuoteCacheAfterException(@TempDir Path dir) {
+    DBOptions dbOptions = new DBOptions();
+    dbOptions.newDBPath = dir.resolve("cache").toFile();
+    assertThrows(ArithmeticException.class, () -> Utilities.withQuoteCache(dbOptions, () -> {
+      throw new ArithmeticException("Overflow");
+    }));
+
+    // the database isn't used as quote cache afterwards, so the prices aren't stored there
+    Symbol symbol = Symbol.symbol("VTI");
+    LocalDate date = LocalDate.parse("2022-01-03");
+    Stock.usePriceSource(FilePriceSource.priceSource(Map.<Symbol, PriceHistory>empty()
+        .put(symbol, PriceHistory.priceHistory(java.util.List.of(
+            new Tuple<>(date, new BigDecimal("100.00")))))));
+    try {
+      assertSuccess(Stock.histories(List.of(symbol), date, date));
+    } finally {
+      Stock.useDefaultPriceSource();
+    }
+    Result<DataSource> rDS = DataSource.openIfExists(dir.resolve("cache").toString());
+    assertEquals(Result.success(List.list()),
+        rDS.flatMap(ds -> ds.getQuoteRanges(symbol)).map(Tuple::_1));
+    assertSuccess(rDS.flatMap(DataSource::close));
+  }
+
+  @Test
+  void withQuoteCacheMissingDatabase(@TempDir Path dir) {
+    DBOptions dbOptions = new DBOptions();
+    dbOptions.dbPath = dir.resolve("typo.db").toFile();
+    AtomicBoolean computed = new AtomicBoolean();
+    assertTrue(Utilities.withQuoteCache(dbOptions, () -> {
+      computed.set(true);
+      return Result.success(1);
+    }).isFailure());
+    assertFalse(computed.get());
+    assertFalse(dir.resolve("typo.mv.db").toFile().exists());
+  }
+}
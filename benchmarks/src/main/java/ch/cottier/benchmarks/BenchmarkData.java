@@ -0,0 +1,84 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Tuple;
+import ch.cottier.stockAPI.FilePriceSource;
+import ch.cottier.stockAPI.PriceHistory;
+import ch.cottier.stockAPI.Symbol;
+import ch.cottier.stockAPI.Transaction;
+import java.time.DayOfWeek;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Random;
+
+/** Deterministic input data shared by the benchmarks.
+ */
+final class BenchmarkData {
+  static final LocalDate START = LocalDate.parse("2003-01-02");
+  private static final long SEED = 42;
+
+  private BenchmarkData() {}
+
+  static List<Integer> shuffledInts(int n) {
+    Random rnd = new Random(SEED);
+    List<Integer> l = List.list();
+    for (int i = 0; i < n; i++)
+      l = l.prepend(rnd.nextInt(n));
+    return l;
+  }
+
+  static String symbol(int i) {
+    return "SYM" + (i % 20);
+  }
+
+  /** n buys of 20 symbols, one every few days, sorted by date.
+   */
+  static List<Transaction> transactions(int n) {
+    Random rnd = new Random(SEED);
+    java.util.List<Transaction> l = new java.util.ArrayList<>(n);
+    LocalDate date = START;
+    for (int i = 0; i < n; i++) {
+      date = date.plusDays(1 + rnd.nextInt(3));
+      l.add(Transaction.transaction(date, symbol(i), 1 + rnd.nextInt(100),
+          BigDecimal.valueOf(10_000 + rnd.nextInt(90_000), 2)));
+    }
+    return List.of(l);
+  }
+
+  /** The transactions written in the format read by Parser.parseTransactions.
+   */
+  static File transactionFile(int n) throws IOException {
+    File f = File.createTempFile("transactions", ".txt");
+    f.deleteOnExit();
+    try (PrintWriter w = new PrintWriter(f)) {
+      for (Transaction tx : transactions(n))
+        w.printf("%s BUY %s +%d %s%n", tx.getDate(), tx.getSymbol(), tx.getNumShares(),
+            tx.getPrice().toPlainString());
+    }
+    return f;
+  }
+
+  /** A random walk of closing prices on weekdays for the 20 symbols, from a month before START up
+   * to date to, held in memory so that benchmarks don't depend on the network.
+   */
+  static FilePriceSource priceSource(LocalDate to) {
+    Random rnd = new Random(SEED);
+    Map<Symbol, PriceHistory> histories = Map.empty();
+    for (int i = 0; i < 20; i++) {
+      java.util.List<Tuple<LocalDate, BigDecimal>> closes = new java.util.ArrayList<>();
+      double price = 50 + rnd.nextInt(100);
+      for (LocalDate d = START.minusMonths(1); !d.isAfter(to); d = d.plusDays(1)) {
+        if (d.getDayOfWeek() == DayOfWeek.SATURDAY || d.getDayOfWeek() == DayOfWeek.SUNDAY)
+          continue;
+        price *= 1 + (rnd.nextGaussian() / 100);
+        closes.add(new Tuple<>(d, BigDecimal.valueOf(price)));
+      }
+      histories = histories.put(Symbol.symbol(symbol(i)), PriceHistory.priceHistory(closes));
+    }
+    return FilePriceSource.priceSource(histories);
+  }
+}
@@ -0,0 +1,36 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.Result;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The previous implementation of functionalUtilities.Map, reduced to put and get: every put copies
+ * the whole ConcurrentHashMap. Only kept as the baseline of MapBenchmark.
+ */
+final class CopyOnWriteMap<K, V> {
+  private final ConcurrentHashMap<K, V> m;
+
+  private CopyOnWriteMap(ConcurrentHashMap<K, V> m) {
+    this.m = m;
+  }
+
+  static <K, V> CopyOnWriteMap<K, V> empty() {
+    return new CopyOnWriteMap<>(new ConcurrentHashMap<>());
+  }
+
+  // Filled in one go, for benchmarking get without paying for the quadratic build
+  static <K, V> CopyOnWriteMap<K, V> of(java.util.Map<K, V> m) {
+    return new CopyOnWriteMap<>(new ConcurrentHashMap<>(m));
+  }
+
+  Result<V> get(K key) {
+    return m.containsKey(key)
+        ? Result.success(m.get(key))
+        : Result.empty();
+  }
+
+  CopyOnWriteMap<K, V> put(K key, V val) {
+    ConcurrentHashMap<K, V> newMap = new ConcurrentHashMap<>(m);
+    newMap.put(key, val);
+    return new CopyOnWriteMap<>(newMap);
+  }
+}
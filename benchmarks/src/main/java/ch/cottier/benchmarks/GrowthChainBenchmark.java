@@ -0,0 +1,58 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.stockAPI.GrowthChain;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Product of the growth factors of TWRR sub-periods: exact BigDecimal products, whose digits
+ * grow with every factor, against a GrowthChain rounding to 34 digits. 2520 factors are a decade
+ * of trading days.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrowthChainBenchmark {
+  @Param({"250", "2520"})
+  int size;
+
+  BigDecimal[] factors;
+
+  @Setup
+  public void setup() {
+    Random rnd = new Random(42);
+    factors = new BigDecimal[size];
+    for (int i = 0; i < size; i++)
+      factors[i] = BigDecimal.valueOf(1_000_000 + rnd.nextInt(40_001) - 20_000, 6);
+  }
+
+  @Benchmark
+  public BigDecimal exactProduct() {
+    BigDecimal product = BigDecimal.ONE;
+    for (BigDecimal factor : factors)
+      product = product.multiply(factor);
+    return product;
+  }
+
+  @Benchmark
+  public BigDecimal growthChain() {
+    GrowthChain chain = GrowthChain.growthChain();
+    for (BigDecimal factor : factors)
+      chain = chain.times(factor);
+    return chain.rate();
+  }
+}
@@ -0,0 +1,72 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Tuple;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Core operations of the cons List. Sizes are kept small enough for the operations that aren't
+ * stack safe yet (zip).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListBenchmark {
+  @Param({"100", "1000"})
+  int size;
+
+  List<Integer> ints;
+
+  @Setup
+  public void setup() {
+    ints = BenchmarkData.shuffledInts(size);
+  }
+
+  @Benchmark
+  public List<Integer> prepend() {
+    List<Integer> l = List.list();
+    for (int i = 0; i < size; i++)
+      l = l.prepend(i);
+    return l;
+  }
+
+  @Benchmark
+  public List<Integer> append() {
+    return ints.append(-1);
+  }
+
+  @Benchmark
+  public long foldLeft() {
+    return ints.foldLeft(0L, acc -> i -> acc + i);
+  }
+
+  @Benchmark
+  public List<Integer> sortFP() {
+    return ints.sortFP(Comparator.naturalOrder());
+  }
+
+  @Benchmark
+  public Map<Integer, List<Integer>> groupBy() {
+    return ints.groupBy(i -> i % 10);
+  }
+
+  @Benchmark
+  public List<Tuple<Integer, Integer>> zip() {
+    return ints.zip(ints);
+  }
+}
@@ -0,0 +1,88 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Persistent HAMT Map against the copy-on-write ConcurrentHashMap it replaced: building a map by
+ * folding put over all keys or with a Map.Builder, and looking every key up once.
+ * The copy-on-write build is quadratic, so expect it to take minutes at 100k keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  String[] keys;
+  Map<String, Integer> hamt;
+  CopyOnWriteMap<String, Integer> copyOnWrite;
+
+  @Setup
+  public void setup() {
+    keys = new String[size];
+    for (int i = 0; i < size; i++)
+      keys[i] = "SYM" + i;
+    hamt = buildHamt();
+    java.util.Map<String, Integer> m = new java.util.HashMap<>();
+    for (int i = 0; i < size; i++)
+      m.put(keys[i], i);
+    copyOnWrite = CopyOnWriteMap.of(m);
+  }
+
+  @Benchmark
+  public Map<String, Integer> buildHamt() {
+    Map<String, Integer> m = Map.empty();
+    for (int i = 0; i < keys.length; i++)
+      m = m.put(keys[i], i);
+    return m;
+  }
+
+  @Benchmark
+  public Map<String, Integer> buildHamtWithBuilder() {
+    Map.Builder<String, Integer> m = Map.builder();
+    for (int i = 0; i < keys.length; i++)
+      m.put(keys[i], i);
+    return m.build();
+  }
+
+  @Benchmark
+  public CopyOnWriteMap<String, Integer> buildCopyOnWrite() {
+    CopyOnWriteMap<String, Integer> m = CopyOnWriteMap.empty();
+    for (int i = 0; i < keys.length; i++)
+      m = m.put(keys[i], i);
+    return m;
+  }
+
+  @Benchmark
+  public void getHamt(Blackhole bh) {
+    for (String key : keys) {
+      Result<Integer> val = hamt.get(key);
+      bh.consume(val);
+    }
+  }
+
+  @Benchmark
+  public void getCopyOnWrite(Blackhole bh) {
+    for (String key : keys) {
+      Result<Integer> val = copyOnWrite.get(key);
+      bh.consume(val);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.FileReader;
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import ch.cottier.stockAPI.Parser;
+import ch.cottier.stockAPI.Transaction;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Reading and parsing a whole transaction file, with the Scanner based FileReader and with
+ * Parser.parseTransactionFile, see TransactionFileBenchmark for a large one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+  @Param({"100", "1000", "100000"})
+  int size;
+
+  String path;
+
+  @Setup
+  public void setup() throws IOException {
+    path = BenchmarkData.transactionFile(size).getPath();
+  }
+
+  @Benchmark
+  public Result<List<Transaction>> parseTransactionFile() {
+    return Parser.parseTransactionFile(new File(path));
+  }
+
+  @Benchmark
+  public Result<List<Transaction>> parseTransactions() {
+    Result<FileReader> fR = FileReader.read(path);
+    Result<List<Transaction>> lTx = fR.flatMap(Parser::parseTransactions).map(Tuple::_1);
+    fR.flatMap(FileReader::close);
+    return lTx;
+  }
+}
@@ -0,0 +1,74 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import ch.cottier.stockAPI.Portfolio;
+import ch.cottier.stockAPI.Stock;
+import ch.cottier.stockAPI.Transaction;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Portfolio math with the prices coming from memory instead of Yahoo Finance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortfolioBenchmark {
+  @Param({"100", "1000"})
+  int size;
+
+  List<Transaction> transactions;
+  Portfolio initial;
+  List<Transaction> later;
+  LocalDate from;
+  LocalDate to;
+
+  @Setup
+  public void setup() {
+    transactions = BenchmarkData.transactions(size);
+    // TWRR needs a portfolio holding something at the start, one position per symbol is enough
+    from = transactions.get(19).getDate();
+    to = transactions.last().getOrThrow().getDate().plusDays(30);
+    Stock.usePriceSource(BenchmarkData.priceSource(to));
+    initial = Portfolio.portfolio(transactions.filter(tx -> !tx.getDate().isAfter(from)), from)
+                       .getOrThrow();
+    later = transactions.filter(tx -> tx.getDate().isAfter(from));
+  }
+
+  @TearDown
+  public void tearDown() {
+    Stock.useDefaultPriceSource();
+  }
+
+  @Benchmark
+  public Result<BigDecimal> twrr() {
+    return Portfolio.TWRR(initial, later, from, to);
+  }
+
+  @Benchmark
+  public Result<BigDecimal> valueOn() {
+    return Portfolio.valueOn(transactions, to);
+  }
+
+  @Benchmark
+  public Result<List<Tuple<LocalDate, BigDecimal>>> valueSeries() {
+    return Portfolio.valueSeries(transactions, from, to);
+  }
+}
@@ -0,0 +1,44 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.Result;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Chains of flatMap, as built by the parsers and the portfolio folds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultBenchmark {
+  @Param({"10", "1000"})
+  int length;
+
+  @Benchmark
+  public Result<Integer> flatMapSuccess() {
+    Result<Integer> r = Result.success(0);
+    for (int i = 0; i < length; i++)
+      r = r.flatMap(x -> Result.success(x + 1));
+    return r;
+  }
+
+  // The failure short-circuits every following flatMap
+  @Benchmark
+  public Result<Integer> flatMapFailure() {
+    Result<Integer> r = Result.success(0);
+    for (int i = 0; i < length; i++)
+      r = r.flatMap(x -> x == 1 ? Result.failure("failed") : Result.success(x + 1));
+    return r;
+  }
+}
@@ -0,0 +1,64 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Stream;
+import ch.cottier.functionalUtilities.Tuple;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamBenchmark {
+  @Param({"100", "1000"})
+  int size;
+
+  @Benchmark
+  public long unfold() {
+    return Stream.unfold(0, i -> i < size
+            ? Result.success(new Tuple<>(i, i + 1))
+            : Result.empty())
+        .foldLeft(0L, acc -> i -> acc + i);
+  }
+
+  @Benchmark
+  public List<Integer> filter() {
+    return Stream.from(0).filter(i -> i % 3 == 0).take(size).toList();
+  }
+
+  // Reads a chain of maps and a filter twice, failing unless every element went through each
+  // function exactly once
+  @Benchmark
+  public List<Integer> mapFilterTwice() {
+    int[] evaluations = {0};
+    Stream<Integer> s = Stream.from(0).take(size)
+        .map(i -> {
+          evaluations[0]++;
+          return i * 2;
+        })
+        .filter(i -> i % 3 == 0)
+        .map(i -> {
+          evaluations[0]++;
+          return i + 1;
+        });
+    List<Integer> l = s.toList();
+    s.forEach(i -> { });
+    int expected = size + (size + 2) / 3;
+    if (evaluations[0] != expected)
+      throw new IllegalStateException(evaluations[0] + " evaluations instead of " + expected);
+    return l;
+  }
+}
@@ -0,0 +1,48 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.stockAPI.Parser;
+import ch.cottier.stockAPI.Symbol;
+import ch.cottier.stockAPI.Transaction;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+  @Param({"100", "10000", "100000"})
+  int size;
+
+  List<Transaction> transactions;
+
+  @Setup
+  public void setup() {
+    transactions = BenchmarkData.transactions(size);
+  }
+
+  @Benchmark
+  public Map<Symbol, Integer> parsePositions() {
+    return Parser.parsePositions(transactions);
+  }
+
+  @Benchmark
+  public Map<Symbol, BigDecimal> weightedAvgPrice() {
+    return Transaction.weightedAvgPrice(transactions);
+  }
+}
@@ -0,0 +1,58 @@
+package ch.cottier.benchmarks;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.stockAPI.Parser;
+import ch.cottier.stockAPI.Transaction;
+import java.io.File;
+import java.util.Comparator;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parsing a transaction file with a million lines (about 35 MB), and also checking its order and
+ * sorting it as when ingesting it: sequentially, and in chunks on all processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class TransactionFileBenchmark {
+  @Param({"1000000"})
+  int size;
+
+  File file;
+
+  @Setup
+  public void setup() throws IOException {
+    file = BenchmarkData.transactionFile(size);
+  }
+
+  @Benchmark
+  public Result<List<Transaction>> parseTransactionFile() {
+    return Parser.parseTransactionFile(file);
+  }
+
+  @Benchmark
+  public Result<List<Transaction>> parseAndSort() {
+    return Parser.parseTransactionFile(file)
+                 .map(l -> l.sortFP(Comparator.comparing(Transaction::getDate)));
+  }
+
+  @Benchmark
+  public Result<List<Transaction>> parseSortedTransactionFile() {
+    return Parser.parseSortedTransactionFile(file, Runtime.getRuntime().availableProcessors());
+  }
+}
@@ -6,12 +6,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.StreamSupport;
 
 public class DBResultSet implements Input {
   public final ResultSet rSet;
   private final java.util.List<String> colNames;
   private int index = 0;
+  private int[] columns;
 
   private DBResultSet (ResultSet rSet, java.util.List<String> colNames) {
     super();
@@ -49,6 +54,79 @@ public class DBResultSet implements Input {
     return flatMap(x -> f.apply(x).map(t -> t._1));
   }
 
+  /** Decodes every row with decoder. The column indices are only resolved once, on the first row.
+   */
+  public <T> Result<Tuple<List<T>, DBResultSet>> decode(RowDecoder<T> decoder) {
+    try {
+      java.util.List<T> l = new ArrayList<>();
+      while (rSet.next())
+        l.add(decoder.decode(this));
+      return Result.success(new Tuple<>(List.of(l), this));
+    } catch (SQLException | RuntimeException e) {
+      return Result.failure(e);
+    }
+  }
+
+  /** Lazily decodes each row, reading the next row from the cursor only when the stream asks for
+   * it, so the rows are never all held in memory at once. A failure while reading a row ends the
+   * stream after that failure. The underlying ResultSet is not closed by the stream.
+   */
+  public <T> java.util.stream.Stream<Result<T>> stream(RowDecoder<T> decoder) {
+    Spliterator<Result<T>> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+      private boolean done = false;
+
+      @Override
+      public boolean tryAdvance(Consumer<? super Result<T>> action) {
+        if (done)
+          return false;
+
+        try {
+          if (!rSet.next())
+            return !(done = true);
+
+          action.accept(Result.success(decoder.decode(DBResultSet.this)));
+        } catch (SQLException | RuntimeException e) {
+          done = true;
+          action.accept(Result.failure(e));
+        }
+        return true;
+      }
+    };
+    return StreamSupport.stream(rows, false);
+  }
+
+  // Index inside the ResultSet of the column at position pos of colNames
+  private int column(int pos) throws SQLException {
+    if (columns == null) {
+      int[] cols = new int[colNames.size()];
+      for (int i = 0; i < cols.length; i++)
+        cols[i] = rSet.findColumn(colNames.get(i));
+      columns = cols;
+    }
+    return columns[pos];
+  }
+
+  public LocalDate getDate(int pos) throws SQLException {
+    return rSet.getObject(column(pos), LocalDate.class);
+  }
+
+  public String getStr(int pos) throws SQLException {
+    return rSet.getString(column(pos));
+  }
+
+  public int getInt(int pos) throws SQLException {
+    return rSet.getInt(column(pos));
+  }
+
+  public double getDbl(int pos) throws SQLException {
+    return rSet.getDouble(column(pos));
+  }
+
+  public BigDecimal getBigDecimal(int pos) throws SQLException {
+    return rSet.getBigDecimal(column(pos)).setScale(6, RoundingMode.HALF_UP);
+  }
+
   private String nextColName() {
     String name = colNames.get(index);
     index = (index + 1) % colNames.size();
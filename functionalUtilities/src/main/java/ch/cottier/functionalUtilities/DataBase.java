@@ -3,9 +3,13 @@ package ch.cottier.functionalUtilities;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Iterator;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class DataBase {
   Connection conn;
@@ -57,6 +61,86 @@ public class DataBase {
     }
   }
 
+  /** Executes ps once for every row, sending them to the database in batches of batchSize. All rows
+   * are written inside a single transaction, which is rolled back if any of them fails, so either
+   * all rows land in the database or none of them. Returns the number of rows written.
+   */
+  public <T> Result<Integer> executeBatch(PreparedStatement ps, List<T> rows, int batchSize,
+      BiFunction<PreparedStatement, T, Result<PreparedStatement>> setData) {
+    if (batchSize < 1)
+      return Result.failure("Batch size must be at least 1, was " + batchSize);
+
+    return inTransaction(() -> {
+      try {
+        int count = 0;
+        for (T row : rows) {
+          setData.apply(ps, row).getOrThrow();
+          ps.addBatch();
+          if (++count % batchSize == 0)
+            ps.executeBatch();
+        }
+        ps.executeBatch();
+        return Result.success(count);
+      } catch (SQLException | RuntimeException e) {
+        RuntimeException failure = e instanceof RuntimeException re
+            ? re
+            : new IllegalStateException(e.getMessage(), e);
+        try {
+          ps.clearBatch();
+        } catch (SQLException | RuntimeException clearFailure) {
+          failure.addSuppressed(clearFailure);
+        }
+        return Result.failure(failure);
+      }
+    });
+  }
+
+  /** Runs work inside a single transaction: committed if work succeeds, rolled back if it fails or
+   * throws, so either all of its writes land in the database or none of them. Calls nested inside
+   * work (e.g. executeBatch) join that transaction. Auto-commit is only restored once the rollback
+   * succeeded, since restoring it would commit the open transaction; if the rollback fails, the
+   * connection is closed instead, which discards it. Failures of the rollback are added to the
+   * failure of work as suppressed exceptions.
+   */
+  public <T> Result<T> inTransaction(Supplier<Result<T>> work) {
+    try {
+      if (!conn.getAutoCommit())
+        return work.get();
+      conn.setAutoCommit(false);
+    } catch (SQLException e) {
+      return Result.failure(e);
+    }
+
+    RuntimeException failure;
+    try {
+      Result<T> res = work.get();
+      if (!res.isFailure()) {
+        conn.commit();
+        conn.setAutoCommit(true);
+        return res;
+      }
+      failure = res.forEachOrException(ignored -> {})
+          .getOrElse(() -> new IllegalStateException("Transaction failed"));
+    } catch (SQLException e) {
+      failure = new IllegalStateException(e.getMessage(), e);
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+
+    try {
+      conn.rollback();
+      conn.setAutoCommit(true);
+    } catch (SQLException | RuntimeException rollbackFailure) {
+      failure.addSuppressed(rollbackFailure);
+      try {
+        conn.close();
+      } catch (SQLException | RuntimeException closeFailure) {
+        failure.addSuppressed(closeFailure);
+      }
+    }
+    return Result.failure(failure);
+  }
+
   public <T> Result<Tuple<List<T>, DataBase>> mapQuery(String sqlQuery, List<String> colNames, Function<DBResultSet, Result<Tuple<T, Input>>> f) {
     try (Statement s = conn.createStatement()) {
       Result<List<T>> resList =  DBResultSet.resultSet(s.executeQuery(sqlQuery), colNames)
@@ -68,4 +152,68 @@ public class DataBase {
       return Result.failure(e);
     }
   }
+
+  public <T> Result<Tuple<List<T>, DataBase>> mapQuery(String sqlQuery, List<Object> params,
+      List<String> colNames, Function<DBResultSet, Result<Tuple<T, Input>>> f) {
+    try (PreparedStatement ps = prepareQuery(sqlQuery, params)) {
+      Result<List<T>> resList = DBResultSet.resultSet(ps.executeQuery(), colNames)
+                                           .flatMapInput(f)
+                                           .map(Tuple::_1);
+      return resList.map(t -> new Tuple<>(t, this));
+    } catch (SQLException e) {
+      return Result.failure(e);
+    }
+  }
+
+  /** Like mapQuery, but decodes each row positionally with decoder, the column indices of colNames
+   * being resolved only once for the whole query.
+   */
+  public <T> Result<Tuple<List<T>, DataBase>> decodeQuery(String sqlQuery, List<Object> params,
+      List<String> colNames, RowDecoder<T> decoder) {
+    try (PreparedStatement ps = prepareQuery(sqlQuery, params)) {
+      return DBResultSet.resultSet(ps.executeQuery(), colNames)
+          .decode(decoder)
+          .map(t -> new Tuple<>(t._1, this));
+    } catch (SQLException e) {
+      return Result.failure(e);
+    }
+  }
+
+  /** Folds acc over the rows of the query one at a time, while the cursor fetches fetchSize rows
+   * from the database at once, so memory use doesn't depend on the number of rows. The first row
+   * failing to decode ends the fold with its failure.
+   */
+  public <T, U> Result<U> foldQuery(String sqlQuery, List<Object> params, List<String> colNames,
+      int fetchSize, RowDecoder<T> decoder, U identity, Function<U, Function<T, U>> acc) {
+    try (PreparedStatement ps = prepareQuery(sqlQuery, params)) {
+      ps.setFetchSize(fetchSize);
+      try (ResultSet rs = ps.executeQuery()) {
+        Iterator<Result<T>> rows = DBResultSet.resultSet(rs, colNames)
+                                              .stream(decoder)
+                                              .iterator();
+        Result<U> res = Result.success(identity);
+        while (res.isSuccess() && rows.hasNext()) {
+          Result<T> row = rows.next();
+          res = res.flatMap(u -> row.map(t -> acc.apply(u).apply(t)));
+        }
+        return res;
+      }
+    } catch (SQLException e) {
+      return Result.failure(e);
+    }
+  }
+
+  private PreparedStatement prepareQuery(String sqlQuery, List<Object> params) throws SQLException {
+    PreparedStatement ps = conn.prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY,
+        ResultSet.CONCUR_READ_ONLY);
+    try {
+      int i = 1;
+      for (Object param : params)
+        ps.setObject(i++, param);
+      return ps;
+    } catch (SQLException e) {
+      ps.close();
+      throw e;
+    }
+  }
 }
\ No newline at end of file
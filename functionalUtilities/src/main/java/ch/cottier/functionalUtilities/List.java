@@ -29,12 +29,49 @@ public abstract class List<E> extends AbstractSequentialList<E> {
     return new Node<>(e, this);
   }
 
+  public static <E> Builder<E> builder() {
+    return new Builder<>();
+  }
+
+  /** Builds a list front to back: the elements are prepended as they're added, and build reverses
+   * them once. Every node is an ordinary one with a final tail, so the lists built are immutable
+   * and safely published like any other. Adding after build goes on from where it was, the lists
+   * already built don't change. Not thread-safe.
+   */
+  public static final class Builder<E> {
+    private List<E> reversed = list();
+
+    private Builder() {
+    }
+
+    public Builder<E> add(E e) {
+      reversed = reversed.prepend(e);
+      return this;
+    }
+
+    public List<E> build() {
+      return reversed.reverse();
+    }
+  }
+
+  /** The elements produced by f, starting from s, until f returns no element. Built in a loop, so
+   * it works for any number of elements; see Stream.unfold for the lazy variant.
+   */
   public static <E, S> List<E> unfold(S s, Function<S, Result<Tuple<E, S>>> f) {
-    return f.apply(s).map(t -> unfold(t._2, f).prepend(t._1)).getOrElse(list());
+    Builder<E> res = builder();
+    for (Result<Tuple<E, S>> r = f.apply(s); r.isSuccess(); ) {
+      Tuple<E, S> t = r.getOrThrow();
+      res.add(t._1);
+      r = f.apply(t._2);
+    }
+    return res.build();
   }
 
   public <T> List<T> map(Function<E, T> f) {
-    return foldRight(List.list(), e -> acc -> acc.prepend(f.apply(e)));
+    Builder<T> res = builder();
+    for (List<E> l = this; !l.isEmpty(); l = l.tail())
+      res.add(f.apply(l.head()));
+    return res.build();
   }
 
   public <T> List<T> mapWithIdx(Function<Integer, Function<E, T>> f) {
@@ -51,15 +88,21 @@ public abstract class List<E> extends AbstractSequentialList<E> {
   }
 
   public List<E> filter(Function<E, Boolean> p) {
-    return foldRight(List.list(), e -> acc -> p.apply(e) ? acc.prepend(e) : acc);
+    Builder<E> res = builder();
+    for (List<E> l = this; !l.isEmpty(); l = l.tail())
+      if (p.apply(l.head()))
+        res.add(l.head());
+    return res.build();
   }
 
+  // Walks the list backwards so that prepending keeps the elements of a group in order
   public <K> Map<K, List<E>> groupBy(Function<E, K> f) {
-    return foldRight(Map.empty(), e -> m -> {
-      K key = f.apply(e);
-      return m.put(key,
-          m.get(key).getOrElse(list()).prepend(e));
-    });
+    Map.Builder<K, List<E>> m = Map.builder();
+    for (List<E> l = reverse(); !l.isEmpty(); l = l.tail()) {
+      K key = f.apply(l.head());
+      m.put(key, m.get(key).getOrElse(list()).prepend(l.head()));
+    }
+    return m.build();
   }
 
   public <T> T reduce(T identity, BiFunction<T, E, T> f) {
@@ -82,48 +125,39 @@ public abstract class List<E> extends AbstractSequentialList<E> {
     return foldLeftAbsorbEl(acc, zero::equals, f);
   }
   public <T> T foldLeftAbsorbEl(T acc, Function<E, Boolean> p, Function<T, Function<E, T>> f) {
-    return foldLeftAbsorbEl_(this, acc, p, f).eval();
-  }
-  private static <E, T> TailCall<T> foldLeftAbsorbEl_(List<E> l, T acc, Function<E, Boolean> p, Function<T, Function<E, T>> f) {
-    return p.apply(l.head()) || l.isEmpty()
-        ? TailCall.ret(acc)
-        : TailCall.suspend(() -> foldLeftAbsorbEl_(l.tail(), f.apply(acc).apply(l.head()), p, f));
+    for (List<E> l = this; !l.isEmpty() && !p.apply(l.head()); l = l.tail())
+      acc = f.apply(acc).apply(l.head());
+    return acc;
   }
 
   public <T> T foldLeftAbsorbAcc(T acc, T zero, Function<T, Function<E, T>> f) {
     return foldLeftAbsorbAccPred(acc, zero::equals, f);
   }
   public <T> T foldLeftAbsorbAccPred(T acc, Function<T, Boolean> p, Function<T, Function<E, T>> f) {
-    return foldLeftAbsorbAcc_(this, acc, p, f).eval();
-  }
-  private static <E, T> TailCall<T> foldLeftAbsorbAcc_(List<E> l, T acc, Function<T, Boolean> p, Function<T, Function<E, T>> f) {
-    return p.apply(acc) || l.isEmpty()
-        ? TailCall.ret(acc)
-        : TailCall.suspend(() -> foldLeftAbsorbAcc_(l.tail(), f.apply(acc).apply(l.head()), p, f));
+    for (List<E> l = this; !p.apply(acc) && !l.isEmpty(); l = l.tail())
+      acc = f.apply(acc).apply(l.head());
+    return acc;
   }
 
   public <T> T foldLeftWithIdx(T acc, Function<Integer, Function<T, Function<E, T>>> f) {
-    return foldLeftWithIdx_(this, 0, acc, f).eval();
-  }
-  private static <E, T> TailCall<T> foldLeftWithIdx_(List<E> l, int idx, T acc,
-      Function<Integer, Function<T, Function<E, T>>> f) {
-    return l.isEmpty()
-        ? TailCall.ret(acc)
-        : TailCall.suspend(() ->
-            foldLeftWithIdx_(l.tail(), idx + 1, f.apply(idx).apply(acc).apply(l.head()), f));
+    int idx = 0;
+    for (List<E> l = this; !l.isEmpty(); l = l.tail())
+      acc = f.apply(idx++).apply(acc).apply(l.head());
+    return acc;
   }
 
+  // Loops instead of trampolining through TailCall, which would allocate a Suspend per element
   public <T> T foldLeft(T acc, Function<T, Function<E, T>> f) {
-    return foldLeft_(this, acc, f).eval();
-  }
-  private static <E, T> TailCall<T> foldLeft_(List<E> l, T acc, Function<T, Function<E, T>> f) {
-    return l.isEmpty()
-        ? TailCall.ret(acc)
-        : TailCall.suspend(() -> foldLeft_(l.tail(), f.apply(acc).apply(l.head()), f));
+    for (List<E> l = this; !l.isEmpty(); l = l.tail())
+      acc = f.apply(acc).apply(l.head());
+    return acc;
   }
 
   public List<E> reverse() {
-    return foldLeft(list(), acc -> acc::prepend);
+    List<E> res = list();
+    for (List<E> l = this; !l.isEmpty(); l = l.tail())
+      res = res.prepend(l.head());
+    return res;
   }
 
   public static <E> List<E> concat(List<E> l1, List<E> l2) {
@@ -300,7 +334,7 @@ public abstract class List<E> extends AbstractSequentialList<E> {
         .getActualTypeArguments()[0];
     }
   }
-  private static final class Node<E> extends List<E> {
+  private static class Node<E> extends List<E> {
     private final E head;
     private final List<E> tail;
 
@@ -363,14 +397,15 @@ public abstract class List<E> extends AbstractSequentialList<E> {
     if (size == -1)
       return size = isEmpty()
           ? 0
-          : size_(0, this).eval();
+          : size_(this);
     else
       return size;
   }
-  private static <E> TailCall<Integer> size_(int acc, List<E> l) {
-    return l.isEmpty()
-        ? TailCall.ret(acc)
-        : TailCall.suspend(() -> size_(acc + 1, l.tail()));
+  private static <E> int size_(List<E> l) {
+    int size = 0;
+    for (; !l.isEmpty(); l = l.tail())
+      size++;
+    return size;
   }
 
   @Override
@@ -1,41 +1,52 @@
 package ch.cottier.functionalUtilities;
 
-import java.util.Enumeration;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
+/** Persistent map, implemented as a hash array mapped trie: every put only copies the nodes on the
+ * path from the root to the key (at most 7 levels of up to 32 entries each) and shares all the
+ * rest with the map it was derived from.
+ */
 @SuppressWarnings("unused")
 public class Map<K, V> {
-  private final ConcurrentHashMap<K, V> m;
-
-  private Map() {
-    this(new ConcurrentHashMap<>());
-  }
-
-  private Map(ConcurrentHashMap<K, V> m) {
-    this.m = m;
+  @SuppressWarnings("rawtypes")
+  private static final Map EMPTY = new Map<>(BitmapNode.EMPTY, 0);
+  private static final Object NOT_FOUND = new Object();
+  private final Node root;
+  private final int size;
+
+  private Map(Node root, int size) {
+    this.root = root;
+    this.size = size;
   }
 
   public static <K, V> Map<K, V> empty() {
-    return new Map<>();
+    //noinspection unchecked
+    return EMPTY;
   }
 
   public boolean containsKey(K key) {
-    return m.containsKey(key);
+    return root.find(0, hash(key), key) != NOT_FOUND;
   }
 
   public int size() {
-    return m.size();
+    return size;
   }
 
   public boolean isEmpty() {
-    return m.isEmpty();
+    return size == 0;
   }
 
   public Result<V> get(K key) {
-    return m.containsKey(key)
-        ? Result.success(m.get(key))
-        : Result.empty();
+    Object val = root.find(0, hash(key), key);
+    //noinspection unchecked
+    return val == NOT_FOUND
+        ? Result.empty()
+        : Result.success((V) val);
   }
 
   public static <K, V> Map<K, V> add(Map<K, V> m, K key, V val) {
@@ -43,9 +54,60 @@ public class Map<K, V> {
   }
 
   public Map<K, V> put(K key, V val) {
-    ConcurrentHashMap<K, V> newMap = new ConcurrentHashMap<>(m);
-    newMap.put(key, val);
-    return new Map<>(newMap);
+    Objects.requireNonNull(key);
+    Objects.requireNonNull(val);
+    boolean[] added = new boolean[1];
+    Node newRoot = root.put(null, 0, hash(key), key, val, added);
+    return newRoot == root
+        ? this
+        : new Map<>(newRoot, added[0] ? size + 1 : size);
+  }
+
+  public static <K, V> Builder<K, V> builder() {
+    return new Builder<>();
+  }
+
+  /** Builds a map by changing its nodes in place instead of copying the path to every key put.
+   * The nodes created by a builder belong to it until build, which returns them as a Map in O(1);
+   * later puts copy them again before changing anything, so the builder can go on without
+   * affecting the maps already built. Not thread-safe.
+   */
+  public static final class Builder<K, V> {
+    private Object edit = new Object();
+    private Node root = BitmapNode.EMPTY;
+    private int size;
+
+    private Builder() {
+    }
+
+    public Builder<K, V> put(K key, V val) {
+      Objects.requireNonNull(key);
+      Objects.requireNonNull(val);
+      boolean[] added = new boolean[1];
+      root = root.put(edit, 0, hash(key), key, val, added);
+      if (added[0])
+        size++;
+      return this;
+    }
+
+    public Result<V> get(K key) {
+      Object val = root.find(0, hash(key), key);
+      //noinspection unchecked
+      return val == NOT_FOUND
+          ? Result.empty()
+          : Result.success((V) val);
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public Map<K, V> build() {
+      edit = new Object();
+      return size == 0
+          ? empty()
+          : new Map<>(root, size);
+    }
   }
 
   public Stream<Tuple<K, V>> stream() {
@@ -68,37 +130,54 @@ public class Map<K, V> {
     return stream(ignoreKey -> val -> f.apply(val));
   }
 
+  // The state of the stream is the path of (node, next slot) from the current node up to the root,
+  // so walking the same stream twice yields the same entries
   public <U> Stream<U> stream(Function<K, Function<V, U>> f) {
-    Function<Tuple<Enumeration<K>, ConcurrentHashMap<K, V>>,
-        Result<Tuple<U, Tuple<Enumeration<K>, ConcurrentHashMap<K, V>>>>> next =
-        t -> {
-          if (t._1.hasMoreElements()) {
-            K key = t._1.nextElement();
-            return Result.success(new Tuple<>(f.apply(key).apply(m.get(key)), t));
-          } else {
-            return Result.empty();
-          }
-        };
+    List<Tuple<Node, Integer>> init = List.<Tuple<Node, Integer>>list().prepend(new Tuple<>(root, 0));
+    return Stream.unfold(init, path -> Map.<K, V>nextEntry(path)
+        .map(t -> new Tuple<>(f.apply(t._1._1).apply(t._1._2), t._2)));
+  }
 
-    Tuple<Enumeration<K>, ConcurrentHashMap<K, V>> init = new Tuple<>(m.keys(), m);
-    return Stream.unfold(init, next);
+  private static <K, V> Result<Tuple<Tuple<K, V>, List<Tuple<Node, Integer>>>> nextEntry(
+      List<Tuple<Node, Integer>> path) {
+    while (!path.isEmpty()) {
+      Node node = path.head()._1;
+      int slot = path.head()._2;
+      if (slot >= node.slots()) {
+        path = path.tail();
+        continue;
+      }
+
+      List<Tuple<Node, Integer>> rest = path.tail().prepend(new Tuple<>(node, slot + 1));
+      Object key = node.slotKey(slot);
+      Object val = node.slotVal(slot);
+      if (key == null) {
+        path = rest.prepend(new Tuple<>((Node) val, 0));
+      } else {
+        //noinspection unchecked
+        return Result.success(new Tuple<>(new Tuple<>((K) key, (V) val), rest));
+      }
+    }
+    return Result.empty();
   }
 
   public List<Tuple<K, V>> toList() {
-    return this.stream().toList();
+    return List.of(entries());
   }
 
   public <U> List<U> toList(Function<K, Function<V, U>> f) {
-    return this.stream(f).toList();
+    java.util.List<U> l = new ArrayList<>(size);
+    forEachEntry((key, val) -> l.add(f.apply(key).apply(val)));
+    return List.of(l);
   }
 
   public <U, W> Map<U, W> forEach(Function<K, Function<V, Tuple<U, W>>> f) {
-    ConcurrentHashMap<U, W> m2 = new ConcurrentHashMap<>();
-    for (java.util.Map.Entry<K, V> entry : m.entrySet()) {
-      Tuple<U, W> t = f.apply(entry.getKey()).apply(entry.getValue());
+    Builder<U, W> m2 = builder();
+    forEachEntry((key, val) -> {
+      Tuple<U, W> t = f.apply(key).apply(val);
       m2.put(t._1, t._2);
-    }
-    return new Map<>(m2);
+    });
+    return m2.build();
   }
 
   public <U, W> Map<K, W> zipValWith(Map<K, U> map, Function<K, Function<V, Function<U, W>>> f) {
@@ -112,13 +191,11 @@ public class Map<K, V> {
     if (map1.size() != map2.size())
       throw new IllegalStateException("Both maps must be of the same size");
 
-    if (!map1.m.keySet().containsAll(map2.m.keySet())
-      || !map2.m.keySet().containsAll(map1.m.keySet()))
-      throw new IllegalStateException("Both maps must have the same set of keys");
+    for (Tuple<K, V> entry : map1.entries())
+      if (!map2.containsKey(entry._1))
+        throw new IllegalStateException("Both maps must have the same set of keys");
 
-    return map1.forEach(key -> val1 ->
-        new Tuple<>(key,
-            f.apply(key).apply(val1).apply(map2.get(key).getOrThrow())));
+    return map1.map(key -> val1 -> f.apply(key).apply(val1).apply(map2.get(key).getOrThrow()));
   }
 
   @Override
@@ -128,7 +205,9 @@ public class Map<K, V> {
 
   @Override
   public int hashCode() {
-    return super.hashCode() + 42;
+    int[] h = {0};
+    forEachEntry((key, val) -> h[0] += key.hashCode() ^ val.hashCode());
+    return h[0];
   }
 
   @Override
@@ -139,8 +218,13 @@ public class Map<K, V> {
     if (!(obj instanceof Map<?, ?> that))
       return false;
 
-    return m.size() == that.m.size()
-        && this.stream().equals(that.stream());
+    if (size != that.size)
+      return false;
+
+    for (Tuple<K, V> entry : entries())
+      if (!entry._2.equals(that.root.find(0, hash(entry._1), entry._1)))
+        return false;
+    return true;
   }
 
   public <U> Map<K, U> mapVal(Function<V, U> f) {
@@ -152,47 +236,299 @@ public class Map<K, V> {
   }
 
   public <U> Map<U, V> mapKey(Function<K, U> f) {
-    ConcurrentHashMap<U, V> m2 = new ConcurrentHashMap<>();
-    for (java.util.Map.Entry<K, V> entry : m.entrySet())
-      m2.put(f.apply(entry.getKey()), entry.getValue());
-    return new Map<>(m2);
-   }
-
-   public <U> Map<K, U> map(Function<K, Function<V, U>> f) {
-     ConcurrentHashMap<K, U> m2 = new ConcurrentHashMap<>();
-     for (K key : m.keySet())
-       m2.put(key, f.apply(key).apply(m.get(key)));
-     return new Map<>(m2);
-   }
+    Builder<U, V> m2 = builder();
+    forEachEntry((key, val) -> m2.put(f.apply(key), val));
+    return m2.build();
+  }
+
+  // Same keys, so the shape of the trie doesn't change, only the values are replaced
+  public <U> Map<K, U> map(Function<K, Function<V, U>> f) {
+    //noinspection unchecked
+    return new Map<>(root.mapVals((key, val) -> f.apply((K) key).apply((V) val)), size);
+  }
 
   public Map<K, V> filter(Function<K, Function<V, Boolean>> p) {
-    ConcurrentHashMap<K, V> m2 = new ConcurrentHashMap<>();
-    for (K key : m.keySet()) {
-      V val = m.get(key);
+    Builder<K, V> m2 = builder();
+    forEachEntry((key, val) -> {
       if (p.apply(key).apply(val))
         m2.put(key, val);
+    });
+    return m2.build();
+  }
+
+  // The result is the last key that isn't a success, if there is one
+  public static <K, V> Result<Map<K, V>> flattenResultKey(Map<Result<K>, V> map) {
+    Builder<K, V> resMap = builder();
+    Result<Map<K, V>> notSuccess = null;
+    for (Tuple<Result<K>, V> entry : map.entries()) {
+      if (entry._1.isSuccess())
+        resMap.put(entry._1.getOrThrow(), entry._2);
+      else
+        notSuccess = entry._1.map(ignored -> Map.<K, V>empty());
+    }
+    return notSuccess == null
+        ? Result.success(resMap.build())
+        : notSuccess;
+  }
+
+  // The result is the last value that isn't a success, if there is one
+  public static <K, V> Result<Map<K, V>> flattenResultVal(Map<K, Result<V>> map) {
+    Builder<K, V> resMap = builder();
+    Result<Map<K, V>> notSuccess = null;
+    for (Tuple<K, Result<V>> entry : map.entries()) {
+      if (entry._2.isSuccess())
+        resMap.put(entry._1, entry._2.getOrThrow());
+      else
+        notSuccess = entry._2.map(ignored -> Map.<K, V>empty());
+    }
+    return notSuccess == null
+        ? Result.success(resMap.build())
+        : notSuccess;
+  }
+
+  private java.util.List<Tuple<K, V>> entries() {
+    java.util.List<Tuple<K, V>> l = new ArrayList<>(size);
+    forEachEntry((key, val) -> l.add(new Tuple<>(key, val)));
+    return l;
+  }
+
+  private void forEachEntry(BiConsumer<K, V> f) {
+    //noinspection unchecked
+    root.forEach((key, val) -> f.accept((K) key, (V) val));
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  // 5 bits of the hash per level of the trie
+  private static int bitpos(int hash, int shift) {
+    return 1 << ((hash >>> shift) & 0x1f);
+  }
+
+  /** Every node is made of slots, each holding either a key and its value, or a null key and a
+   * child node as value.
+   */
+  private static abstract class Node {
+    abstract Object find(int shift, int hash, Object key);
+    // edit is the builder the nodes created are changed in place for, null for a copying put
+    abstract Node put(Object edit, int shift, int hash, Object key, Object val, boolean[] added);
+    abstract Node mapVals(BiFunction<Object, Object, Object> f);
+    abstract void forEach(BiConsumer<Object, Object> f);
+    abstract int slots();
+    abstract Object slotKey(int slot);
+    abstract Object slotVal(int slot);
+  }
+
+  private static final class BitmapNode extends Node {
+    static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+    // Only changed by the builder owning the node, before the node is part of a built map
+    private final Object edit;
+    private int bitmap;
+    private Object[] array;
+
+    BitmapNode(Object edit, int bitmap, Object[] array) {
+      this.edit = edit;
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    Object find(int shift, int hash, Object key) {
+      int bit = bitpos(hash, shift);
+      if ((bitmap & bit) == 0)
+        return NOT_FOUND;
+
+      int idx = index(bit);
+      Object k = array[2 * idx];
+      Object v = array[2 * idx + 1];
+      return k == null
+          ? ((Node) v).find(shift + 5, hash, key)
+          : key.equals(k) ? v : NOT_FOUND;
+    }
+
+    @Override
+    Node put(Object edit, int shift, int hash, Object key, Object val, boolean[] added) {
+      int bit = bitpos(hash, shift);
+      int idx = index(bit);
+      if ((bitmap & bit) == 0) {
+        added[0] = true;
+        Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, 2 * idx);
+        newArray[2 * idx] = key;
+        newArray[2 * idx + 1] = val;
+        System.arraycopy(array, 2 * idx, newArray, 2 * idx + 2, array.length - 2 * idx);
+        return with(edit, bitmap | bit, newArray);
+      }
+
+      Object k = array[2 * idx];
+      Object v = array[2 * idx + 1];
+      if (k == null) {
+        Node child = ((Node) v).put(edit, shift + 5, hash, key, val, added);
+        return child == v ? this : withSlot(edit, idx, null, child);
+      }
+      if (key.equals(k))
+        return val == v ? this : withSlot(edit, idx, k, val);
+
+      added[0] = true;
+      return withSlot(edit, idx, null, pair(edit, shift + 5, hash(k), k, v, hash, key, val));
+    }
+
+    private BitmapNode withSlot(Object edit, int idx, Object key, Object val) {
+      Object[] newArray = owned(edit) ? array : array.clone();
+      newArray[2 * idx] = key;
+      newArray[2 * idx + 1] = val;
+      return with(edit, bitmap, newArray);
+    }
+
+    private BitmapNode with(Object edit, int bitmap, Object[] array) {
+      if (!owned(edit))
+        return new BitmapNode(edit, bitmap, array);
+      this.bitmap = bitmap;
+      this.array = array;
+      return this;
+    }
+
+    private boolean owned(Object edit) {
+      return edit != null && edit == this.edit;
+    }
+
+    // Node holding two different keys, that collided at the level above
+    private static Node pair(Object edit, int shift, int hash1, Object key1, Object val1,
+        int hash2, Object key2, Object val2) {
+      if (hash1 == hash2)
+        return new CollisionNode(edit, hash1, new Object[] {key1, val1, key2, val2});
+
+      boolean[] ignored = new boolean[1];
+      return EMPTY.put(edit, shift, hash1, key1, val1, ignored)
+          .put(edit, shift, hash2, key2, val2, ignored);
     }
-    return new Map<>(m2);
-  }
-
-   public static <K, V> Result<Map<K, V>> flattenResultKey(Map<Result<K>, V> map) {
-     Result<Map<K, V>> resMap = Result.success(Map.empty());
-     for (java.util.Map.Entry<Result<K>, V> entry : map.m.entrySet())
-       resMap = putResultKey(resMap, entry.getKey(), entry.getValue());
-     return resMap;
-   }
-   private static <K, V> Result<Map<K, V>> putResultKey(Result<Map<K, V>> rMap, Result<K> rKey, V val) {
-     return rKey.flatMap(k -> rMap.map(m -> m.put(k, val)));
-   }
-
-   public static <K, V> Result<Map<K, V>> flattenResultVal(Map<K, Result<V>> map) {
-     Result<Map<K, V>> resMap = Result.success(Map.empty());
-     for (java.util.Map.Entry<K, Result<V>> entry : map.m.entrySet())
-       resMap = putResultVal(resMap, entry.getKey(), entry.getValue());
-     return resMap;
-   }
-   private static <K, V> Result<Map<K, V>> putResultVal(Result<Map<K, V>> map, K key, Result<V> val) {
-     return val.flatMap(v -> map.map(m -> m.put(key, v)));
-
-   }
-}
\ No newline at end of file
+
+    @Override
+    Node mapVals(BiFunction<Object, Object, Object> f) {
+      Object[] newArray = new Object[array.length];
+      for (int i = 0; i < array.length; i += 2) {
+        newArray[i] = array[i];
+        newArray[i + 1] = array[i] == null
+            ? ((Node) array[i + 1]).mapVals(f)
+            : f.apply(array[i], array[i + 1]);
+      }
+      return new BitmapNode(null, bitmap, newArray);
+    }
+
+    @Override
+    void forEach(BiConsumer<Object, Object> f) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (array[i] == null)
+          ((Node) array[i + 1]).forEach(f);
+        else
+          f.accept(array[i], array[i + 1]);
+      }
+    }
+
+    @Override
+    int slots() {
+      return array.length / 2;
+    }
+
+    @Override
+    Object slotKey(int slot) {
+      return array[2 * slot];
+    }
+
+    @Override
+    Object slotVal(int slot) {
+      return array[2 * slot + 1];
+    }
+  }
+
+  // All keys with exactly the same hash
+  private static final class CollisionNode extends Node {
+    private final Object edit;
+    private final int hash;
+    private Object[] array;
+
+    CollisionNode(Object edit, int hash, Object[] array) {
+      this.edit = edit;
+      this.hash = hash;
+      this.array = array;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2)
+        if (key.equals(array[i]))
+          return i;
+      return -1;
+    }
+
+    @Override
+    Object find(int shift, int hash, Object key) {
+      int i = hash == this.hash ? indexOf(key) : -1;
+      return i < 0 ? NOT_FOUND : array[i + 1];
+    }
+
+    @Override
+    Node put(Object edit, int shift, int hash, Object key, Object val, boolean[] added) {
+      if (hash != this.hash)
+        return new BitmapNode(edit, bitpos(this.hash, shift), new Object[] {null, this})
+            .put(edit, shift, hash, key, val, added);
+
+      boolean owned = edit != null && edit == this.edit;
+      int i = indexOf(key);
+      if (i >= 0) {
+        if (array[i + 1] == val)
+          return this;
+        Object[] newArray = owned ? array : array.clone();
+        newArray[i + 1] = val;
+        return with(owned, edit, newArray);
+      }
+
+      added[0] = true;
+      Object[] newArray = Arrays.copyOf(array, array.length + 2);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = val;
+      return with(owned, edit, newArray);
+    }
+
+    private CollisionNode with(boolean owned, Object edit, Object[] array) {
+      if (!owned)
+        return new CollisionNode(edit, hash, array);
+      this.array = array;
+      return this;
+    }
+
+    @Override
+    Node mapVals(BiFunction<Object, Object, Object> f) {
+      Object[] newArray = array.clone();
+      for (int i = 0; i < array.length; i += 2)
+        newArray[i + 1] = f.apply(array[i], array[i + 1]);
+      return new CollisionNode(null, hash, newArray);
+    }
+
+    @Override
+    void forEach(BiConsumer<Object, Object> f) {
+      for (int i = 0; i < array.length; i += 2)
+        f.accept(array[i], array[i + 1]);
+    }
+
+    @Override
+    int slots() {
+      return array.length / 2;
+    }
+
+    @Override
+    Object slotKey(int slot) {
+      return array[2 * slot];
+    }
+
+    @Override
+    Object slotVal(int slot) {
+      return array[2 * slot + 1];
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package ch.cottier.functionalUtilities;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/** Amounts of money as a plain long of micro-units (millionths), i.e. the unscaled value of a
+ * BigDecimal with scale 6. Sums and multiples by a number of shares are exact integer arithmetic
+ * without any allocation, so that loops over many prices don't create a BigDecimal per step;
+ * the only rounding happens in ratio, and converting back with toBigDecimal gives exactly the
+ * BigDecimal (value and scale) the same computation with scale 6 BigDecimals would.
+ *
+ * <p>All operations throw an ArithmeticException instead of overflowing, which only happens for
+ * amounts above 9 trillion.
+ */
+public final class Money {
+  public static final int SCALE = 6;
+  public static final long ONE = 1_000_000L;
+  public static final long ZERO = 0L;
+  private static final long RATIO_LIMIT = Long.MAX_VALUE / ONE;
+
+  private Money() {
+  }
+
+  /** Amount rounded (half up) to micro-units.
+   */
+  public static long micros(BigDecimal amount) {
+    return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+  }
+
+  /** Amount with scale 6.
+   */
+  public static BigDecimal toBigDecimal(long micros) {
+    return BigDecimal.valueOf(micros, SCALE);
+  }
+
+  public static long add(long micros1, long micros2) {
+    return Math.addExact(micros1, micros2);
+  }
+
+  public static long subtract(long micros1, long micros2) {
+    return Math.subtractExact(micros1, micros2);
+  }
+
+  /** Price of numShares shares at price micros each.
+   */
+  public static long times(long micros, long numShares) {
+    return Math.multiplyExact(micros, numShares);
+  }
+
+  /** dividend / divisor with 6 decimals, rounded half up, the same as
+   * toBigDecimal(dividend).divide(toBigDecimal(divisor), RoundingMode.HALF_UP).
+   */
+  public static long ratio(long dividend, long divisor) {
+    if (divisor == 0)
+      throw new ArithmeticException("Division by zero");
+    if (dividend <= -RATIO_LIMIT || dividend >= RATIO_LIMIT || divisor == Long.MIN_VALUE)
+      return micros(toBigDecimal(dividend).divide(toBigDecimal(divisor), RoundingMode.HALF_UP));
+
+    long scaled = dividend * ONE;
+    long quotient = scaled / divisor;
+    long remainder = Math.abs(scaled % divisor);
+    // half up: away from zero if the remainder is at least half the divisor
+    if (remainder >= Math.abs(divisor) - remainder)
+      quotient += Long.signum(scaled) * Long.signum(divisor);
+    return quotient;
+  }
+}
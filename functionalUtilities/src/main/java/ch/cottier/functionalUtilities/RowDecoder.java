@@ -0,0 +1,11 @@
+package ch.cottier.functionalUtilities;
+
+import java.sql.SQLException;
+
+/** Decodes the current row of a DBResultSet straight into a value, using the positional accessors
+ * of DBResultSet, without going through Input and its Tuple/Result per value.
+ */
+@FunctionalInterface
+public interface RowDecoder<T> {
+  T decode(DBResultSet row) throws SQLException;
+}
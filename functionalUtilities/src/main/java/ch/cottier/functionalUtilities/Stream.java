@@ -1,5 +1,7 @@
 package ch.cottier.functionalUtilities;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -16,7 +18,7 @@ public abstract class Stream<T> {
   public abstract <U> Stream<U> map(Function<T, U> f);
 
   public static <T, S> Stream<T> unfold(S s, Function<S, Result<Tuple<T, S>>> f) {
-    return f.apply(s).map(t -> cons(() -> t._1, () -> unfold(t._2, f))).getOrElse(empty());
+    return f.apply(s).map(t -> Stream.<T>cons(t._1, () -> unfold(t._2, f))).getOrElse(empty());
   }
 
   public static <T> Stream<T> repeat(T value) {
@@ -28,52 +30,46 @@ public abstract class Stream<T> {
   }
 
   public List<T> toList() {
-    return foldRight(List.list(), e -> acc -> acc.prepend(e));
+    return reversed(e -> false).reverse();
+  }
+
+  // The elements up to the first one matching stop (excluded), in reverse order. A loop instead of
+  // recursion, so that it neither overflows the stack nor allocates more than a node per element
+  private List<T> reversed(Function<T, Boolean> stop) {
+    List<T> res = List.list();
+    for (Stream<T> s = this; !s.isEmpty(); s = s.tail()) {
+      T e = s.head();
+      if (stop.apply(e))
+        break;
+      res = res.prepend(e);
+    }
+    return res;
   }
 
   public Stream<T> filter(Function<T, Boolean> p) {
     Stream<T> s = dropWhile(e -> !p.apply(e));
     return s.isEmpty()
         ? s
-        : cons(s::head, () -> s.tail().filter(p));
+        : cons(s.head(), () -> s.tail().filter(p));
   }
 
   public static <T> Stream<T> dropWhile(Stream<T> s, Function<T, Boolean> p) {
     return s.dropWhile(p);
   }
   public Stream<T> dropWhile(Function<T, Boolean> p) {
-    return dropWhile_(this, p).eval();
-  }
-  private static <T> TailCall<Stream<T>> dropWhile_(Stream<T> s, Function<T, Boolean> p) {
-    return s.isEmpty()
-        ? TailCall.ret(s)
-        : p.apply(s.head())
-          ? TailCall.suspend(() -> dropWhile_(s.tail(), p))
-          : TailCall.ret(s);
+    Stream<T> s = this;
+    while (!s.isEmpty() && p.apply(s.head()))
+      s = s.tail();
+    return s;
   }
 
   public void forEach(Effect<T> ef) {
-//    forEach_(this, ef).eval();
-    forEachRec_(this, ef);
-  }
-
-  private static <T> void forEachRec_(Stream<T> s, Effect<T> ef) {
-    if (s.isEmpty())
-      return;
-    ef.apply(s.head());
-    forEachRec_(s.tail(), ef);
-  }
-  private static <T> TailCall<IO<Nothing>> forEach_(Stream<T> s, Effect<T> ef) {
-    ef.apply(s.head());
-    return s.isEmpty()
-        ? TailCall.ret(IO.empty)
-        : TailCall.suspend(() -> forEach_(s.tail(), ef));
+    for (Stream<T> s = this; !s.isEmpty(); s = s.tail())
+      ef.apply(s.head());
   }
 
   public <U> U foldRight(U acc, Function<T, Function<U, U>> f) {
-    return this.isEmpty()
-        ? acc
-        : f.apply(head()).apply(tail().foldRight(acc, f));
+    return reversed(e -> false).foldLeft(acc, accx -> e -> f.apply(e).apply(accx));
   }
 
   public <U> U foldRightAbsorbElement(U acc, T zero, Function<T, Function<U, U>> f) {
@@ -81,34 +77,30 @@ public abstract class Stream<T> {
   }
 
   public <U> U foldRightAbsorbElement(U acc, Function<T, Boolean> p, Function<T, Function<U, U>> f) {
-    return this.isEmpty() || p.apply(head())
-        ? acc
-        : f.apply(head()).apply(tail().foldRightAbsorbElement(acc, p, f));
+    return reversed(p).foldLeft(acc, accx -> e -> f.apply(e).apply(accx));
   }
 
   public <U> U foldLeft(U acc, Function<U, Function<T, U>> f) {
-    return foldLeft_(this, acc, f).eval();
+    return foldLeft(this, acc, f);
   }
   public static <T, U> U foldLeft(Stream<T> stream, U acc, Function<U, Function<T, U>> f) {
-    return foldLeft_(stream, acc, f).eval();
-  }
-  private static <T, U> TailCall<U> foldLeft_(Stream<T> s, U acc, Function<U, Function<T, U>> f) {
-    return s.isEmpty()
-        ? TailCall.ret(acc)
-        : TailCall.suspend(() -> foldLeft_(s.tail(), f.apply(acc).apply(s.head()), f));
+    for (Stream<T> s = stream; !s.isEmpty(); s = s.tail())
+      acc = f.apply(acc).apply(s.head());
+    return acc;
   }
 
-  // Ignores empty values
+  // Ignores empty values, fails with the first failure
   public static <T> Result<Stream<T>> flattenResult(Stream<Result<T>> s) {
-    //noinspection unchecked
-    return s.isEmpty()
-        ? Result.success(empty())
-        : s.head().isEmpty()
-          ? flattenResult(s.tail())
-          : s.head().isFailure()
-            ? (Result<Stream<T>>) s.head()
-            : flattenResult(s.tail()).flatMap(acc -> s.head().map(el ->
-                cons(() -> el, () -> acc)));
+    List<T> values = List.list();
+    for (Stream<Result<T>> rest = s; !rest.isEmpty(); rest = rest.tail()) {
+      Result<T> r = rest.head();
+      if (r.isFailure())
+        //noinspection unchecked
+        return (Result<Stream<T>>) r;
+      if (!r.isEmpty())
+        values = values.prepend(r.getOrThrow());
+    }
+    return Result.success(of(values.reverse()));
   }
 
   private static class Empty<T> extends Stream<T> {
@@ -134,7 +126,7 @@ public abstract class Stream<T> {
 
     @Override
     protected Stream<T> cons(T t) {
-      return cons(() -> t, Stream::empty);
+      return new Cons<>(t, this);
     }
 
     @Override
@@ -148,18 +140,58 @@ public abstract class Stream<T> {
     }
   }
 
-  private static class Cons<T> extends Stream<T> {
-    private final Supplier<T> head;
-    private final Supplier<Stream<T>> tail;
+  /** Cell evaluating its head and its tail at most once: the first access evaluates the supplier
+   * and caches the result, later ones return it. Thread-safe: the thread winning the
+   * compare-and-set evaluates, the others spin for a short while, then block until its result is
+   * there. If the supplier throws, the cell is reset and the next access evaluates it again. A
+   * supplier reading its own cell (a stream referring to itself) throws an IllegalStateException.
+   */
+  private static final class Cons<T> extends Stream<T> {
+    private static final Object NULL = new Object();
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+      try {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        HEAD = lookup.findVarHandle(Cons.class, "head", Object.class);
+        TAIL = lookup.findVarHandle(Cons.class, "tail", Object.class);
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
 
-    protected Cons(Supplier<T> head, Supplier<Stream<T>> tail) {
-      this.head = head;
-      this.tail = tail;
+    // Dropped once evaluated, so that the cell doesn't keep what they capture alive
+    private Supplier<T> headSupplier;
+    private Supplier<Stream<T>> tailSupplier;
+    // null until evaluated, an Evaluation while being evaluated, then the value (NULL for null).
+    // Read with acquire and published with release semantics through the VarHandles
+    private Object head;
+    private Object tail;
+
+    private Cons(Supplier<T> head, Supplier<Stream<T>> tail) {
+      this.headSupplier = head;
+      this.tailSupplier = tail;
     }
 
+    // Plain writes for the values known upfront, like for the suppliers
+    private Cons(T head, Supplier<Stream<T>> tail) {
+      HEAD.set(this, head == null ? NULL : head);
+      this.tailSupplier = tail;
+    }
+
+    private Cons(T head, Stream<T> tail) {
+      HEAD.set(this, head == null ? NULL : head);
+      TAIL.set(this, tail);
+    }
+
+    @SuppressWarnings("unchecked")
     @Override
     public T head() {
-      return head.get();
+      Object h = HEAD.getAcquire(this);
+      if (h == null || h instanceof Evaluation)
+        h = evaluateHead();
+      return h == NULL ? null : (T) h;
     }
 
     @Override
@@ -167,9 +199,108 @@ public abstract class Stream<T> {
       return Result.success(head());
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public Stream<T> tail() {
-      return tail.get();
+      Object t = TAIL.getAcquire(this);
+      if (t == null || t instanceof Evaluation)
+        t = evaluateTail();
+      return (Stream<T>) t;
+    }
+
+    private Object evaluateHead() {
+      for (int spins = 0; ; spins++) {
+        Object h = HEAD.getAcquire(this);
+        if (h instanceof Evaluation running) {
+          running.await(spins);
+          continue;
+        }
+        if (h != null)
+          return h;
+
+        Evaluation own = new Evaluation();
+        if (HEAD.compareAndSet(this, null, own)) {
+          Object res;
+          try {
+            res = headSupplier.get();
+          } catch (RuntimeException | Error e) {
+            HEAD.setRelease(this, null);
+            own.finish();
+            throw e;
+          }
+          headSupplier = null;
+          if (res == null)
+            res = NULL;
+          HEAD.setRelease(this, res);
+          own.finish();
+          return res;
+        }
+      }
+    }
+
+    private Object evaluateTail() {
+      for (int spins = 0; ; spins++) {
+        Object t = TAIL.getAcquire(this);
+        if (t instanceof Evaluation running) {
+          running.await(spins);
+          continue;
+        }
+        if (t != null)
+          return t;
+
+        Evaluation own = new Evaluation();
+        if (TAIL.compareAndSet(this, null, own)) {
+          Stream<T> res;
+          try {
+            res = tailSupplier.get();
+          } catch (RuntimeException | Error e) {
+            TAIL.setRelease(this, null);
+            own.finish();
+            throw e;
+          }
+          tailSupplier = null;
+          TAIL.setRelease(this, res);
+          own.finish();
+          return res;
+        }
+      }
+    }
+
+    /** Head or tail being evaluated by owner. Other threads spin a few times, in case it's quick,
+     * then block until it's finished, so that a long evaluation doesn't keep a core busy per
+     * waiting thread.
+     */
+    private static final class Evaluation {
+      private static final int SPINS = 100;
+      private final Thread owner = Thread.currentThread();
+      private boolean finished; // guarded by this
+
+      void await(int spins) {
+        if (owner == Thread.currentThread())
+          throw new IllegalStateException("Stream cell read while evaluating it, the stream refers "
+              + "to itself");
+        if (spins < SPINS) {
+          Thread.onSpinWait();
+          return;
+        }
+
+        boolean interrupted = false;
+        synchronized (this) {
+          while (!finished)
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+        }
+        if (interrupted)
+          Thread.currentThread().interrupt();
+      }
+
+      synchronized void finish() {
+        finished = true;
+        notifyAll();
+      }
     }
 
     @Override
@@ -179,19 +310,24 @@ public abstract class Stream<T> {
 
     @Override
     protected Stream<T> cons(T t) {
-      return new Cons<>(() -> t, () -> this);
+      return new Cons<>(t, this);
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public Stream<T> take(int i) {
-      return i <= 0
-          ? empty()
-          : cons(head, () -> tail().take(i - 1));
+      if (i <= 0)
+        return empty();
+      // no need to defer a head that's already there
+      Object h = HEAD.getAcquire(this);
+      return h == null || h instanceof Evaluation
+          ? cons(this::head, () -> tail().take(i - 1))
+          : new Cons<>(h == NULL ? null : (T) h, () -> tail().take(i - 1));
     }
 
     @Override
     public <U> Stream<U> map(Function<T, U> f) {
-      return cons(() -> f.apply(head.get()), () -> tail().map(f));
+      return cons(() -> f.apply(head()), () -> tail().map(f));
     }
   }
 
@@ -199,8 +335,12 @@ public abstract class Stream<T> {
     return new Cons<>(hd, tl);
   }
 
+  private static <T> Stream<T> cons(T hd, Supplier<Stream<T>> tl) {
+    return new Cons<>(hd, tl);
+  }
+
   private static <T> Stream<T> cons(T hd, Stream<T> tl) {
-    return new Cons<>(() -> hd, () -> tl);
+    return new Cons<>(hd, tl);
   }
 
   @SuppressWarnings("unchecked")
@@ -211,7 +351,7 @@ public abstract class Stream<T> {
   public static <T> Stream<T> of(List<T> l) {
     return l.isEmpty()
         ? empty()
-        : new Cons<>(l::head, () -> of(l.tail()));
+        : new Cons<>(l.head(), () -> of(l.tail()));
   }
 
   @SafeVarargs
@@ -0,0 +1,181 @@
+package ch.cottier.functionalUtilities;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/** Persistent vector: a 32-way trie of the elements, plus a tail buffer holding the last (up to 32)
+ * elements. append only copies the tail, or the path to the rightmost leaf every 32 appends, and
+ * get walks at most log32(size) levels. Complements List, where append and get are O(n).
+ */
+@SuppressWarnings("unused")
+public final class Vector<E> extends AbstractList<E> {
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+  @SuppressWarnings("rawtypes")
+  private static final Vector EMPTY = new Vector<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+  private final int size;
+  private final int shift;
+  private final Object[] root;
+  private final Object[] tail;
+
+  private Vector(int size, int shift, Object[] root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <E> Vector<E> empty() {
+    return EMPTY;
+  }
+
+  @SafeVarargs
+  public static <E> Vector<E> of(E... es) {
+    Vector<E> v = empty();
+    for (E e : es)
+      v = v.append(e);
+    return v;
+  }
+
+  public static <E> Vector<E> ofList(List<E> l) {
+    return l.foldLeft(Vector.<E>empty(), v -> v::append);
+  }
+
+  public List<E> toList() {
+    List<E> l = List.list();
+    for (int i = size - 1; i >= 0; i--)
+      l = l.prepend(get(i));
+    return l;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E get(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+
+    return (E) leafFor(index)[index & MASK];
+  }
+
+  public Result<E> getAt(int index) {
+    return index < 0 || index >= size
+        ? Result.failure("Index out of bounds")
+        : Result.success(get(index));
+  }
+
+  public Result<E> last() {
+    return isEmpty()
+        ? Result.empty()
+        : Result.success(get(size - 1));
+  }
+
+  public Vector<E> append(E e) {
+    if (size - tailOffset() < WIDTH) {
+      Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+      newTail[tail.length] = e;
+      return new Vector<>(size + 1, shift, root, newTail);
+    }
+
+    // Tail is full, push it into the trie, adding a level if the trie is full too
+    Object[] newRoot;
+    int newShift = shift;
+    if ((size >>> BITS) > (1 << shift)) {
+      newRoot = new Object[WIDTH];
+      newRoot[0] = root;
+      newRoot[1] = newPath(shift, tail);
+      newShift += BITS;
+    } else {
+      newRoot = pushTail(shift, root, tail);
+    }
+    return new Vector<>(size + 1, newShift, newRoot, new Object[] {e});
+  }
+
+  public <U> Vector<U> map(Function<E, U> f) {
+    Vector<U> v = empty();
+    for (E e : this)
+      v = v.append(f.apply(e));
+    return v;
+  }
+
+  public <U> U foldLeft(U acc, Function<U, Function<E, U>> f) {
+    for (E e : this)
+      acc = f.apply(acc).apply(e);
+    return acc;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<>() {
+      private int i = 0;
+      private Object[] leaf = size > 0 ? leafFor(0) : tail;
+
+      @Override
+      public boolean hasNext() {
+        return i < size;
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public E next() {
+        if (i >= size)
+          throw new NoSuchElementException();
+        if (i > 0 && (i & MASK) == 0)
+          leaf = leafFor(i);
+        return (E) leaf[i++ & MASK];
+      }
+    };
+  }
+
+  // Index of the first element inside the tail
+  private int tailOffset() {
+    return size < WIDTH
+        ? 0
+        : ((size - 1) >>> BITS) << BITS;
+  }
+
+  private Object[] leafFor(int index) {
+    if (index >= tailOffset())
+      return tail;
+
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS)
+      node = (Object[]) node[(index >>> level) & MASK];
+    return node;
+  }
+
+  private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+    int subIdx = ((size - 1) >>> level) & MASK;
+    Object[] newParent = parent.clone();
+    newParent[subIdx] = level == BITS
+        ? tailNode
+        : parent[subIdx] != null
+            ? pushTail(level - BITS, (Object[]) parent[subIdx], tailNode)
+            : newPath(level - BITS, tailNode);
+    return newParent;
+  }
+
+  private static Object[] newPath(int level, Object[] node) {
+    if (level == 0)
+      return node;
+
+    Object[] path = new Object[WIDTH];
+    path[0] = newPath(level - BITS, node);
+    return path;
+  }
+}
@@ -1,15 +1,20 @@
 package ch.cottier.functionalUtilities;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.math.BigDecimal;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
+import java.util.function.BiFunction;
 import org.junit.jupiter.api.Test;
 //import ch.cottier.stockAPI.Transaction;
 
@@ -29,6 +34,15 @@ class DataBaseTest {
   static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS transactions (id IDENTITY PRIMARY KEY, date DATE, symbol VARCHAR, numShares INT, price NUMERIC(20,3))";
   static final String SQL_INSERT = "INSERT INTO transactions (date, symbol, numShares, price) VALUES ('2022-02-18', 'VTI', 10, 40.11)";
   static final String SQL_QUERY = "SELECT date, symbol, numShares, price FROM transactions";
+  static final String SQL_INSERT_PREP = "INSERT INTO transactions (date, symbol, numShares, price) VALUES ('2022-02-18', 'VTI', ?, 40.11)";
+
+  static int countRows(DataBase db) throws SQLException {
+    try (Statement statement = db.conn.createStatement();
+        ResultSet res = statement.executeQuery("SELECT COUNT(*) FROM transactions")) {
+      res.next();
+      return res.getInt(1);
+    }
+  }
 
   @Test
   void h2TestSingleRow() {
@@ -51,4 +65,78 @@ class DataBaseTest {
       System.out.println("SQLException: " + e);
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  void decodeQueryPositional() {
+    // columns in a different order than in the table, positions refer to colNames
+    List<String> colNames = List.of("price", "symbol", "date", "numShares");
+    Result<List<String>> res = DataBase.openDataBase(DB_INMEM)
+        .flatMap(db -> db.execute(List.of(SQL_CREATE_TABLE, SQL_INSERT, SQL_INSERT)))
+        .flatMap(db -> db.decodeQuery(SQL_QUERY + " WHERE symbol = ?", List.of(symbol), colNames,
+                row -> row.getDate(2) + " " + row.getStr(1) + " " + row.getInt(3) + " "
+                    + row.getBigDecimal(0))
+            .flatMap(t -> t._2.close().map(ignored -> t._1)));
+    assertEquals(Result.success(List.of("2022-02-18 VTI 10 40.110000", "2022-02-18 VTI 10 40.110000")),
+        res);
+
+    Result<Integer> sum = DataBase.openDataBase(DB_INMEM)
+        .flatMap(db -> db.execute(List.of(SQL_CREATE_TABLE, SQL_INSERT, SQL_INSERT, SQL_INSERT)))
+        .flatMap(db -> db.foldQuery(SQL_QUERY, List.list(), colNames, 2, row -> row.getInt(3),
+            0, acc -> n -> acc + n));
+    assertEquals(Result.success(3 * nShares), sum);
+
+    Result<List<String>> unknownColumn = DataBase.openDataBase(DB_INMEM)
+        .flatMap(db -> db.execute(List.of(SQL_CREATE_TABLE, SQL_INSERT)))
+        .flatMap(db -> db.decodeQuery(SQL_QUERY, List.list(), List.of("nope"), row -> row.getStr(0)))
+        .map(Tuple::_1);
+    assertTrue(unknownColumn.isFailure(), unknownColumn.toString());
+  }
+
+  @Test
+  void executeBatchRollsBackOnFailure() throws SQLException {
+    DataBase db = DataBase.openDataBase(DB_INMEM).flatMap(d -> d.execute(SQL_CREATE_TABLE))
+        .getOrThrow();
+    PreparedStatement ps = db.prepareStatement(SQL_INSERT_PREP).getOrThrow();
+    List<Integer> rows = List.of(1, 2, 3, 4, 5);
+    // the fourth row fails once the first batch of two was sent to the database
+    BiFunction<PreparedStatement, Integer, Result<PreparedStatement>> setData = (p, n) -> {
+      if (n == 4)
+        return Result.failure("Simulated failure");
+      try {
+        p.setInt(1, n);
+        return Result.success(p);
+      } catch (SQLException e) {
+        return Result.failure(e);
+      }
+    };
+
+    Result<Integer> res = db.executeBatch(ps, rows, 2, setData);
+    assertTrue(res.isFailure(), res.toString());
+    assertEquals(0, countRows(db));
+    assertTrue(db.conn.getAutoCommit());
+
+    // still rolled back if clearing the batch fails too, which is kept with the failure
+    PreparedStatement failingClear = (PreparedStatement) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("clearBatch"))
+            throw new SQLException("Simulated clearBatch failure");
+          try {
+            return method.invoke(ps, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+    res = db.executeBatch(failingClear, rows, 2, setData);
+    RuntimeException failure = res.forEachOrException(ignored -> {}).getOrThrow();
+    assertEquals("Simulated failure", failure.getMessage());
+    assertEquals(1, failure.getSuppressed().length);
+    assertEquals(0, countRows(db));
+
+    // the statement whose batch couldn't be cleared isn't used anymore
+    assertEquals(Result.success(5), db.executeBatch(db.prepareStatement(SQL_INSERT_PREP)
+        .getOrThrow(), List.of(1, 2, 3, 5, 6), 2, setData));
+    assertEquals(5, countRows(db));
+    assertTrue(db.close().isSuccess());
+  }
+}
@@ -8,6 +8,7 @@ import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Stream;
 import ch.cottier.functionalUtilities.Tuple;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Comparator;
 import org.junit.jupiter.api.Assertions;
@@ -52,6 +53,21 @@ class ListTest {
     assertEquals(exp, s);
   }
 
+  @Test
+  void unfold() {
+    assertEquals(List.of(0, 1, 2), List.unfold(0, i -> i < 3
+        ? Result.success(new Tuple<>(i, i + 1))
+        : Result.empty()));
+    assertEquals(List.list(), List.unfold(0, i -> Result.failure("No element")));
+
+    List<Integer> l = List.unfold(0, i -> i < 1_000_000
+        ? Result.success(new Tuple<>(i, i + 1))
+        : Result.empty());
+    assertEquals(1_000_000, l.size());
+    assertEquals(0, l.head());
+    assertEquals(Result.success(999_999), l.last());
+  }
+
   @Test
   void reverse() {
     List<Integer> l = List.of(1, 2, 3);
@@ -182,4 +198,46 @@ class ListTest {
     expL = List.of(testStr, "one", "two", "three", "four");
     assertEquals(expL, l.insert(0, testStr));
   }
-}
\ No newline at end of file
+
+  @Test
+  void largeFolds() {
+    List<Integer> l = Stream.from(0).take(10_000_000).toList();
+    assertEquals(10_000_000, l.size());
+    assertEquals((long) 10_000_000 * 9_999_999 / 2, l.foldLeft(0L, acc -> e -> acc + e));
+    assertEquals(10_000_000, l.foldRight(0, e -> acc -> acc + 1));
+    assertEquals(9_999_999, l.reverse().head());
+    assertEquals(5, l.foldLeftAbsorbEl(0, 5, acc -> e -> acc + 1));
+  }
+
+  @Test
+  void builder() throws NoSuchFieldException {
+    List.Builder<Integer> b = List.builder();
+    for (int i = 0; i < 5; i++)
+      b.add(i);
+    List<Integer> l = b.build();
+    assertEquals(List.of(0, 1, 2, 3, 4), l);
+
+    // the list built doesn't change with the builder
+    b.add(5);
+    assertEquals(List.of(0, 1, 2, 3, 4), l);
+    assertEquals(5, l.size());
+    assertEquals(List.of(0, 1, 2, 3, 4, 5), b.build());
+    assertEquals(List.list(), List.builder().build());
+
+    // the lists built are made of ordinary nodes, whose tail is final
+    assertEquals(List.of(1).getClass(), b.build().getClass());
+    assertTrue(Modifier.isFinal(b.build().getClass().getDeclaredField("tail").getModifiers()));
+    assertEquals(List.of(0, 1, 2, 3, 4, 5, 6), b.add(6).build().map(i -> i));
+  }
+
+  @Test
+  void mapFilterGroupBy() {
+    List<Integer> l = List.of(1, 2, 3, 4, 5, 6);
+    assertEquals(List.of(2, 4, 6, 8, 10, 12), l.map(i -> i * 2));
+    assertEquals(List.of(1, 3, 5), l.filter(i -> i % 2 == 1));
+    Map<Integer, List<Integer>> groups = l.groupBy(i -> i % 3);
+    assertEquals(3, groups.size());
+    assertEquals(Result.success(List.of(1, 4)), groups.get(1));
+    assertEquals(Result.success(List.of(3, 6)), groups.get(0));
+  }
+}
@@ -0,0 +1,149 @@
+package ch.cottier.functionalUtilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import org.junit.jupiter.api.Test;
+
+class MapTest {
+
+  // Different keys, same hash code: forces collision nodes
+  record Collider(int id) {
+    @Override
+    public int hashCode() {
+      return 42;
+    }
+  }
+
+  @Test
+  void putAndGet() {
+    Map<Integer, String> m = Map.empty();
+    for (int i = 0; i < 100_000; i++)
+      m = m.put(i, String.valueOf(i));
+    assertEquals(100_000, m.size());
+    for (int i = 0; i < 100_000; i++)
+      assertEquals(Result.success(String.valueOf(i)), m.get(i));
+    assertTrue(m.get(-1).isEmpty());
+    assertFalse(m.containsKey(100_000));
+
+    Map<Integer, String> m2 = m.put(5, "five");
+    assertEquals(100_000, m2.size());
+    assertEquals(Result.success("five"), m2.get(5));
+    assertEquals(Result.success("5"), m.get(5));
+    assertThrows(NullPointerException.class, () -> Map.<Integer, String>empty().put(null, ""));
+  }
+
+  @Test
+  void collisions() {
+    Map<Collider, Integer> m = Map.empty();
+    for (int i = 0; i < 10; i++)
+      m = m.put(new Collider(i), i);
+    m = m.put(new Collider(3), 33);
+    assertEquals(10, m.size());
+    assertEquals(Result.success(33), m.get(new Collider(3)));
+    assertTrue(m.get(new Collider(10)).isEmpty());
+    assertEquals(10, m.streamKeys().toList().size());
+  }
+
+  @Test
+  void sameAsJavaMap() {
+    java.util.Map<String, Integer> exp = new HashMap<>();
+    Map<String, Integer> m = Map.empty();
+    for (int i = 0; i < 5_000; i++) {
+      String key = "key" + (i * 7919 % 3_000);
+      exp.put(key, i);
+      m = m.put(key, i);
+    }
+    assertEquals(exp.size(), m.size());
+    java.util.Map<String, Integer> res = new HashMap<>();
+    m.toList().forEach(t -> res.put(t._1, t._2));
+    assertEquals(exp, res);
+    assertEquals(exp.size(), m.stream().foldLeft(0, acc -> ignored -> acc + 1));
+  }
+
+  @Test
+  void equalsIgnoresInsertionOrder() {
+    Map<Integer, String> m1 = Map.empty();
+    Map<Integer, String> m2 = Map.empty();
+    for (int i = 0; i < 1_000; i++) {
+      m1 = m1.put(i, String.valueOf(i));
+      m2 = m2.put(999 - i, String.valueOf(999 - i));
+    }
+    assertEquals(m1, m2);
+    assertEquals(m1.hashCode(), m2.hashCode());
+    assertNotEquals(m1, m2.put(0, "zero"));
+  }
+
+  @Test
+  void mapFilterZip() {
+    Map<Integer, Integer> m0 = Map.empty();
+    for (int i = 0; i < 100; i++)
+      m0 = m0.put(i, i);
+    Map<Integer, Integer> m = m0;
+
+    Map<Integer, Integer> doubled = m.mapVal(v -> 2 * v);
+    assertEquals(Result.success(84), doubled.get(42));
+    assertEquals(50, m.filter(k -> v -> v % 2 == 0).size());
+    assertEquals(Result.success(126), m.zipValWith(doubled, k -> v1 -> v2 -> v1 + v2).get(42));
+    assertThrows(IllegalStateException.class, () -> m.zipVal(m.filter(k -> v -> v > 0)));
+    assertEquals(Result.success(Map.<Integer, Integer>empty().put(1, 1)),
+        Map.flattenResultVal(Map.<Integer, Result<Integer>>empty().put(1, Result.success(1))));
+  }
+
+  @Test
+  void builder() {
+    Map.Builder<Integer, String> b = Map.builder();
+    Map<Integer, String> exp = Map.empty();
+    for (int i = 0; i < 10_000; i++) {
+      b.put(i, String.valueOf(i));
+      exp = exp.put(i, String.valueOf(i));
+    }
+    b.put(5, "five");
+    exp = exp.put(5, "five");
+    assertEquals(Result.success("five"), b.get(5));
+    assertEquals(10_000, b.size());
+
+    Map<Integer, String> m = b.build();
+    assertEquals(exp, m);
+
+    // the map built doesn't change with the builder
+    b.put(5, "cinq").put(10_000, "10000");
+    assertEquals(exp, m);
+    assertEquals(Result.success("cinq"), b.build().get(5));
+    assertEquals(10_001, b.build().size());
+
+    Map.Builder<Collider, Integer> c = Map.builder();
+    for (int i = 0; i < 10; i++)
+      c.put(new Collider(i), i);
+    Map<Collider, Integer> colliders = c.build();
+    c.put(new Collider(3), 33).put(new Collider(10), 10);
+    assertEquals(10, colliders.size());
+    assertEquals(Result.success(3), colliders.get(new Collider(3)));
+    assertEquals(Result.success(33), c.build().get(new Collider(3)));
+
+    assertEquals(Map.empty(), Map.builder().build());
+  }
+
+  @Test
+  void flattenResult() {
+    Map<String, Result<Integer>> vals = Map.<String, Result<Integer>>empty()
+        .put("one", Result.success(1))
+        .put("two", Result.success(2));
+    assertEquals(Result.success(Map.<String, Integer>empty().put("one", 1).put("two", 2)),
+        Map.flattenResultVal(vals));
+    assertEquals(Result.failure("Simulated failure"),
+        Map.flattenResultVal(vals.put("three", Result.failure("Simulated failure"))));
+    assertTrue(Map.flattenResultVal(vals.put("three", Result.empty())).isEmpty());
+
+    Map<Result<String>, Integer> keys = Map.<Result<String>, Integer>empty()
+        .put(Result.success("one"), 1);
+    assertEquals(Result.success(Map.<String, Integer>empty().put("one", 1)),
+        Map.flattenResultKey(keys));
+    assertEquals(Result.failure("Simulated failure"),
+        Map.flattenResultKey(keys.put(Result.failure("Simulated failure"), 2)));
+  }
+}
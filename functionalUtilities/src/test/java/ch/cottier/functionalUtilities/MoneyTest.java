@@ -0,0 +1,84 @@
+package ch.cottier.functionalUtilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MoneyTest {
+  static final int RUNS = 100_000;
+
+  // Prices up to 10'000 with 0 to 8 decimals, sometimes ending in a tie when rounded to 6
+  static BigDecimal randomPrice(Random rnd) {
+    int scale = rnd.nextInt(9);
+    long unscaled = (long) (rnd.nextDouble() * 10_000 * Math.pow(10, scale));
+    if (scale > 6 && rnd.nextBoolean())
+      unscaled = unscaled / 10 * 10 + 5;
+    return BigDecimal.valueOf(rnd.nextInt(10) == 0 ? -unscaled : unscaled, scale);
+  }
+
+  @Test
+  void sumOfPositionsLikeBigDecimal() {
+    Random rnd = new Random(42);
+    for (int run = 0; run < RUNS; run++) {
+      BigDecimal expected = BigDecimal.ZERO.setScale(6, RoundingMode.HALF_UP);
+      long micros = Money.ZERO;
+      for (int i = rnd.nextInt(20); i > 0; i--) {
+        BigDecimal close = randomPrice(rnd).setScale(6, RoundingMode.HALF_UP);
+        int shares = rnd.nextInt(20_000) - 5_000;
+        expected = expected.add(close.multiply(BigDecimal.valueOf(shares)));
+        micros = Money.add(micros, Money.times(Money.micros(close), shares));
+      }
+      // equals compares the scale too
+      assertEquals(expected, Money.toBigDecimal(micros));
+    }
+  }
+
+  @Test
+  void ratioLikeBigDecimal() {
+    Random rnd = new Random(4242);
+    for (int run = 0; run < RUNS; run++) {
+      BigDecimal dividend = randomPrice(rnd).multiply(BigDecimal.valueOf(rnd.nextInt(1_000) + 1))
+          .setScale(6, RoundingMode.HALF_UP);
+      BigDecimal divisor = randomPrice(rnd).setScale(6, RoundingMode.HALF_UP);
+      if (divisor.signum() == 0)
+        continue;
+      assertEquals(dividend.divide(divisor, RoundingMode.HALF_UP),
+          Money.toBigDecimal(Money.ratio(Money.micros(dividend), Money.micros(divisor))),
+          dividend + " / " + divisor);
+    }
+  }
+
+  @Test
+  void ratioEdgeCases() {
+    // ties round away from zero
+    assertEquals(new BigDecimal("0.666667"), Money.toBigDecimal(Money.ratio(2, 3)));
+    assertEquals(new BigDecimal("-0.500000"), Money.toBigDecimal(Money.ratio(-1, 2)));
+    assertEquals(new BigDecimal("0.000001"), Money.toBigDecimal(Money.ratio(1, 1_999_999)));
+    assertEquals(new BigDecimal("-0.000001"), Money.toBigDecimal(Money.ratio(1, -2_000_000)));
+    assertEquals(new BigDecimal("0.000000"), Money.toBigDecimal(Money.ratio(1, 2_000_001)));
+
+    // too large for the long path
+    long large = Money.micros(new BigDecimal("9000000000"));
+    assertEquals(new BigDecimal("3000000000.000000"),
+        Money.toBigDecimal(Money.ratio(large, Money.micros(new BigDecimal("3")))));
+    assertEquals(new BigDecimal("1.000000"), Money.toBigDecimal(Money.ratio(large, large)));
+
+    assertThrows(ArithmeticException.class, () -> Money.ratio(1, 0));
+    assertThrows(ArithmeticException.class, () -> Money.times(Long.MAX_VALUE / 2, 3));
+    assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+  }
+
+  @Test
+  void conversion() {
+    assertEquals(new BigDecimal("12.345679"),
+        Money.toBigDecimal(Money.micros(new BigDecimal("12.3456785"))));
+    assertEquals(new BigDecimal("-12.345679"),
+        Money.toBigDecimal(Money.micros(new BigDecimal("-12.3456785"))));
+    assertEquals(12_000_000L, Money.micros(new BigDecimal("12")));
+    assertEquals(new BigDecimal("1.000000"), Money.toBigDecimal(Money.ONE));
+  }
+}
@@ -2,16 +2,27 @@ package ch.cottier.functionalUtilities;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Stream;
+import ch.cottier.functionalUtilities.Tuple;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 class StreamTest {
+  static final int LARGE = 10_000_000;
 
   @Test
   void of() {
@@ -81,4 +92,149 @@ class StreamTest {
     List<String> ls = List.of("one", "two", "three");
     assertNotEquals(l1, ls);
   }
-}
\ No newline at end of file
+
+  // A new stream for every traversal, the cells of one kept in a variable would stay in memory
+  static Stream<Integer> large() {
+    return Stream.from(0).take(LARGE);
+  }
+
+  @Test
+  void largeFolds() {
+    assertEquals(LARGE, large().foldRight(0, e -> acc -> acc + 1));
+    assertEquals(LARGE - 1, large().foldRightAbsorbElement(0, LARGE - 1, e -> acc -> acc + 1));
+    assertEquals((long) LARGE * (LARGE - 1) / 2, large().foldLeft(0L, acc -> e -> acc + e));
+
+    long[] sum = {0};
+    large().forEach(e -> sum[0] += e);
+    assertEquals((long) LARGE * (LARGE - 1) / 2, sum[0]);
+  }
+
+  @Test
+  void largeToList() {
+    List<Integer> l = large().toList();
+    assertEquals(LARGE, l.size());
+    assertEquals(0, l.head());
+    assertEquals(Result.success(LARGE - 1), l.last());
+  }
+
+  @Test
+  void largeFlattenResult() {
+    Result<Stream<Integer>> res = Stream.flattenResult(large()
+        .map(i -> i % 2 == 0 ? Result.success(i) : Result.empty()));
+    assertEquals(Result.success(LARGE / 2), res.map(r -> r.foldLeft(0, acc -> e -> acc + 1)));
+
+    Result<Stream<Integer>> failure = Stream.flattenResult(large()
+        .map(i -> i == LARGE - 1 ? Result.failure("Last one") : Result.success(i)));
+    assertEquals(Result.failure("Last one"), failure);
+  }
+
+  @Test
+  void evaluatesEachElementOnce() {
+    AtomicInteger unfolded = new AtomicInteger();
+    AtomicInteger mapped = new AtomicInteger();
+    Stream<Integer> s = Stream.unfold(0, i -> {
+          unfolded.incrementAndGet();
+          return i < 1_000 ? Result.success(new Tuple<>(i, i + 1)) : Result.empty();
+        })
+        .map(i -> {
+          mapped.incrementAndGet();
+          return i * 2;
+        })
+        .filter(i -> i % 3 == 0)
+        .map(i -> {
+          mapped.incrementAndGet();
+          return i + 1;
+        });
+
+    List<Integer> l = s.toList();
+    assertEquals(l, s.toList());
+    assertEquals(l.head(), s.head());
+    assertEquals(334, l.size());
+    assertEquals(1_001, unfolded.get());
+    assertEquals(1_000 + 334, mapped.get());
+  }
+
+  @Test
+  void evaluatesEachElementOnceAcrossThreads() throws Exception {
+    AtomicInteger mapped = new AtomicInteger();
+    Stream<Integer> s = Stream.from(0).take(10_000).map(i -> {
+      mapped.incrementAndGet();
+      return i;
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      java.util.List<Future<List<Integer>>> lists = new ArrayList<>();
+      for (int i = 0; i < 4; i++)
+        lists.add(executor.submit(s::toList));
+      for (Future<List<Integer>> l : lists)
+        assertEquals(10_000, l.get().size());
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(10_000, mapped.get());
+  }
+
+  @Test
+  void evaluatesAgainAfterFailure() {
+    AtomicInteger calls = new AtomicInteger();
+    Stream<Integer> s = Stream.of(1, 2).map(i -> {
+      if (calls.incrementAndGet() == 1)
+        throw new IllegalStateException("Simulated failure");
+      return i;
+    });
+    assertThrows(IllegalStateException.class, s::head);
+    assertEquals(1, s.head());
+    assertEquals(1, s.head());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void selfReferenceThrows() {
+    java.util.List<Stream<Integer>> self = new ArrayList<>();
+    Stream<Integer> s = Stream.of(1).map(i -> i + self.get(0).head());
+    self.add(s);
+    assertThrows(IllegalStateException.class, s::head);
+    assertThrows(IllegalStateException.class, s::head);
+  }
+
+  @Test
+  void waitingThreadBlocks() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    Stream<Integer> s = Stream.of(1).map(i -> {
+      calls.incrementAndGet();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return i;
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> first = executor.submit(s::head);
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      AtomicReference<Thread> waiter = new AtomicReference<>();
+      Future<Integer> second = executor.submit(() -> {
+        waiter.set(Thread.currentThread());
+        return s.head();
+      });
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while ((waiter.get() == null || waiter.get().getState() != Thread.State.WAITING)
+          && System.nanoTime() < deadline)
+        Thread.sleep(1);
+      assertEquals(Thread.State.WAITING, waiter.get().getState());
+
+      release.countDown();
+      assertEquals(1, first.get(10, TimeUnit.SECONDS));
+      assertEquals(1, second.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, calls.get());
+  }
+}
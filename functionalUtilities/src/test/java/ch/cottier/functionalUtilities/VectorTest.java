@@ -0,0 +1,57 @@
+package ch.cottier.functionalUtilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class VectorTest {
+
+  @Test
+  void appendAndGet() {
+    // Crosses the tail, one-level, two-level and three-level trie boundaries
+    int n = 32 * 32 * 32 + 32 + 1;
+    Vector<Integer> v = Vector.empty();
+    for (int i = 0; i < n; i++) {
+      v = v.append(i);
+      assertEquals(i + 1, v.size());
+      assertEquals(i, v.get(i));
+    }
+    for (int i = 0; i < n; i++)
+      assertEquals(i, v.get(i));
+
+    int[] count = {0};
+    v.forEach(e -> assertEquals(count[0]++, e));
+    assertEquals(n, count[0]);
+    assertEquals(Result.success(n - 1), v.last());
+    assertThrows(IndexOutOfBoundsException.class, () -> Vector.of(1, 2).get(2));
+    assertTrue(Vector.of(1).getAt(-1).isFailure());
+    assertTrue(Vector.empty().last().isEmpty());
+  }
+
+  @Test
+  void persistence() {
+    Vector<Integer> v1 = Vector.empty();
+    for (int i = 0; i < 1_000; i++)
+      v1 = v1.append(i);
+    Vector<Integer> v2 = v1.append(1_000);
+    Vector<Integer> v3 = v1.append(-1);
+
+    assertEquals(1_000, v1.size());
+    assertEquals(1_000, v2.get(1_000));
+    assertEquals(-1, v3.get(1_000));
+    assertEquals(v2.subList(0, 1_000), v3.subList(0, 1_000));
+  }
+
+  @Test
+  void listConversions() {
+    List<String> l = List.of("a", "b", "c");
+    Vector<String> v = Vector.ofList(l);
+    assertEquals(Vector.of("a", "b", "c"), v);
+    assertEquals(l, v.toList());
+    assertEquals(List.list(), Vector.empty().toList());
+    assertEquals(Vector.of(1, 1, 1), v.map(String::length));
+    assertEquals("abc", v.foldLeft("", acc -> s -> acc + s));
+  }
+}
@@ -0,0 +1,205 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/** Parses large transaction files on several threads: the file is split into chunks of about the
+ * same size at line boundaries, and every chunk is parsed and checked for the order of its dates
+ * on a ForkJoinPool. Afterwards the chunks are checked at their seams and joined. The dates of a
+ * valid file are sorted (ascending or descending), so every chunk is a sorted run and joining
+ * them in order (or reverse order) gives the sorted transactions without sorting them again.
+ *
+ * <p>The result, including the errors, is the same as with TransactionFileParser followed by the
+ * order check and the sort done when ingesting a file sequentially.
+ */
+final class ChunkedTransactionParser {
+  static final long DEFAULT_CHUNK_SIZE = 8L << 20;
+  private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
+
+  private ChunkedTransactionParser() {
+  }
+
+  // A parsed chunk, with a summary of the order of its dates
+  private static final class Chunk {
+    final TransactionFileParser parser;
+    final java.util.List<Transaction> txs;
+    final int lines; // -1 if there is an invalid line
+    int firstChange; // sign of the first date differing from the first one, 0 if there's none
+    int ascViolation = -1; // index of the first date before the one preceding it
+    int descViolation = -1; // index of the first date after the one preceding it
+
+    Chunk(TransactionFileParser parser, int lines) {
+      this.parser = parser;
+      this.txs = parser.transactions();
+      this.lines = lines;
+      for (int i = 1; i < txs.size(); i++) {
+        int c = date(i).compareTo(date(i - 1));
+        if (firstChange == 0)
+          firstChange = c;
+        if (c < 0 && ascViolation < 0)
+          ascViolation = i;
+        if (c > 0 && descViolation < 0)
+          descViolation = i;
+      }
+    }
+
+    LocalDate date(int i) {
+      return txs.get(i).getDate();
+    }
+  }
+
+  /** The transactions of the file sorted by date, parsed on parallelism threads in chunks of
+   * about chunkSize bytes.
+   */
+  static Result<List<Transaction>> parseSorted(Path path, int parallelism, long chunkSize) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long[] bounds = bounds(channel, Math.min(Math.max(chunkSize, 1), MAX_CHUNK_SIZE));
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        java.util.List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+          long start = bounds[i];
+          long end = bounds[i + 1];
+          if (end - start > MAX_CHUNK_SIZE)
+            return Result.failure("Line after byte " + start + " of " + path + " is too long");
+          tasks.add(pool.submit(() -> parseChunk(channel, path, start, end)));
+        }
+        java.util.List<Chunk> chunks = new ArrayList<>();
+        for (ForkJoinTask<Chunk> task : tasks)
+          chunks.add(task.get());
+        return join(chunks);
+      } finally {
+        pool.shutdownNow();
+      }
+    } catch (IOException e) {
+      return Result.failure(e);
+    } catch (ExecutionException e) {
+      return e.getCause() instanceof Exception cause
+          ? Result.failure(cause)
+          : Result.failure(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Result.failure(e);
+    }
+  }
+
+  // Offsets at which the chunks start, and the size of the file at the end
+  private static long[] bounds(FileChannel channel, long chunkSize) throws IOException {
+    long size = channel.size();
+    java.util.List<Long> bounds = new ArrayList<>();
+    bounds.add(0L);
+    ByteBuffer window = ByteBuffer.allocate(8192);
+    long next = chunkSize;
+    while (next < size) {
+      long lineEnd = indexOfNewline(channel, window, next);
+      if (lineEnd < 0 || lineEnd + 1 >= size)
+        break;
+      bounds.add(lineEnd + 1);
+      next = lineEnd + 1 + chunkSize;
+    }
+    bounds.add(size);
+    return bounds.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  private static long indexOfNewline(FileChannel channel, ByteBuffer window, long from)
+      throws IOException {
+    for (long offset = from; ; offset += window.limit()) {
+      window.clear();
+      if (channel.read(window, offset) <= 0)
+        return -1;
+      window.flip();
+      for (int i = 0; i < window.limit(); i++)
+        if (window.get(i) == '\n')
+          return offset + i;
+    }
+  }
+
+  private static Chunk parseChunk(FileChannel channel, Path path, long start, long end)
+      throws IOException {
+    byte[] bytes = new byte[(int) (end - start)];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining())
+      if (channel.read(buffer, start + buffer.position()) < 0)
+        throw new IOException(path + " changed while being read");
+
+    TransactionFileParser parser = new TransactionFileParser(path.toString());
+    return new Chunk(parser, parser.parseLines(bytes, 0, bytes.length));
+  }
+
+  private static Result<List<Transaction>> join(java.util.List<Chunk> chunks) {
+    long linesBefore = 0;
+    int size = 0;
+    for (Chunk chunk : chunks) {
+      if (chunk.lines < 0)
+        return Result.failure(chunk.parser.error(linesBefore));
+      linesBefore += chunk.lines;
+      size = Math.addExact(size, chunk.txs.size());
+    }
+
+    // Like Utilities.getOrderSeq: ascending, unless the first date differing from the very first
+    // one is before it
+    LocalDate first = null;
+    int direction = 0;
+    for (Chunk chunk : chunks) {
+      if (chunk.txs.isEmpty())
+        continue;
+      if (first == null)
+        first = chunk.date(0);
+      direction = chunk.date(0).compareTo(first);
+      if (direction == 0)
+        direction = chunk.firstChange;
+      if (direction != 0)
+        break;
+    }
+    boolean ascending = direction >= 0;
+
+    // Like Utilities.checkCorrectSequence, which counts the transactions before the wrong one
+    Transaction[] all = new Transaction[size];
+    int n = 0;
+    for (Chunk chunk : chunks) {
+      if (chunk.txs.isEmpty())
+        continue;
+      int c = n == 0 ? 0 : chunk.date(0).compareTo(all[n - 1].getDate());
+      if (ascending ? c < 0 : c > 0)
+        return Result.failure("Wrong date after line " + n);
+      int violation = ascending ? chunk.ascViolation : chunk.descViolation;
+      if (violation >= 0)
+        return Result.failure("Wrong date after line " + (n + violation));
+      for (Transaction tx : chunk.txs)
+        all[n++] = tx;
+    }
+    return Result.success(ascending ? ascendingRun(all) : reversedRun(all));
+  }
+
+  private static List<Transaction> ascendingRun(Transaction[] txs) {
+    List<Transaction> res = List.list();
+    for (int i = txs.length - 1; i >= 0; i--)
+      res = res.prepend(txs[i]);
+    return res;
+  }
+
+  // Same as a stable sort of transactions with descending dates: the days in reverse order, the
+  // transactions of a day in the order of the file
+  private static List<Transaction> reversedRun(Transaction[] txs) {
+    List<Transaction> res = List.list();
+    for (int i = 0; i < txs.length; ) {
+      int dayEnd = i;
+      while (dayEnd < txs.length && txs[dayEnd].getDate().equals(txs[i].getDate()))
+        dayEnd++;
+      for (int j = dayEnd - 1; j >= i; j--)
+        res = res.prepend(txs[j]);
+      i = dayEnd;
+    }
+    return res;
+  }
+}
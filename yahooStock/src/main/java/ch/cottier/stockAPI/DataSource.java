@@ -6,9 +6,15 @@ import ch.cottier.functionalUtilities.Input;
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.function.Function;
 
 public class DataSource {
   // Create in-memory database
@@ -17,13 +23,31 @@ public class DataSource {
   private final static String DB_JDBC_EXISTS_FLAG = ";IFEXISTS=TRUE";
   private final DataBase db;
   private final PreparedStatement insertTransaction;
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  public static final int DEFAULT_FETCH_SIZE = 1000;
 
   // SQL Strings
   private static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS transactions (id IDENTITY PRIMARY KEY, date DATE, symbol VARCHAR, numShares INT, price NUMERIC(20,3))";
   private static final String SQL_INSERT_PREP = "INSERT INTO transactions (date, symbol, numShares, price) VALUES (?, ?, ?, ?)";
   private static final String SQL_QUERY_DESC = "SELECT date, symbol, numShares, price FROM transactions";
+  private static final String SQL_CREATE_INDEX_SYMBOL_DATE = "CREATE INDEX IF NOT EXISTS transactions_symbol_date ON transactions (symbol, date)";
+  private static final String SQL_CREATE_INDEX_DATE = "CREATE INDEX IF NOT EXISTS transactions_date ON transactions (date)";
   private static final String SQL_QUERY_LAST_DATE = "SELECT MAX(date) AS date FROM transactions FETCH FIRST 1 ROW ONLY";
 
+  // Historical closing prices, together with the date ranges that have already been fetched,
+  // since weekends and holidays leave gaps in the quotes themselves
+  private static final String SQL_CREATE_QUOTES = "CREATE TABLE IF NOT EXISTS quotes (symbol VARCHAR, date DATE, price NUMERIC(20,6), PRIMARY KEY (symbol, date))";
+  private static final String SQL_CREATE_QUOTE_RANGES = "CREATE TABLE IF NOT EXISTS quoteRanges (symbol VARCHAR, fromDate DATE, toDate DATE)";
+  private static final String SQL_MERGE_QUOTE = "MERGE INTO quotes (symbol, date, price) KEY (symbol, date) VALUES (?, ?, ?)";
+  private static final String SQL_INSERT_QUOTE_RANGE = "INSERT INTO quoteRanges (symbol, fromDate, toDate) VALUES (?, ?, ?)";
+  private static final String SQL_DELETE_QUOTE_RANGES = "DELETE FROM quoteRanges WHERE symbol = ?";
+  private static final String SQL_QUERY_QUOTES = "SELECT date, price FROM quotes WHERE symbol = ? AND date BETWEEN ? AND ? ORDER BY date";
+  private static final String SQL_QUERY_QUOTE_RANGES = "SELECT fromDate, toDate FROM quoteRanges WHERE symbol = ? ORDER BY fromDate";
+  private static final List<String> TX_COLUMNS = List.of("date", "symbol", "numShares", "price");
+  private static final List<String> SQL_CREATE_TABLES =
+      List.of(SQL_CREATE_TABLE, SQL_CREATE_INDEX_SYMBOL_DATE, SQL_CREATE_INDEX_DATE,
+          SQL_CREATE_QUOTES, SQL_CREATE_QUOTE_RANGES);
+
   private DataSource(DataBase db, PreparedStatement ps) {
     super();
     this.db = db;
@@ -36,47 +60,165 @@ public class DataSource {
   }
 
   public Result<Tuple<List<Transaction>, DataSource>> getTransactions() {
-    return db.mapQuery(SQL_QUERY_DESC, List.of("date", "symbol", "numShares", "price"),
-            DataSource::createTx)
+    return db.decodeQuery(SQL_QUERY_DESC, List.list(), TX_COLUMNS, DataSource::createTx)
+        .map(t -> new Tuple<>(t._1, this));
+  }
+
+  /** Only the transactions involving one of the given symbols (all if there are none) that
+   * happened between from and to (both inclusive and optional), ordered by date.
+   */
+  public Result<Tuple<List<Transaction>, DataSource>> getTransactions(List<Symbol> symbols,
+      Result<LocalDate> from, Result<LocalDate> to) {
+    Tuple<String, List<Object>> query = filteredQuery(symbols, from, to);
+    return db.decodeQuery(query._1, query._2, TX_COLUMNS, DataSource::createTx)
+        .map(t -> new Tuple<>(t._1, this));
+  }
+
+  /** Same transactions as getTransactions(), but folded one at a time straight from the database
+   * cursor, without ever holding all of them in memory.
+   */
+  public <U> Result<U> foldTransactions(List<Symbol> symbols, Result<LocalDate> from,
+      Result<LocalDate> to, int fetchSize, U identity, Function<U, Function<Transaction, U>> f) {
+    Tuple<String, List<Object>> query = filteredQuery(symbols, from, to);
+    return db.foldQuery(query._1, query._2, TX_COLUMNS, fetchSize, DataSource::createTx,
+        identity, f);
+  }
+
+  private static Tuple<String, List<Object>> filteredQuery(List<Symbol> symbols,
+      Result<LocalDate> from, Result<LocalDate> to) {
+    java.util.List<String> conditions = new ArrayList<>();
+    java.util.List<Object> params = new ArrayList<>();
+    if (!symbols.isEmpty()) {
+      conditions.add("symbol IN (" + String.join(", ", Collections.nCopies(symbols.size(), "?")) + ")");
+      symbols.forEach(symbol -> params.add(symbol.toString()));
+    }
+    from.forEach(date -> {
+      conditions.add("date >= ?");
+      params.add(date);
+    });
+    to.forEach(date -> {
+      conditions.add("date <= ?");
+      params.add(date);
+    });
+
+    String sqlQuery = SQL_QUERY_DESC
+        + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+        + " ORDER BY date, id";
+    return new Tuple<>(sqlQuery, List.list(params));
+  }
+
+  // Positions inside TX_COLUMNS
+  private static Transaction createTx(DBResultSet row) throws SQLException {
+    return Transaction.transaction(row.getDate(0), row.getStr(1), row.getInt(2),
+        row.getBigDecimal(3));
+  }
+
+  public Result<Tuple<List<Tuple<LocalDate, BigDecimal>>, DataSource>> getQuotes(Symbol symbol,
+      LocalDate from, LocalDate to) {
+    return db.mapQuery(SQL_QUERY_QUOTES, List.of(symbol.toString(), from, to),
+            List.of("date", "price"), DataSource::createQuote)
+        .map(t -> new Tuple<>(t._1, this));
+  }
+
+  public Result<Tuple<List<Tuple<LocalDate, LocalDate>>, DataSource>> getQuoteRanges(
+      Symbol symbol) {
+    return db.mapQuery(SQL_QUERY_QUOTE_RANGES, List.of(symbol.toString()),
+            List.of("fromDate", "toDate"), DataSource::createRange)
         .map(t -> new Tuple<>(t._1, this));
   }
 
-  private static Result<Tuple<Transaction, Input>> createTx(Input input) {
+  private static Result<Tuple<Tuple<LocalDate, BigDecimal>, Input>> createQuote(Input input) {
     return input.nextDate()
-        .flatMap(date -> date._2.nextStr()
-            .flatMap(symbol -> symbol._2.nextInt()
-                .flatMap(nShares -> nShares._2.nextBigDecimal()
-                    .map(price ->
-                        new Tuple<>(
-                            Transaction.transaction(date._1, symbol._1, nShares._1, price._1),
-                            price._2)))));
+        .flatMap(date -> date._2.nextBigDecimal()
+            .map(price -> new Tuple<>(new Tuple<>(date._1, price._1), price._2)));
   }
 
-  public Result<DataSource> insertTransactions(List<Transaction> lTx) {
-    Result<PreparedStatement> res = lTx.foldLeft(Result.success(insertTransaction), rPS -> tx ->
-            rPS.flatMap(ps -> setTxData(ps, tx)
-                .flatMap(DataSource::executeStatement)));
+  private static Result<Tuple<Tuple<LocalDate, LocalDate>, Input>> createRange(Input input) {
+    return input.nextDate()
+        .flatMap(from -> from._2.nextDate()
+            .map(to -> new Tuple<>(new Tuple<>(from._1, to._1), to._2)));
+  }
 
-    return res.map(ignored -> this);
+  /** Stores the closing prices of symbol and marks the whole range from-to as fetched, including
+   * the days inside it without a quote, so they won't be asked for again. The ranges of symbol are
+   * stored merged with the ones overlapping or adjacent to them, so that there are only as many
+   * rows as gaps between them, however often prices are fetched. Quotes and ranges are written in
+   * a single transaction, so a failure leaves the cache as it was before.
+   */
+  public Result<DataSource> insertQuotes(Symbol symbol, LocalDate from, LocalDate to,
+      List<Tuple<LocalDate, BigDecimal>> quotes) {
+    Result<List<Tuple<LocalDate, LocalDate>>> ranges = getQuoteRanges(symbol)
+        .map(t -> coalesce(t._1.prepend(new Tuple<>(from, to))));
+    try (PreparedStatement psQuote = db.prepareStatement(SQL_MERGE_QUOTE).getOrThrow();
+        PreparedStatement psDelete = db.prepareStatement(SQL_DELETE_QUOTE_RANGES).getOrThrow();
+        PreparedStatement psRange = db.prepareStatement(SQL_INSERT_QUOTE_RANGE).getOrThrow()) {
+      return ranges.flatMap(lRanges -> db.inTransaction(() ->
+              db.executeBatch(psQuote, quotes, DEFAULT_BATCH_SIZE,
+                      (ps, quote) -> setQuoteData(ps, symbol, quote))
+                  .flatMap(ignored -> db.executeBatch(psDelete, List.of(symbol), 1,
+                      DataSource::setSymbol))
+                  .flatMap(ignored -> db.executeBatch(psRange, lRanges, DEFAULT_BATCH_SIZE,
+                      (ps, range) -> setQuoteData(ps, symbol, range)))))
+          .map(ignored -> this);
+    } catch (SQLException | IllegalStateException e) {
+      return Result.failure(e);
+    }
   }
 
-  private static Result<PreparedStatement> setTxData(PreparedStatement ps, Transaction tx) {
+  // Ranges sorted by their start date, with the overlapping or adjacent ones merged into one
+  static List<Tuple<LocalDate, LocalDate>> coalesce(List<Tuple<LocalDate, LocalDate>> ranges) {
+    return ranges.sortFP(Comparator.comparing(Tuple::_1))
+        .foldLeft(List.<Tuple<LocalDate, LocalDate>>list(), merged -> range ->
+            merged.isEmpty() || range._1.isAfter(merged.head()._2.plusDays(1))
+                ? merged.prepend(range)
+                : range._2.isAfter(merged.head()._2)
+                    ? merged.tail().prepend(new Tuple<>(merged.head()._1, range._2))
+                    : merged)
+        .reverse();
+  }
+
+  private static Result<PreparedStatement> setSymbol(PreparedStatement ps, Symbol symbol) {
     try {
-      ps.setString(1, tx.getDate().toString());
-      ps.setString(2, tx.getSymbol().toString());
-      ps.setInt(3, tx.getNumShares());
-      ps.setBigDecimal(4, tx.getPrice());
+      ps.setString(1, symbol.toString());
       return Result.success(ps);
     } catch (SQLException e) {
       return Result.failure(e);
     }
   }
 
-  private static Result<PreparedStatement> executeStatement(PreparedStatement ps) {
+  private static <A, B> Result<PreparedStatement> setQuoteData(PreparedStatement ps,
+      Symbol symbol, Tuple<A, B> data) {
     try {
-      if (ps.execute()) {
-        throw new IllegalStateException("Prepared Statement was a query instead of just an INSERT");
-      }
+      ps.setString(1, symbol.toString());
+      ps.setObject(2, data._1);
+      ps.setObject(3, data._2);
+      return Result.success(ps);
+    } catch (SQLException e) {
+      return Result.failure(e);
+    }
+  }
+
+  public Result<DataSource> insertTransactions(List<Transaction> lTx) {
+    return ingestTransactions(lTx, DEFAULT_BATCH_SIZE).map(Tuple::_2);
+  }
+
+  /** Inserts all transactions in batches of batchSize inside a single database transaction, so
+   * either all of them are stored or, on failure, none.
+   */
+  public Result<Tuple<Ingestion, DataSource>> ingestTransactions(List<Transaction> lTx,
+      int batchSize) {
+    long start = System.nanoTime();
+    return db.executeBatch(insertTransaction, lTx, batchSize, DataSource::setTxData)
+        .map(count -> new Tuple<>(
+            Ingestion.ingestion(count, Duration.ofNanos(System.nanoTime() - start)), this));
+  }
+
+  private static Result<PreparedStatement> setTxData(PreparedStatement ps, Transaction tx) {
+    try {
+      ps.setString(1, tx.getDate().toString());
+      ps.setString(2, tx.getSymbol().toString());
+      ps.setInt(3, tx.getNumShares());
+      ps.setBigDecimal(4, tx.getPrice());
       return Result.success(ps);
     } catch (SQLException e) {
       return Result.failure(e);
@@ -85,7 +227,7 @@ public class DataSource {
 
   public static Result<DataSource> openInMemory() {
     return DataBase.openDataBase(DB_INMEM)
-        .flatMap(db1 -> db1.execute(SQL_CREATE_TABLE))
+        .flatMap(db1 -> db1.execute(SQL_CREATE_TABLES))
         .flatMap(db1 -> {
           Result<PreparedStatement> rPS = db1.prepareStatement(SQL_INSERT_PREP);
           return rPS.map(ps -> new DataSource(db1, ps));
@@ -94,7 +236,7 @@ public class DataSource {
 
   public static Result<DataSource> open(String path) {
     return DataBase.openDataBase(DB_CONNECT + path)
-                   .flatMap(db1 -> db1.execute(SQL_CREATE_TABLE))
+                   .flatMap(db1 -> db1.execute(SQL_CREATE_TABLES))
                    .flatMap(db1 -> {
                      Result<PreparedStatement> rPS = db1.prepareStatement(SQL_INSERT_PREP);
                      return rPS.map(ps -> new DataSource(db1, ps));
@@ -103,7 +245,7 @@ public class DataSource {
 
   public static Result<DataSource> openIfExists(String path) {
     return DataBase.openDataBase(DB_CONNECT + path + DB_JDBC_EXISTS_FLAG)
-                   .flatMap(db1 -> db1.execute(SQL_CREATE_TABLE))
+                   .flatMap(db1 -> db1.execute(SQL_CREATE_TABLES))
                    .flatMap(db1 -> {
                      Result<PreparedStatement> rPS = db1.prepareStatement(SQL_INSERT_PREP);
                      return rPS.map(ps -> new DataSource(db1, ps));
@@ -0,0 +1,103 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** How many requests to Yahoo Finance may run at the same time, and how long each of them may take
+ * before it is given up on.
+ */
+public final class FetchPolicy {
+  public static final int DEFAULT_CONCURRENCY = 8;
+  public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+  public static final FetchPolicy DEFAULT = fetchPolicy(DEFAULT_CONCURRENCY, DEFAULT_TIMEOUT);
+
+  private final int maxConcurrency;
+  private final Duration timeout;
+
+  private FetchPolicy(int maxConcurrency, Duration timeout) {
+    this.maxConcurrency = maxConcurrency;
+    this.timeout = timeout;
+  }
+
+  public static FetchPolicy fetchPolicy(int maxConcurrency, Duration timeout) {
+    if (maxConcurrency < 1)
+      throw new IllegalArgumentException("At least one concurrent request needed, was "
+          + maxConcurrency);
+    if (timeout.isNegative() || timeout.isZero())
+      throw new IllegalArgumentException("Timeout must be positive, was " + timeout);
+
+    return new FetchPolicy(maxConcurrency, timeout);
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public Duration getTimeout() {
+    return timeout;
+  }
+
+  /** Applies f to every value of m, running at most maxConcurrency of them at the same time. A call
+   * taking longer than the timeout (counted from when it starts running, not from when it was
+   * queued) results in a failure for its key, as does one throwing an exception.
+   */
+  public <K, V, U> Map<K, Result<U>> fetchAll(Map<K, V> m, Function<V, Result<U>> f) {
+    if (m.isEmpty())
+      return Map.empty();
+
+    // Daemon threads, so that a request hanging past its timeout doesn't keep the JVM alive
+    ThreadFactory daemon = r -> {
+      Thread t = new Thread(r, "stock-fetch");
+      t.setDaemon(true);
+      return t;
+    };
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(maxConcurrency, m.size()), daemon);
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon);
+    try {
+      java.util.List<K> keys = new ArrayList<>(m.size());
+      java.util.List<CompletableFuture<Result<U>>> futures = new ArrayList<>(m.size());
+      m.toList().forEach(t -> {
+        keys.add(t._1);
+        futures.add(submit(executor, timer, t._1, () -> f.apply(t._2)));
+      });
+
+      Map<K, Result<U>> res = Map.empty();
+      for (int i = 0; i < keys.size(); i++)
+        res = res.put(keys.get(i), futures.get(i).join());
+      return res;
+    } finally {
+      executor.shutdownNow();
+      timer.shutdownNow();
+    }
+  }
+
+  private <K, U> CompletableFuture<Result<U>> submit(ExecutorService executor,
+      ScheduledExecutorService timer, K key, Supplier<Result<U>> task) {
+    CompletableFuture<Result<U>> future = new CompletableFuture<>();
+    executor.execute(() -> {
+      ScheduledFuture<?> timeoutTask = timer.schedule(() -> future.complete(
+              Result.failure("Fetching " + key + " took longer than " + timeout)),
+          timeout.toMillis(), TimeUnit.MILLISECONDS);
+      try {
+        future.complete(task.get());
+      } catch (RuntimeException e) {
+        future.complete(Result.failure(e));
+      } finally {
+        timeoutTask.cancel(false);
+      }
+    });
+    return future;
+  }
+}
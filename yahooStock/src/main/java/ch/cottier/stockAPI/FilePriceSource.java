@@ -0,0 +1,109 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** Prices read from a snapshot file, e.g. for runs without network access or reproducible load
+ * tests. The file has one closing price per line, as `symbol,date,close` with the date as yyyy-MM-dd;
+ * empty lines, lines starting with '#' and a header line starting with "symbol" are skipped. The
+ * whole file is read once, the current price of a stock is the last close in the file. The file
+ * can also be a MappedPriceStore, which is mapped into memory instead of being read.
+ */
+public final class FilePriceSource implements PriceSource {
+  private final Map<Symbol, PriceHistory> histories;
+
+  private FilePriceSource(Map<Symbol, PriceHistory> histories) {
+    this.histories = histories;
+  }
+
+  public static FilePriceSource priceSource(Map<Symbol, PriceHistory> histories) {
+    return new FilePriceSource(histories);
+  }
+
+  public static Result<FilePriceSource> priceSource(String path) {
+    if (MappedPriceStore.isPriceStore(Path.of(path)))
+      return MappedPriceStore.read(Path.of(path)).map(FilePriceSource::new);
+
+    try (BufferedReader reader = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+      java.util.Map<Symbol, java.util.List<Tuple<LocalDate, BigDecimal>>> closes = new HashMap<>();
+      String line;
+      int lineNr = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNr++;
+        line = line.strip();
+        if (line.isEmpty() || line.startsWith("#") || (lineNr == 1 && line.startsWith("symbol")))
+          continue;
+
+        String[] fields = line.split(",");
+        if (fields.length != 3)
+          return Result.failure("Expected symbol,date,close on line " + lineNr + " of " + path
+              + ", got: " + line);
+        try {
+          closes.computeIfAbsent(Symbol.symbol(fields[0].strip()), s -> new ArrayList<>())
+                .add(new Tuple<>(LocalDate.parse(fields[1].strip()),
+                    new BigDecimal(fields[2].strip())));
+        } catch (DateTimeParseException | NumberFormatException e) {
+          return Result.failure("Invalid date or price on line " + lineNr + " of " + path
+              + ": " + line);
+        }
+      }
+
+      Map<Symbol, PriceHistory> histories = Map.empty();
+      for (java.util.Map.Entry<Symbol, java.util.List<Tuple<LocalDate, BigDecimal>>> e :
+          closes.entrySet())
+        histories = histories.put(e.getKey(), PriceHistory.priceHistory(e.getValue()));
+      return Result.success(new FilePriceSource(histories));
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  @Override
+  public Result<Tuple<Symbol, BigDecimal>> quote(Symbol symbol) {
+    return historyOf(symbol)
+        .flatMap(history -> history.lastClose()
+            .failIfEmpty("No price for " + symbol + " in price file"))
+        .map(price -> new Tuple<>(symbol, price));
+  }
+
+  @Override
+  public Result<List<Tuple<LocalDate, BigDecimal>>> history(Symbol symbol, LocalDate from,
+      LocalDate to) {
+    return historyOf(symbol).map(history -> history.closes(from, to));
+  }
+
+  @Override
+  public Result<PriceHistory> priceHistory(Symbol symbol, LocalDate from, LocalDate to) {
+    return historyOf(symbol).map(history -> history.range(from, to));
+  }
+
+  @Override
+  public Result<Map<Symbol, PriceHistory>> priceHistories(List<Symbol> symbols, LocalDate from,
+      LocalDate to) {
+    return Map.flattenResultVal(symbols.foldLeft(
+        Map.<Symbol, Result<PriceHistory>>empty(), m -> symbol ->
+            m.put(symbol, priceHistory(symbol, from, to))));
+  }
+
+  /** All the prices in the file, e.g. for writing them to a MappedPriceStore.
+   */
+  public Map<Symbol, PriceHistory> getHistories() {
+    return histories;
+  }
+
+  private Result<PriceHistory> historyOf(Symbol symbol) {
+    return histories.get(symbol).failIfEmpty("Couldn't find stock " + symbol + " in price file");
+  }
+}
@@ -0,0 +1,84 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.Money;
+import ch.cottier.functionalUtilities.Result;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/** Number of shares held of every stock of a PriceMatrix, kept as plain ints indexed by the
+ * columns of the matrix. Mutable, meant to be carried along while walking through a list of
+ * transactions once.
+ */
+final class Holdings {
+  private final PriceMatrix prices;
+  private final int[] shares;
+
+  private Holdings(PriceMatrix prices) {
+    this.prices = prices;
+    this.shares = new int[prices.columns()];
+  }
+
+  static Holdings holdings(PriceMatrix prices) {
+    return new Holdings(prices);
+  }
+
+  void add(Symbol symbol, int numShares) {
+    int column = prices.column(symbol);
+    if (column < 0)
+      throw new IllegalArgumentException("No prices loaded for " + symbol);
+
+    shares[column] += numShares;
+  }
+
+  void add(Transaction tx) {
+    add(tx.getSymbol(), tx.getNumShares());
+  }
+
+  boolean isEmpty() {
+    for (int n : shares)
+      if (n != 0)
+        return false;
+    return true;
+  }
+
+  /** Sum of the value of all positions, with the same scale (6) as Portfolio.valueOn.
+   */
+  Result<BigDecimal> valueOn(LocalDate date) {
+    return valueMicros(prices.row(date)).map(Money::toBigDecimal);
+  }
+
+  /** Value on to divided by value on from, 1 if nothing is held. Rounded half up to 6 decimals
+   * like BigDecimal.divide with the scale of the values.
+   */
+  Result<BigDecimal> rateOfReturn(LocalDate from, LocalDate to) {
+    return isEmpty()
+        ? Result.success(Money.toBigDecimal(Money.ONE))
+        : Result.map2(valueMicros(prices.row(from)), valueMicros(prices.row(to)), iVal -> eVal ->
+            Money.toBigDecimal(Money.ratio(eVal, iVal)));
+  }
+
+  // Exact sum in micro-units, converted to a BigDecimal by the callers only
+  private Result<Long> valueMicros(int row) {
+    long value = Money.ZERO;
+    for (int column = 0; column < shares.length; column++) {
+      if (shares[column] == 0)
+        continue;
+
+      long close = prices.micros(row, column);
+      if (close == PriceMatrix.NO_PRICE)
+        return prices.noPrice(row, column);
+      value = Money.add(value, Money.times(close, shares[column]));
+    }
+    return Result.success(value);
+  }
+
+  /** Difference between the price paid in tx and the closing price on that day, times the number
+   * of shares.
+   */
+  Result<BigDecimal> premium(Transaction tx) {
+    return prices.close(tx.getDate(), tx.getSymbol())
+                 .map(price -> tx.getPrice()
+                                 .subtract(price)
+                                 .multiply(new BigDecimal(tx.getNumShares())));
+  }
+}
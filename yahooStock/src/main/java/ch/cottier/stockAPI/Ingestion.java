@@ -0,0 +1,37 @@
+package ch.cottier.stockAPI;
+
+import java.time.Duration;
+
+public class Ingestion {
+  private final int numTransactions;
+  private final Duration duration;
+
+  private Ingestion(int numTransactions, Duration duration) {
+    this.numTransactions = numTransactions;
+    this.duration = duration;
+  }
+
+  public static Ingestion ingestion(int numTransactions, Duration duration) {
+    return new Ingestion(numTransactions, duration);
+  }
+
+  public int getNumTransactions() {
+    return numTransactions;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public double transactionsPerSecond() {
+    return duration.isZero()
+        ? numTransactions
+        : numTransactions / (duration.toNanos() / 1e9);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Ingested %d transactions in %.3f s (%.0f transactions/s)",
+        numTransactions, duration.toNanos() / 1e9, transactionsPerSecond());
+  }
+}
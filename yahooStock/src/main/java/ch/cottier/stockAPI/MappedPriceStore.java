@@ -0,0 +1,130 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Binary, column-wise file format for price histories, read with FileChannel.map so that the
+ * histories of thousands of stocks can be opened without parsing or copying anything: the
+ * PriceHistory of every stock is a view on its two columns in the mapped file, and only the pages
+ * actually looked at are read from disk.
+ *
+ * <p>Layout (big-endian): the magic number "APS1", the number of stocks, then a directory with for
+ * every stock the length of its symbol (short), the symbol (UTF-8), the number of closes (int) and
+ * the offsets (long) of its two columns. After the directory come the columns themselves, the
+ * dates as epoch days (int) and the closes as micro-units (long), 8-byte aligned.
+ */
+public final class MappedPriceStore {
+  private static final int MAGIC = 0x41505331;
+
+  private MappedPriceStore() {
+  }
+
+  /** True if the file at path starts like a price store, false if it doesn't or can't be read.
+   */
+  public static boolean isPriceStore(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(4);
+      return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public static Result<Map<Symbol, PriceHistory>> read(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE)
+        return Result.failure("Price store " + path + " is larger than 2 GB");
+
+      // the mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.limit() < 8 || buffer.getInt(0) != MAGIC)
+        return Result.failure("Not a price store: " + path);
+
+      int count = buffer.getInt(4);
+      buffer.position(8);
+      Map<Symbol, PriceHistory> histories = Map.empty();
+      for (int i = 0; i < count; i++) {
+        byte[] name = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(name);
+        Symbol symbol = Symbol.symbol(new String(name, StandardCharsets.UTF_8));
+        int size = buffer.getInt();
+        long days = buffer.getLong();
+        long closes = buffer.getLong();
+        if (size < 0 || days < 0 || closes < 0
+            || days + 4L * size > buffer.limit() || closes + 8L * size > buffer.limit())
+          return Result.failure("Corrupt price store " + path + ": columns of " + symbol
+              + " outside of the file");
+
+        histories = histories.put(symbol, PriceHistory.columns(
+            buffer.slice((int) days, 4 * size).asIntBuffer(),
+            buffer.slice((int) closes, 8 * size).asLongBuffer()));
+      }
+      return Result.success(histories);
+    } catch (IOException e) {
+      return Result.failure(e);
+    } catch (BufferUnderflowException e) {
+      return Result.failure("Corrupt price store " + path + ": directory truncated");
+    }
+  }
+
+  /** Writes the histories to path, replacing the file if it exists. Returns the number of stocks
+   * written.
+   */
+  public static Result<Integer> write(Path path, Map<Symbol, PriceHistory> histories) {
+    List<Tuple<byte[], PriceHistory>> entries = histories.toList(symbol -> history ->
+        new Tuple<>(symbol.toString().getBytes(StandardCharsets.UTF_8), history));
+
+    long size = 8;
+    for (Tuple<byte[], PriceHistory> entry : entries)
+      size += 2 + entry._1.length + 4 + 8 + 8;
+    long[] dayOffsets = new long[entries.size()];
+    long[] closeOffsets = new long[entries.size()];
+    int i = 0;
+    for (Tuple<byte[], PriceHistory> entry : entries) {
+      dayOffsets[i] = align(size);
+      closeOffsets[i] = align(dayOffsets[i] + 4L * entry._2.size());
+      size = closeOffsets[i++] + 8L * entry._2.size();
+    }
+    if (size > Integer.MAX_VALUE)
+      return Result.failure("Price store " + path + " would be larger than 2 GB");
+
+    try {
+      Files.deleteIfExists(path);
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(MAGIC).putInt(entries.size());
+        i = 0;
+        for (Tuple<byte[], PriceHistory> entry : entries) {
+          PriceHistory history = entry._2;
+          buffer.putShort((short) entry._1.length).put(entry._1)
+                .putInt(history.size()).putLong(dayOffsets[i]).putLong(closeOffsets[i]);
+          for (int j = 0; j < history.size(); j++) {
+            buffer.putInt((int) dayOffsets[i] + 4 * j, history.epochDayAt(j));
+            buffer.putLong((int) closeOffsets[i] + 8 * j, history.microsAt(j));
+          }
+          i++;
+        }
+        buffer.force();
+      }
+      return Result.success(entries.size());
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  private static long align(long offset) {
+    return (offset + 7) & ~7L;
+  }
+}
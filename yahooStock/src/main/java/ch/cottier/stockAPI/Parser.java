@@ -4,11 +4,15 @@ import ch.cottier.functionalUtilities.Input;
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Map;
 import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Stream;
 import ch.cottier.functionalUtilities.Tuple;
+import java.io.File;
 import java.time.LocalDate;
 import java.util.function.Function;
 
 public class Parser {
+  private static volatile FetchPolicy fetchPolicy = FetchPolicy.DEFAULT;
+
   private Parser() {
     super();
   }
@@ -46,10 +50,42 @@ public class Parser {
         .map(l -> new Tuple<>(l, input));
   }
 
+  /** The transactions of input, parsed one at a time as the stream is traversed instead of all
+   * upfront. Like parseTransactions it ends at the first entry that can't be read.
+   */
+  public static Stream<Result<Transaction>> streamTransactions(Input input) {
+    return Stream.unfold(input, Parser::createTxWithCheck);
+  }
+
+  /** All transactions in file path, one `date BUY|SELL symbol shares price` per line, in the order
+   * of the file. Much faster than parseTransactions with a FileReader, and fails with the number
+   * of the first line that isn't a valid transaction instead of stopping there.
+   */
+  public static Result<List<Transaction>> parseTransactionFile(File path) {
+    return TransactionFileParser.parse(path.toPath()).map(txs -> List.of(txs));
+  }
+
+  /** All transactions in file path sorted by date, for files with the transactions in ascending
+   * or descending order of their dates. The file is split into chunks which are parsed and checked
+   * on parallelism threads, meant for files of hundreds of MB and more. Fails with the number of
+   * the first invalid line, or with "Wrong date after line n" (n being the number of transactions
+   * before the first one out of order).
+   */
+  public static Result<List<Transaction>> parseSortedTransactionFile(File path, int parallelism) {
+    return parseSortedTransactionFile(path, parallelism,
+        ChunkedTransactionParser.DEFAULT_CHUNK_SIZE);
+  }
+
+  static Result<List<Transaction>> parseSortedTransactionFile(File path, int parallelism,
+      long chunkSize) {
+    return ChunkedTransactionParser.parseSorted(path.toPath(), parallelism, chunkSize);
+  }
+
   public static Map<Symbol, Integer> parsePositions(List<Transaction> l) {
-    return l.foldLeft(Map.empty(), acc -> e -> acc.put(
-        e.getSymbol(),
-        acc.get(e.getSymbol()).getOrElse(0) + e.getNumShares()));
+    Map.Builder<Symbol, Integer> positions = Map.builder();
+    for (Transaction tx : l)
+      positions.put(tx.getSymbol(), positions.get(tx.getSymbol()).getOrElse(0) + tx.getNumShares());
+    return positions.build();
   }
 
   public static Function<Transaction, Result<Map<Symbol, Integer>>> checkForNegativeStock(Result<Map<Symbol, Integer>> acc) {
@@ -68,15 +104,30 @@ public class Parser {
   }
 
   public static Result<Map<Symbol, StockPosition>> parseStockPositions(List<Transaction> l, LocalDate historyFrom) {
+    return parseStockPositions(l, historyFrom, fetchPolicy);
+  }
+
+  /** The price histories of the stocks are fetched concurrently, as allowed by policy.
+   */
+  public static Result<Map<Symbol, StockPosition>> parseStockPositions(List<Transaction> l,
+      LocalDate historyFrom, FetchPolicy policy) {
     Map<Symbol, Integer> shares = parsePositions(l).filter(sym -> nShares -> nShares != 0);
     List<String> symbols = shares.toList(t -> ignoreVal -> t.toString());
     return Stock.stocks(symbols)
+        .map(stocksMap -> historyFrom.isEqual(LocalDate.now())
+            ? stocksMap.mapVal(Result::success)
+            : policy.fetchAll(stocksMap, stock -> Stock.stock(stock.getSymbol(), historyFrom)))
         .map(stocksMap -> stocksMap
-            .zipValWith(shares, ignoreSym -> emptyStock -> nShares ->
-                historyFrom.isEqual(LocalDate.now())
-                    ? Result.success(StockPosition.position(emptyStock, nShares))
-                    : (Result<StockPosition>) emptyStock.fillHistoricalData(historyFrom)
-                        .map(filledStock -> StockPosition.position(filledStock, nShares))))
+            .zipValWith(shares, ignoreSym -> rStock -> nShares ->
+                rStock.map(stock -> StockPosition.position(stock, nShares))))
         .flatMap(Map::flattenResultVal);
   }
-}
\ No newline at end of file
+
+  public static void useFetchPolicy(FetchPolicy policy) {
+    fetchPolicy = policy;
+  }
+
+  static FetchPolicy getFetchPolicy() {
+    return fetchPolicy;
+  }
+}
@@ -2,8 +2,10 @@ package ch.cottier.stockAPI;
 
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Money;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Tuple;
+import ch.cottier.functionalUtilities.Vector;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
@@ -40,9 +42,9 @@ public class Portfolio {
   }
 
   public BigDecimal currentValue() {
-    return positions.mapVal(StockPosition::getValue)
+    return Money.toBigDecimal(positions.mapVal(StockPosition::getValueMicros)
         .stream(ignoreSym -> stockPos -> stockPos)
-        .foldLeft(BigDecimal.ZERO.setScale(6, RoundingMode.HALF_UP), totValue -> totValue::add);
+        .foldLeft(Money.ZERO, totValue -> stockPos -> Money.add(totValue, stockPos)));
   }
 
   public static Result<BigDecimal> valueOn(List<Transaction> l, LocalDate date) {
@@ -55,47 +57,127 @@ public class Portfolio {
   public Result<BigDecimal> valueOn(LocalDate date) {
     return date.isEqual(LocalDate.now())
         ? Result.success(currentValue())
-        : Map.flattenResultVal(positions.mapVal(sp -> sp.getValueOn(date)))
-            .map(m -> m.stream(ignoreSym -> stockPos -> stockPos)
-                .foldLeft(BigDecimal.ZERO, stockPos -> stockPos::add));
-    // no need for setScale, as sp.getValueOn() already returns a BigDecimal with scale = 6
+        : Map.flattenResultVal(positions.mapVal(sp -> sp.getValueMicrosOn(date)))
+            .map(m -> Money.toBigDecimal(m.stream(ignoreSym -> stockPos -> stockPos)
+                .foldLeft(Money.ZERO, totValue -> stockPos -> Money.add(totValue, stockPos))));
   }
 
-  private Result<BigDecimal> rateOfReturn(LocalDate from, LocalDate to) {
-    Result<BigDecimal> initValue = valueOn(from);
-    Result<BigDecimal> endValue = valueOn(to);
-    return positions.toList(ignoreSym -> StockPosition::isEmpty).reduce(b1 -> b2 -> b1 && b2)
-        ? Result.success(BigDecimal.ONE.setScale(6, RoundingMode.HALF_UP))
-        : Result.map2(initValue, endValue, iVal -> eVal -> eVal.divide(iVal, RoundingMode.HALF_UP)
-                                                               .setScale(6, RoundingMode.HALF_UP));
+  /** Value of the portfolio made of the transactions of lTx (sorted by date) on each of dates, in
+   * ascending order of the dates. The value on a date includes all transactions made on or before
+   * it, dates before the first transaction are left out. All prices needed are loaded into a
+   * PriceMatrix first, after that it's a single pass over lTx and the dates.
+   */
+  public static Result<List<Tuple<LocalDate, BigDecimal>>> valuesOn(List<Transaction> lTx,
+      List<LocalDate> dates) {
+    if (lTx.isEmpty())
+      return Result.empty();
+
+    LocalDate firstTx = lTx.head().getDate();
+    java.util.List<LocalDate> sortedDates = dates.stream()
+        .filter(date -> !date.isBefore(firstTx))
+        .sorted()
+        .distinct()
+        .toList();
+    return PriceMatrix.priceMatrix(lTx.map(Transaction::getSymbol), List.of(sortedDates))
+        .flatMap(prices -> {
+          Holdings holdings = Holdings.holdings(prices);
+          Vector<Tuple<LocalDate, BigDecimal>> values = Vector.empty();
+          List<Transaction> rest = lTx;
+          for (LocalDate date : sortedDates) {
+            while (!rest.isEmpty() && !rest.head().getDate().isAfter(date)) {
+              holdings.add(rest.head());
+              rest = rest.tail();
+            }
+
+            Result<BigDecimal> value = holdings.valueOn(date);
+            if (!value.isSuccess())
+              return value.map(ignored -> List.<Tuple<LocalDate, BigDecimal>>list());
+            values = values.append(new Tuple<>(date, value.getOrThrow()));
+          }
+          return Result.success(values.toList());
+        });
   }
 
+  /** Value of the portfolio made of the transactions of lTx (sorted by date) on every trading day
+   * between from and to, see ValueSeries.
+   */
+  public static Result<List<Tuple<LocalDate, BigDecimal>>> valueSeries(List<Transaction> lTx,
+      LocalDate from, LocalDate to) {
+    return ValueSeries.valueSeries(lTx, from, to);
+  }
+
+  /** Time-weighted rate of return between from and to of portfolio, updated with lTx along the
+   * way. All prices needed are loaded into a PriceMatrix first, after that it's a single pass over
+   * lTx (sorted by date) with the number of shares held as plain ints.
+   */
   public static Result<BigDecimal> TWRR(final Portfolio portfolio,
       final List<Transaction> lTx, final LocalDate from, final LocalDate to) {
-    // Create pairs of (from date, to date inside tx)
-    // drop date of last tx (or first before reverse()) as it will be provided when zipping with lTx
-    List<Tuple<LocalDate, Transaction>> periodsAndTxs = lTx.foldLeft(List.list(from), l -> tx -> l.prepend(tx.getDate()))
-        .tail().reverse()
-        .zip(lTx);
-
-    Result<Tuple<List<BigDecimal>, Portfolio>> init =
-        Result.success(new Tuple<>(List.list(), portfolio));
-    Result<Tuple<List<BigDecimal>, Portfolio>> result =
-        periodsAndTxs.foldLeft(init, acc -> data -> acc
-            .flatMap(accTuple -> accTuple._2.rateOfReturn(data._1, data._2.getDate())
-                .flatMap(periodRoR -> accTuple._2.updateWith(data._2)
-                    .map(updPf -> new Tuple<>(accTuple._1.prepend(periodRoR), updPf)))
-            ));
-
-    Result<List<BigDecimal>> growthFactors =
-        result.flatMap(res -> lTx.last()
-                .flatMap(lastTx -> res._2.rateOfReturn(lastTx.getDate(), to)
-                  .map(ror -> res._1().prepend(ror))))
-              .map(List::reverse);
-    return growthFactors.map(l -> l
-        .foldLeft(BigDecimal.ONE, product -> product::multiply)
-        .subtract(BigDecimal.ONE)
-        .setScale(6, RoundingMode.HALF_UP));
+    if (lTx.isEmpty())
+      return Result.empty();
+
+    List<Symbol> symbols = List.concat(portfolio.positions.toList(sym -> ignoreSp -> sym),
+        lTx.map(Transaction::getSymbol));
+    List<LocalDate> dates = lTx.map(Transaction::getDate).prepend(to).prepend(from);
+    return PriceMatrix.priceMatrix(symbols, dates).flatMap(prices -> {
+      Holdings holdings = Holdings.holdings(prices);
+      portfolio.positions.toList().forEach(t -> holdings.add(t._1, t._2.getNumShares()));
+
+      // product of the growth factors of the periods between transactions
+      GrowthChain chain = GrowthChain.growthChain();
+      LocalDate periodStart = from;
+      for (Transaction tx : lTx) {
+        Result<BigDecimal> ror = holdings.rateOfReturn(periodStart, tx.getDate());
+        if (!ror.isSuccess())
+          return ror;
+        chain = chain.times(ror.getOrThrow());
+        holdings.add(tx);
+        periodStart = tx.getDate();
+      }
+
+      LocalDate lastDate = periodStart;
+      GrowthChain factors = chain;
+      return holdings.rateOfReturn(lastDate, to).map(ror -> factors.times(ror).rate());
+    });
+  }
+
+  /** Growth factor of every period between two transactions of lTx (sorted by date), and between
+   * the last one and endDate. The value at the start of a period includes the premium paid above
+   * the closing price when buying, the value at its end the premium received when selling.
+   * Single pass over lTx, with all prices loaded into a PriceMatrix first.
+   */
+  public static Result<List<BigDecimal>> growthFactors(List<Transaction> lTx, LocalDate endDate) {
+    if (lTx.isEmpty())
+      return Result.success(List.list());
+
+    List<LocalDate> dates = lTx.map(Transaction::getDate).prepend(endDate);
+    return PriceMatrix.priceMatrix(lTx.map(Transaction::getSymbol), dates).flatMap(prices -> {
+      Holdings holdings = Holdings.holdings(prices);
+      Vector<BigDecimal> factors = Vector.empty();
+      List<Transaction> rest = lTx;
+      while (!rest.isEmpty()) {
+        Transaction currTx = rest.head();
+        rest = rest.tail();
+        holdings.add(currTx);
+
+        Result<BigDecimal> vInit = currTx.getNumShares() > 0 // BUY
+            ? Result.map2(holdings.valueOn(currTx.getDate()), holdings.premium(currTx),
+                val -> val::add)
+            : holdings.valueOn(currTx.getDate());
+        Result<BigDecimal> vEnd = rest.isEmpty()
+            ? holdings.valueOn(endDate)
+            : rest.head().getNumShares() < 0 // SELL
+                ? Result.map2(holdings.valueOn(rest.head().getDate()),
+                    holdings.premium(rest.head()), val -> val::add)
+                : holdings.valueOn(rest.head().getDate());
+
+        Result<BigDecimal> factor = Result.map2(vInit, vEnd,
+            init -> end -> end.divide(init, RoundingMode.HALF_UP));
+        if (!factor.isSuccess())
+          return factor.map(ignored -> List.<BigDecimal>list());
+        factors = factors.append(factor.getOrThrow());
+      }
+      return Result.success(factors.toList());
+    });
   }
 
   public static Portfolio empty() {
@@ -112,6 +194,16 @@ public class Portfolio {
         : Parser.parseStockPositions(transactions, historyFrom).map(Portfolio::new);
   }
 
+  /** Builds the portfolio by folding over the transactions straight from the database cursor,
+   * instead of loading all of them into memory first.
+   */
+  public static Result<Portfolio> portfolio(DataSource ds, List<Symbol> symbols, LocalDate date) {
+    return ds.foldTransactions(symbols, Result.empty(), Result.success(date),
+            DataSource.DEFAULT_FETCH_SIZE, Result.success(empty()),
+            rPf -> tx -> rPf.flatMap(pf -> pf.updateWith(tx)))
+        .flatMap(rPf -> rPf);
+  }
+
   @Override
   public String toString() {
     return "Portfolio: " + positions.toString();
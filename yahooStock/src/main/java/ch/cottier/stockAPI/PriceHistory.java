@@ -0,0 +1,191 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Money;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/** Closing prices of a stock sorted by date, stored column-wise: the dates as epoch days in one
+ * column and the prices as Money micro-units in a parallel one, so that the close on or before a
+ * date is a binary search instead of a scan over the whole history.
+ * The columns are either arrays on the heap or a view into a memory-mapped MappedPriceStore, in
+ * which case no price is read before it's asked for. Immutable, merging two histories creates a
+ * new one.
+ */
+public final class PriceHistory {
+  private static final PriceHistory EMPTY = new PriceHistory(IntBuffer.allocate(0),
+      LongBuffer.allocate(0));
+  private final IntBuffer epochDays;
+  private final LongBuffer closes;
+
+  private PriceHistory(IntBuffer epochDays, LongBuffer closes) {
+    this.epochDays = epochDays;
+    this.closes = closes;
+  }
+
+  public static PriceHistory empty() {
+    return EMPTY;
+  }
+
+  /** Closing prices in any order. If there are several for the same day, the one coming last in
+   * closes is kept.
+   */
+  public static PriceHistory priceHistory(java.util.List<Tuple<LocalDate, BigDecimal>> closes) {
+    @SuppressWarnings("unchecked")
+    Tuple<LocalDate, BigDecimal>[] sorted = closes.stream()
+        .sorted(Comparator.comparing(close -> close._1))
+        .toArray(Tuple[]::new);
+
+    int[] days = new int[sorted.length];
+    long[] prices = new long[sorted.length];
+    int n = 0;
+    for (Tuple<LocalDate, BigDecimal> close : sorted) {
+      int day = Math.toIntExact(close._1.toEpochDay());
+      if (n > 0 && days[n - 1] == day)
+        n--;
+      days[n] = day;
+      prices[n++] = Money.micros(close._2);
+    }
+    return columns(Arrays.copyOf(days, n), Arrays.copyOf(prices, n));
+  }
+
+  /** History on top of the given columns, which have to be of the same length and sorted by
+   * epoch day without duplicates. The buffers are used as they are, not copied.
+   */
+  static PriceHistory columns(IntBuffer epochDays, LongBuffer closes) {
+    if (epochDays.remaining() != closes.remaining())
+      throw new IllegalArgumentException("Columns of different length: "
+          + epochDays.remaining() + " days, " + closes.remaining() + " closes");
+    return new PriceHistory(epochDays.slice(), closes.slice());
+  }
+
+  static PriceHistory columns(int[] epochDays, long[] closes) {
+    return columns(IntBuffer.wrap(epochDays), LongBuffer.wrap(closes));
+  }
+
+  public int size() {
+    return epochDays.limit();
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public Result<LocalDate> firstDate() {
+    return isEmpty()
+        ? Result.empty()
+        : Result.success(dateAt(0));
+  }
+
+  public Result<LocalDate> lastDate() {
+    return isEmpty()
+        ? Result.empty()
+        : Result.success(dateAt(size() - 1));
+  }
+
+  /** Closing price on date, or the last one before it (e.g. for weekends and holidays). Empty if
+   * the history starts after date.
+   */
+  public Result<BigDecimal> closeOnOrBefore(LocalDate date) {
+    int idx = floorIndex(epochDay(date));
+    return idx < 0
+        ? Result.empty()
+        : Result.success(closeAt(idx));
+  }
+
+  /** Last closing price of the history, empty if there is none.
+   */
+  public Result<BigDecimal> lastClose() {
+    return isEmpty()
+        ? Result.empty()
+        : Result.success(closeAt(size() - 1));
+  }
+
+  /** Closing prices between from and to, both inclusive, sorted by date.
+   */
+  public List<Tuple<LocalDate, BigDecimal>> closes(LocalDate from, LocalDate to) {
+    int first = floorIndex(epochDay(from) - 1) + 1;
+    List<Tuple<LocalDate, BigDecimal>> res = List.list();
+    for (int i = floorIndex(epochDay(to)); i >= first; i--)
+      res = res.prepend(new Tuple<>(dateAt(i), closeAt(i)));
+    return res;
+  }
+
+  /** The part of the history between from and to, both inclusive, sharing the columns of this
+   * one instead of copying them.
+   */
+  public PriceHistory range(LocalDate from, LocalDate to) {
+    int first = floorIndex(epochDay(from) - 1) + 1;
+    int length = Math.max(0, floorIndex(epochDay(to)) + 1 - first);
+    return length == size()
+        ? this
+        : new PriceHistory(epochDays.slice(first, length), closes.slice(first, length));
+  }
+
+  /** Both histories combined, on days present in both the price of that is kept.
+   */
+  public PriceHistory merge(PriceHistory that) {
+    if (that.isEmpty())
+      return this;
+    if (this.isEmpty())
+      return that;
+
+    int[] days = new int[this.size() + that.size()];
+    long[] prices = new long[days.length];
+    int i = 0, j = 0, n = 0;
+    while (i < this.size() || j < that.size()) {
+      if (j == that.size() || (i < this.size() && this.epochDays.get(i) < that.epochDays.get(j))) {
+        days[n] = this.epochDays.get(i);
+        prices[n++] = this.closes.get(i++);
+      } else {
+        if (i < this.size() && this.epochDays.get(i) == that.epochDays.get(j))
+          i++;
+        days[n] = that.epochDays.get(j);
+        prices[n++] = that.closes.get(j++);
+      }
+    }
+    return columns(Arrays.copyOf(days, n), Arrays.copyOf(prices, n));
+  }
+
+  int epochDayAt(int idx) {
+    return epochDays.get(idx);
+  }
+
+  long microsAt(int idx) {
+    return closes.get(idx);
+  }
+
+  LocalDate dateAt(int idx) {
+    return LocalDate.ofEpochDay(epochDays.get(idx));
+  }
+
+  BigDecimal closeAt(int idx) {
+    return Money.toBigDecimal(closes.get(idx));
+  }
+
+  private static int epochDay(LocalDate date) {
+    return Math.toIntExact(date.toEpochDay());
+  }
+
+  // Index of the last day on or before day, -1 if there is none
+  private int floorIndex(int day) {
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midDay = epochDays.get(mid);
+      if (midDay <= day)
+        low = mid + 1;
+      else
+        high = mid - 1;
+    }
+    return high;
+  }
+
+}
@@ -0,0 +1,124 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Money;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Closing prices of a fixed set of stocks on a fixed set of dates, all loaded up front with one
+ * batch request to the price source, so that valuing a portfolio on any of the dates is an array
+ * lookup per stock. The price on a date is the close on that date or, if there is none (weekends,
+ * holidays), the last one before it, up to a month back; on today's date it is the current price.
+ */
+public final class PriceMatrix {
+  static final long NO_PRICE = Long.MIN_VALUE;
+  private final java.util.Map<Symbol, Integer> columns;
+  private final Symbol[] symbols;
+  private final int[] epochDays;
+  private final long[][] closes; // [row (date)][column (symbol)] in micro-units, or NO_PRICE
+
+  private PriceMatrix(java.util.Map<Symbol, Integer> columns, Symbol[] symbols, int[] epochDays,
+      long[][] closes) {
+    this.columns = columns;
+    this.symbols = symbols;
+    this.epochDays = epochDays;
+    this.closes = closes;
+  }
+
+  public static Result<PriceMatrix> priceMatrix(List<Symbol> symbols, List<LocalDate> dates) {
+    java.util.Map<Symbol, Integer> columns = new HashMap<>();
+    for (Symbol symbol : symbols)
+      columns.putIfAbsent(symbol, columns.size());
+    Symbol[] cols = new Symbol[columns.size()];
+    columns.forEach((symbol, col) -> cols[col] = symbol);
+
+    int[] days = dates.stream().mapToInt(date -> Math.toIntExact(date.toEpochDay()))
+                      .sorted().distinct().toArray();
+    long[][] closes = new long[days.length][cols.length];
+    if (days.length == 0 || cols.length == 0)
+      return Result.success(new PriceMatrix(columns, cols, days, closes));
+
+    List<Symbol> distinct = List.of(cols);
+    LocalDate today = LocalDate.now();
+    LocalDate first = LocalDate.ofEpochDay(days[0]);
+    LocalDate last = LocalDate.ofEpochDay(days[days.length - 1]);
+    Result<Map<Symbol, Tuple<Symbol, BigDecimal>>> rQuotes = last.isBefore(today)
+        ? Result.success(Map.empty())
+        : Stock.getPriceSource().quotes(distinct);
+
+    return Result.map2(
+        Stock.histories(distinct, first.minusMonths(1), last.isAfter(today) ? today : last),
+        rQuotes,
+        histories -> quotes -> {
+          for (int col = 0; col < cols.length; col++) {
+            PriceHistory history = histories.get(cols[col]).getOrElse(PriceHistory.empty());
+            Result<Long> current = quotes.get(cols[col]).map(quote -> Money.micros(quote._2));
+            for (int row = 0; row < days.length; row++) {
+              LocalDate date = LocalDate.ofEpochDay(days[row]);
+              closes[row][col] = (date.equals(today)
+                  ? current
+                  : history.closeOnOrBefore(date).map(Money::micros))
+                  .getOrElse(NO_PRICE);
+            }
+          }
+          return new PriceMatrix(columns, cols, days, closes);
+        });
+  }
+
+  public int rows() {
+    return epochDays.length;
+  }
+
+  public int columns() {
+    return symbols.length;
+  }
+
+  /** Row of date, -1 if the matrix has no prices for date.
+   */
+  public int row(LocalDate date) {
+    int idx = Arrays.binarySearch(epochDays, Math.toIntExact(date.toEpochDay()));
+    return idx < 0 ? -1 : idx;
+  }
+
+  /** Column of symbol, -1 if the matrix has no prices for symbol.
+   */
+  public int column(Symbol symbol) {
+    return columns.getOrDefault(symbol, -1);
+  }
+
+  public LocalDate date(int row) {
+    return LocalDate.ofEpochDay(epochDays[row]);
+  }
+
+  public Symbol symbol(int column) {
+    return symbols[column];
+  }
+
+  public Result<BigDecimal> close(int row, int column) {
+    long close = micros(row, column);
+    return close == NO_PRICE
+        ? noPrice(row, column)
+        : Result.success(Money.toBigDecimal(close));
+  }
+
+  /** Close in row and column as Money micro-units, NO_PRICE if there is none.
+   */
+  long micros(int row, int column) {
+    return row < 0 || column < 0 ? NO_PRICE : closes[row][column];
+  }
+
+  <T> Result<T> noPrice(int row, int column) {
+    return Result.failure("No price saved for "
+        + (column < 0 ? "unknown stock" : symbols[column])
+        + (row < 0 ? " on unknown date" : " on date " + date(row)));
+  }
+
+  public Result<BigDecimal> close(LocalDate date, Symbol symbol) {
+    return close(row(date), column(symbol));
+  }
+}
@@ -0,0 +1,56 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/** Where the prices of stocks come from, e.g. Yahoo Finance or a file with a snapshot of prices.
+ * Stock gets all its prices through the source set with Stock.usePriceSource.
+ */
+public interface PriceSource {
+
+  /** The current price of the stock, together with its symbol including the name of the company
+   * (if the source knows it).
+   */
+  Result<Tuple<Symbol, BigDecimal>> quote(Symbol symbol);
+
+  /** Closing prices between from and to, both inclusive, sorted by date. Days without a close
+   * (weekends, holidays) are simply missing, a range without any close results in an empty list.
+   */
+  Result<List<Tuple<LocalDate, BigDecimal>>> history(Symbol symbol, LocalDate from, LocalDate to);
+
+  /** Current prices of several stocks. Fails if the price of any of them can't be found.
+   */
+  default Result<Map<Symbol, Tuple<Symbol, BigDecimal>>> quotes(List<Symbol> symbols) {
+    return Map.flattenResultVal(symbols.foldLeft(
+        Map.<Symbol, Result<Tuple<Symbol, BigDecimal>>>empty(), m -> symbol ->
+            m.put(symbol, quote(symbol))));
+  }
+
+  /** Closing prices of several stocks between from and to, both inclusive. Fails if the history of
+   * any of them can't be fetched.
+   */
+  default Result<Map<Symbol, List<Tuple<LocalDate, BigDecimal>>>> histories(List<Symbol> symbols,
+      LocalDate from, LocalDate to) {
+    return Map.flattenResultVal(symbols.foldLeft(
+        Map.<Symbol, Result<List<Tuple<LocalDate, BigDecimal>>>>empty(), m -> symbol ->
+            m.put(symbol, history(symbol, from, to))));
+  }
+
+  /** Closing prices between from and to like history, as a PriceHistory. Sources holding their
+   * prices in columns already return a view on them instead of copying every close.
+   */
+  default Result<PriceHistory> priceHistory(Symbol symbol, LocalDate from, LocalDate to) {
+    return history(symbol, from, to).map(PriceHistory::priceHistory);
+  }
+
+  /** Closing prices of several stocks like histories, as PriceHistories.
+   */
+  default Result<Map<Symbol, PriceHistory>> priceHistories(List<Symbol> symbols, LocalDate from,
+      LocalDate to) {
+    return histories(symbols, from, to).map(m -> m.mapVal(PriceHistory::priceHistory));
+  }
+}
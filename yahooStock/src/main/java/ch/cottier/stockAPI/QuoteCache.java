@@ -0,0 +1,120 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** Disk-backed store of historical closing prices, kept inside the quotes table of a DataSource.
+ * Only closed trading days (i.e. before today) are stored, since their price cannot change anymore.
+ */
+final class QuoteCache {
+  // Zone of the exchanges most quoted stocks trade on, the last to close of the major ones
+  static final ZoneId EXCHANGE_ZONE = ZoneId.of("America/New_York");
+  private final DataSource ds;
+
+  private QuoteCache(DataSource ds) {
+    this.ds = ds;
+  }
+
+  static QuoteCache quoteCache(DataSource ds) {
+    return new QuoteCache(ds);
+  }
+
+  /** Returns the closing prices of symbol between from and to (both inclusive), sorted by date.
+   * Only the date ranges that haven't been fetched before are requested through download, which
+   * takes a from and to date (both inclusive). Can be called from several threads at once: the
+   * database is only accessed by one of them at a time, while the downloads run concurrently.
+   */
+  Result<List<Tuple<LocalDate, BigDecimal>>> history(Symbol symbol, LocalDate from, LocalDate to,
+      Function<LocalDate, Function<LocalDate, Result<List<Tuple<LocalDate, BigDecimal>>>>> download) {
+    LocalDate lastClosedDay = lastClosedDay(Clock.systemDefaultZone());
+    return locked(() -> ds.getQuoteRanges(symbol))
+        .map(t -> missingRanges(t._1, from, to))
+        .flatMap(missing -> missing.foldLeft(Result.success(List.<Tuple<LocalDate, BigDecimal>>list()),
+            rLive -> range -> rLive.flatMap(live -> download.apply(range._1).apply(range._2)
+                .flatMap(quotes -> locked(() -> store(symbol, range, lastClosedDay, quotes)))
+                .map(quotes -> List.concat(quotes.filter(q -> q._1.isAfter(lastClosedDay)), live)))))
+        .flatMap(live -> locked(() -> ds.getQuotes(symbol, from, to))
+            .map(t -> sortByDate(List.concat(t._1, live))));
+  }
+
+  /** Closing price on date, or the last one before it, if date lies within an already fetched range.
+   * Returns empty otherwise, without downloading anything.
+   */
+  Result<BigDecimal> cachedPrice(Symbol symbol, LocalDate date) {
+    return locked(() -> ds.getQuoteRanges(symbol)
+        .map(t -> t._1.filter(range -> !range._1.isAfter(date) && !range._2.isBefore(date)))
+        .flatMap(ranges -> ranges.isEmpty()
+            ? Result.<Tuple<LocalDate, LocalDate>>empty()
+            : Result.success(ranges.head()))
+        .flatMap(range -> ds.getQuotes(symbol, range._1, date))
+        .flatMap(t -> t._1.last())
+        .map(Tuple::_2));
+  }
+
+  /** Last day whose closing prices are final: the day before today, where today is the earlier of
+   * the dates in the zone of clock and in EXCHANGE_ZONE. So neither a day still trading in New York
+   * nor today's date of the system is ever stored.
+   */
+  static LocalDate lastClosedDay(Clock clock) {
+    LocalDate local = LocalDate.now(clock);
+    LocalDate exchange = LocalDate.now(clock.withZone(EXCHANGE_ZONE));
+    return (exchange.isBefore(local) ? exchange : local).minusDays(1);
+  }
+
+  // The connection of the DataSource must not be shared by several threads at the same time
+  private <T> T locked(Supplier<T> dbAccess) {
+    synchronized (ds) {
+      return dbAccess.get();
+    }
+  }
+
+  private static List<Tuple<LocalDate, BigDecimal>> sortByDate(
+      List<Tuple<LocalDate, BigDecimal>> quotes) {
+    return quotes.isEmpty()
+        ? quotes
+        : quotes.sortFP(Comparator.comparing(Tuple::_1));
+  }
+
+  private Result<List<Tuple<LocalDate, BigDecimal>>> store(Symbol symbol,
+      Tuple<LocalDate, LocalDate> range, LocalDate lastClosedDay,
+      List<Tuple<LocalDate, BigDecimal>> quotes) {
+    if (range._1.isAfter(lastClosedDay))
+      return Result.success(quotes);
+
+    LocalDate storeTo = range._2.isAfter(lastClosedDay) ? lastClosedDay : range._2;
+    return ds.insertQuotes(symbol, range._1, storeTo,
+            quotes.filter(q -> !q._1.isAfter(storeTo)))
+        .map(ignored -> quotes);
+  }
+
+  /** Date ranges inside from-to not covered by any of the already fetched ranges, which must be
+   * sorted by their start date.
+   */
+  static List<Tuple<LocalDate, LocalDate>> missingRanges(List<Tuple<LocalDate, LocalDate>> fetched,
+      LocalDate from, LocalDate to) {
+    Tuple<LocalDate, List<Tuple<LocalDate, LocalDate>>> res = fetched.foldLeft(
+        new Tuple<>(from, List.list()), acc -> range -> {
+          LocalDate cursor = acc._1;
+          if (cursor.isAfter(to) || range._2.isBefore(cursor) || range._1.isAfter(to))
+            return acc;
+
+          List<Tuple<LocalDate, LocalDate>> missing = range._1.isAfter(cursor)
+              ? acc._2.prepend(new Tuple<>(cursor, range._1.minusDays(1)))
+              : acc._2;
+          return new Tuple<>(range._2.plusDays(1), missing);
+        });
+
+    return (res._1.isAfter(to)
+        ? res._2
+        : res._2.prepend(new Tuple<>(res._1, to)))
+        .reverse();
+  }
+}
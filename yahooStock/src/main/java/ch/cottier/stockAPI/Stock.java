@@ -1,46 +1,41 @@
 package ch.cottier.stockAPI;
 
+import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Map;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Tuple;
-import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Comparator;
-import java.util.GregorianCalendar;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
-import yahoofinance.YahooFinance;
-import yahoofinance.histquotes.HistoricalQuote;
-import yahoofinance.histquotes.Interval;
 
 public class Stock {
-  private final yahoofinance.Stock yfStock;
+  private final Symbol symbol;
+  private final BigDecimal price;
   private final LocalDate earliestDate;
-  private final java.util.List<HistoricalQuote> priceHistory;
+  private final PriceHistory history;
 
-  private Stock(yahoofinance.Stock stock, java.util.List<HistoricalQuote> priceHistory, LocalDate earliestDate) {
-    this.yfStock = stock;
-    this.priceHistory = priceHistory;
+  private static volatile Result<QuoteCache> quoteCache = Result.empty();
+  private static volatile PriceSource priceSource = YahooPriceSource.yahooPriceSource();
+  private static final ConcurrentHashMap<Symbol, Registered> registry = new ConcurrentHashMap<>();
+
+  private Stock(Symbol symbol, BigDecimal price, PriceHistory history, LocalDate earliestDate) {
+    this.symbol = symbol;
+    this.price = price;
+    this.history = history;
     this.earliestDate = earliestDate;
   }
 
-  private Stock(yahoofinance.Stock stock) {
-    this.yfStock = stock;
-    this.priceHistory = new ArrayList<>();
-    this.earliestDate = LocalDate.now();
+  private Stock(Tuple<Symbol, BigDecimal> quote) {
+    this(quote._1, quote._2, PriceHistory.empty(), LocalDate.now());
   }
 
   public Symbol getSymbol() {
-    return Symbol.symbol(yfStock.getSymbol(), yfStock.getName());
+    return symbol;
   }
 
   public LocalDate getEarliestHistoricalDate() {
@@ -48,7 +43,7 @@ public class Stock {
  }
 
   public BigDecimal getPrice() {
-    return yfStock.getQuote().getPrice().setScale(6, RoundingMode.HALF_UP);
+    return price;
   }
 
   /** If the price is outside the currently held historical data (which it probably will,
@@ -60,179 +55,236 @@ public class Stock {
     if (date.equals(LocalDate.now()))
       return Result.success(getPrice());
 
-    if (earliestDate.compareTo(date) <= -1) {
-      ZoneId tz = priceHistory.get(0).getDate().getTimeZone().toZoneId();
-      GregorianCalendar askDate = GregorianCalendar.from(date.atStartOfDay(tz));
-
-      java.util.List<HistoricalQuote> res = priceHistory.stream()
-          .filter(histQuote -> histQuote.getDate().compareTo(askDate) == 0)
-          .toList();
-      for (int i = 1; res.isEmpty(); ) {
-        GregorianCalendar earlierDate = GregorianCalendar.from(
-            date.minusDays(i * 7).atStartOfDay(tz));
-        res = priceHistory.stream()
-            .filter(histQuote -> histQuote.getDate().compareTo(askDate) <= 0
-                && histQuote.getDate().compareTo(earlierDate) >= 0).toList();
-      }
-
-      return Result.success(res.get(res.size() - 1)
-                               .getClose()
-                               .setScale(6, RoundingMode.HALF_UP));
-    }
-
-    try {
-      ZoneId utc = ZoneId.of("UTC");
-      // go back a few days, in case the asking date is a holiday
-      Calendar askDate = GregorianCalendar.from(date.minusDays(5).atStartOfDay(utc));
-      Calendar toDate = GregorianCalendar.from(date.plusDays(1).atStartOfDay(utc));
-
-      List<HistoricalQuote> price = yfStock.getHistory(askDate, toDate, Interval.DAILY);
+    if (earliestDate.compareTo(date) <= -1)
+      return history.closeOnOrBefore(date).failIfEmpty("No price available for date " + date);
 
-      // reset history of YahooFinance API stock, as yfStock.getHistory overwrites its internal
-      // price history
-      yfStock.setHistory(priceHistory);
-
-      if (price.isEmpty())
-        return Result.failure("No price available for date " + date);
-
-      return Result.success(price.get(price.size() -1).getClose());
-    } catch (IOException e) {
-      return Result.failure(e);
-    }
+    // go back a few days, in case the asking date is a holiday
+    return fetchHistory(symbol, date.minusDays(5), date)
+        .flatMap(prices -> prices.lastClose().failIfEmpty("No price available for date " + date));
   }
 
+  /** Same stock with the current price, and the history of this one merged with the one of the
+   * registered instance, which may go further back.
+   */
   public Result<Stock> updatePrice() {
-    try {
-      yfStock.getQuote(true);
-      return Result.success(new Stock(yfStock, priceHistory, earliestDate));
-    } catch (IOException e) {
-      return Result.failure(e);
-    }
+    return registered(symbol).update(existing -> priceSource.quote(symbol)
+        .map(quote -> existing == null
+            ? new Stock(quote._1, quote._2, history, earliestDate)
+            : new Stock(quote._1, quote._2, existing.history.merge(history),
+                existing.earliestDate.isBefore(earliestDate)
+                    ? existing.earliestDate
+                    : earliestDate)));
   }
 
   public Result<BigDecimal> historicalPrice(LocalDate date) {
     if (date.isBefore(earliestDate))
-      return Result.failure("No price saved for " + getSymbol()+ " on date " + date);
+      return quoteCache.flatMap(cache -> cache.cachedPrice(getSymbol(), date))
+                       .flatMapEmpty(() ->
+                           Result.failure("No price saved for " + getSymbol()+ " on date " + date));
 
-    // Default time zone, since yahoofinance also uses the local time zone for historical quotes
-    Calendar calDate = convertToCalendar(date, TimeZone.getDefault().toZoneId());
-    java.util.List<HistoricalQuote> res = priceHistory.stream()
-        .filter(quote -> quote.getDate().compareTo(calDate) <= 0)
-        .toList();
-    return Result.success(res.get(res.size() - 1)
-                             .getClose()
-                             .setScale(6, RoundingMode.HALF_UP));
+    return history.closeOnOrBefore(date)
+                  .failIfEmpty("No price saved for " + getSymbol() + " on date " + date);
   }
 
   public Result<Stock> fillHistoricalData(LocalDate from) {
     if (from.compareTo(earliestDate) >= 0)
       return Result.success(this);
 
-    return getHistory(yfStock, from, earliestDate).map(t -> {
-      priceHistory.addAll(t._1);
-      priceHistory.sort(Comparator.comparing(HistoricalQuote::getDate));
-      return new Stock(yfStock, priceHistory, t._2);
-    });
+    return getHistory(symbol, from, earliestDate).map(t ->
+        new Stock(symbol, price, history.merge(t._1), t._2));
   }
 
   @Override
   public String toString() {
-    return yfStock.toString();
+    return symbol + ": " + price;
   }
 
-  public static Result<Map<Symbol, Stock>> stocks(List<String> symbol) {
-    return getStock(symbol.toArray(new String[0]))
-        .map(m -> m.mapVal(Stock::new));
+  /** Historical prices are looked up inside the database of ds first, and the ones that have to be
+   * downloaded are stored there for later runs.
+   */
+  public static void useQuoteCache(DataSource ds) {
+    quoteCache = Result.success(QuoteCache.quoteCache(ds));
   }
 
-  public static Result<Stock> stock(String symbol) {
-    return getStock(symbol).map(Stock::new);
+  public static void disableQuoteCache() {
+    quoteCache = Result.empty();
   }
 
-  public static Result<Stock> stock(Symbol symbol, LocalDate from) {
-    return stock(symbol.toString(), from);
+  /** All prices of stocks created from now on come from source. Yahoo Finance by default. Stocks
+   * created with the previous source are forgotten.
+   */
+  public static void usePriceSource(PriceSource source) {
+    priceSource = source;
+    clearRegistry();
   }
 
-  public static Result<Stock> stock(String symbol, LocalDate from) {
-    return getStock(symbol).flatMap(stock -> getHistory(stock, from).map(history ->
-        new Stock(stock, history._1, history._2)));
-  }
-
-  private static Result<Map<Symbol, yahoofinance.Stock>> getStock(String[] symbols) {
-    if (symbols.length == 0)
-      return Result.empty();
-
-    try {
-      // includes only the stocks that could successfully be retrieved from Yahoo Finance
-      java.util.Map<String, yahoofinance.Stock> yfStocks = YahooFinance.get(symbols);
-
-      Set<String> reqSym = new HashSet<>(Arrays.asList(symbols));
-      reqSym.removeAll(yfStocks.keySet());
-      if (!reqSym.isEmpty())
-        return Result.failure("Couldn't get data on stock(s) " + reqSym);
-
-      Map<Symbol, yahoofinance.Stock> res = Map.empty();
-      yahoofinance.Stock tmpStock;
-      for (String symStr : symbols) {
-        if ( (tmpStock = yfStocks.get(symStr)) != null)
-          res = res.put(Symbol.symbol(symStr), tmpStock);
-        else
-          return Result.failure("Couldn't get data on stock " + symStr);
-      }
+  public static void useDefaultPriceSource() {
+    usePriceSource(YahooPriceSource.yahooPriceSource());
+  }
 
-      return Result.success(res);
-    } catch (IOException e) {
-      return Result.failure(e);
-    }
+  /** Forgets all stocks created so far, e.g. at the end of a command, so that the next one gets
+   * current prices again.
+   */
+  public static void clearRegistry() {
+    registry.clear();
   }
 
-  private static Result<yahoofinance.Stock> getStock(String symbol) {
-    try {
-      yahoofinance.Stock yfStock = YahooFinance.get(symbol);
-      if (yfStock == null)
-        return Result.failure("Couldn't find stock on Yahoo Finance");
+  public static PriceSource getPriceSource() {
+    return priceSource;
+  }
 
-      return Result.success(yfStock);
-    } catch (IOException e) {
-      return Result.failure(e);
-    }
+  /** Stocks are created once per symbol and kept in a registry shared by all threads, asking for
+   * a stock again returns the same instance (with its history extended if needed), so that it
+   * isn't fetched again.
+   */
+  public static Result<Map<Symbol, Stock>> stocks(java.util.List<String> symbols) {
+    List<Symbol> syms = List.of(symbols).map(Symbol::symbol);
+    List<Symbol> missing = syms.filter(symbol -> !registry.containsKey(symbol)
+        || registry.get(symbol).get() == null);
+    Result<Map<Symbol, Tuple<Symbol, BigDecimal>>> rQuotes = missing.isEmpty()
+        ? Result.success(Map.empty())
+        : priceSource.quotes(missing);
+
+    return rQuotes.flatMap(quotes -> Map.flattenResultVal(syms.foldLeft(
+        Map.<Symbol, Result<Stock>>empty(), m -> symbol -> m.put(symbol,
+            registered(symbol).update(existing -> existing != null
+                ? Result.success(existing)
+                : quotes.get(symbol)
+                        .failIfEmpty("Couldn't get data on stock " + symbol)
+                        .map(Stock::new))))))
+        .flatMap(m -> m.isEmpty() ? Result.empty() : Result.success(m));
   }
 
-  private static Result<Tuple<List<HistoricalQuote>, LocalDate>> getHistory(yahoofinance.Stock stock, LocalDate from) {
-    return getHistory(stock, from, LocalDate.now());
+  public static Result<Stock> stock(String symbol) {
+    Symbol sym = Symbol.symbol(symbol);
+    return registered(sym).update(existing -> existing != null
+        ? Result.success(existing)
+        : priceSource.quote(sym).map(Stock::new));
   }
-  private static Result<Tuple<List<HistoricalQuote>, LocalDate>> getHistory(yahoofinance.Stock stock, LocalDate from, LocalDate to) {
-    try {
-      Function<LocalDate, Calendar> toCalendar = d -> convertToCalendar(d, stock.getQuote().getTimeZone().toZoneId());
-      Calendar dateFrom = toCalendar.apply(from);
-      Calendar dateTo = toCalendar.apply(to);
 
-      List<HistoricalQuote> priceHistory = stock.getHistory(dateFrom, dateTo, Interval.DAILY);
+  public static Result<Stock> stock(Symbol symbol, LocalDate from) {
+    return registered(symbol).update(existing -> existing != null
+        ? existing.fillHistoricalData(from)
+        : priceSource.quote(symbol).flatMap(quote ->
+            getHistory(quote._1, from, LocalDate.now()).map(history ->
+                new Stock(quote._1, quote._2, history._1, history._2))));
+  }
 
-      Calendar firstDate = priceHistory.get(0).getDate();
-      Calendar actualFromDate = (Calendar) dateFrom.clone();
-      if (firstDate.compareTo(dateFrom) > 0) {
-        actualFromDate.add(Calendar.MONTH, -1);
-        Calendar adjustedToDate = (Calendar) dateFrom.clone();
-        adjustedToDate.add(Calendar.DAY_OF_MONTH, -1);
-        List<HistoricalQuote> earlierPriceHistory = stock.getHistory(actualFromDate, adjustedToDate,
-            Interval.DAILY);
-        priceHistory.addAll(earlierPriceHistory);
-        priceHistory.sort(Comparator.comparing(HistoricalQuote::getDate));
+  public static Result<Stock> stock(String symbol, LocalDate from) {
+    return stock(Symbol.symbol(symbol), from);
+  }
+
+  /** Closing prices of all the stocks between from and to, both inclusive, with a single batch
+   * request to the price source, unless they have to go through the quote cache.
+   */
+  public static Result<Map<Symbol, PriceHistory>> histories(List<Symbol> symbols, LocalDate from,
+      LocalDate to) {
+    PriceSource source = priceSource;
+    return quoteCache
+        .map(cache -> Map.flattenResultVal(symbols.foldLeft(
+            Map.<Symbol, Result<PriceHistory>>empty(), m -> symbol ->
+                m.put(symbol, cache.history(symbol, from, to, f -> t ->
+                    source.history(symbol, f, t)).map(PriceHistory::priceHistory)))))
+        .getOrElse(() -> source.priceHistories(symbols, from, to));
+  }
 
-        firstDate = priceHistory.get(0).getDate();
-        if (firstDate.compareTo(dateFrom) > 0)
-          return Result.failure("No price history as far back as " + from);
+  private static Registered registered(Symbol symbol) {
+    return registry.computeIfAbsent(symbol, ignored -> new Registered());
+  }
+
+  // Latest instance of a stock in the registry. Only one update of the same stock runs at a time,
+  // so that it's only fetched once, while different stocks can be fetched concurrently. Updates run
+  // without holding the monitor, since a request over the network may hang past any timeout: the
+  // others wait for the running one at most for the timeout of the fetch policy, then run their
+  // own. An update only replaces the instance it started from, otherwise it starts over.
+  private static final class Registered {
+    private Stock stock;
+    private CompletableFuture<Void> running;
+
+    synchronized Stock get() {
+      return stock;
+    }
+
+    Result<Stock> update(Function<Stock, Result<Stock>> f) {
+      while (true) {
+        CompletableFuture<Void> own = new CompletableFuture<>();
+        Stock current;
+        CompletableFuture<Void> other;
+        synchronized (this) {
+          current = stock;
+          other = running;
+          if (other == null)
+            running = own;
+        }
+
+        if (other != null) {
+          Result<Boolean> finished = await(other);
+          if (finished.isFailure())
+            return finished.flatMap(ignored -> Result.empty());
+          if (!finished.getOrElse(false))
+            synchronized (this) {
+              if (running == other)
+                running = null;
+            }
+          continue;
+        }
+
+        try {
+          Result<Stock> res = f.apply(current);
+          synchronized (this) {
+            if (stock != current)
+              continue;
+            res.forEach(updated -> stock = updated);
+          }
+          return res;
+        } finally {
+          synchronized (this) {
+            if (running == own)
+              running = null;
+          }
+          own.complete(null);
+        }
       }
+    }
 
-      LocalDate adjustedFrom = LocalDate.ofInstant(actualFromDate.toInstant(),
-          actualFromDate.getTimeZone().toZoneId());
-      return Result.success(new Tuple<>(priceHistory, adjustedFrom));
-    } catch (IOException e) {
-      return Result.failure(e);
+    // Whether the update finished within the timeout of the fetch policy
+    private static Result<Boolean> await(CompletableFuture<Void> update) {
+      try {
+        update.get(Parser.getFetchPolicy().getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        return Result.success(true);
+      } catch (TimeoutException e) {
+        return Result.success(false);
+      } catch (ExecutionException e) {
+        return Result.success(true);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return Result.failure(e);
+      }
     }
   }
-  private static Calendar convertToCalendar(LocalDate date, ZoneId timeZone) {
-    return GregorianCalendar.from(date.atStartOfDay(timeZone));
+
+  // History from `from` on, extended a month further back if there is no close on `from` itself
+  // (e.g. a weekend), so that there is a price for every day from `from` on
+  private static Result<Tuple<PriceHistory, LocalDate>> getHistory(Symbol symbol, LocalDate from,
+      LocalDate to) {
+    return fetchHistory(symbol, from, to).flatMap(prices -> {
+      if (prices.firstDate().map(first -> !first.isAfter(from)).getOrElse(false))
+        return Result.success(new Tuple<>(prices, from));
+
+      LocalDate actualFrom = from.minusMonths(1);
+      return fetchHistory(symbol, actualFrom, from.minusDays(1)).flatMap(earlierPrices ->
+          earlierPrices.isEmpty()
+              ? Result.failure("No price history as far back as " + from)
+              : Result.success(new Tuple<>(earlierPrices.merge(prices), actualFrom)));
+    });
+  }
+
+  // Without the quote cache straight from the source, which may hand out a view on its own columns
+  private static Result<PriceHistory> fetchHistory(Symbol symbol, LocalDate from, LocalDate to) {
+    PriceSource source = priceSource;
+    return quoteCache
+        .map(cache -> cache.history(symbol, from, to, f -> t -> source.history(symbol, f, t))
+                           .map(PriceHistory::priceHistory))
+        .getOrElse(() -> source.priceHistory(symbol, from, to));
   }
-}
\ No newline at end of file
+}
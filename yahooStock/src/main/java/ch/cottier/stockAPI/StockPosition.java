@@ -1,8 +1,8 @@
 package ch.cottier.stockAPI;
 
+import ch.cottier.functionalUtilities.Money;
 import ch.cottier.functionalUtilities.Result;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 
 public class StockPosition {
@@ -22,8 +22,18 @@ public class StockPosition {
     return stock.getSymbol();
   }
 
+  public int getNumShares() {
+    return nShares;
+  }
+
   public BigDecimal getValue() {
-    return stock.getPrice().multiply(BigDecimal.valueOf(nShares));
+    return Money.toBigDecimal(getValueMicros());
+  }
+
+  /** Current value in Money micro-units, for summing positions without a BigDecimal per step.
+   */
+  long getValueMicros() {
+    return Money.times(Money.micros(stock.getPrice()), nShares);
   }
 
   public StockPosition addShares(int num) {
@@ -31,9 +41,11 @@ public class StockPosition {
   }
 
   public Result<BigDecimal> getValueOn(LocalDate date) {
-    return stock.historicalPrice(date).map(price ->
-        price.setScale(6, RoundingMode.HALF_UP)
-             .multiply(BigDecimal.valueOf(nShares)));
+    return getValueMicrosOn(date).map(Money::toBigDecimal);
+  }
+
+  Result<Long> getValueMicrosOn(LocalDate date) {
+    return stock.historicalPrice(date).map(price -> Money.times(Money.micros(price), nShares));
   }
 
   public static StockPosition position(Stock stock, int nShares) {
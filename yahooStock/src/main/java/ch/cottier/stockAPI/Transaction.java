@@ -60,14 +60,28 @@ public class Transaction {
   // Two ways to go about it: do it inside the db, or inside the app logic...
   // I choose to do it in the app logic
   public static Map<Symbol, BigDecimal> weightedAvgPrice(final List<Transaction> l) {
-    return l.filter(tx -> tx.getNumShares() > 0)
-        .groupBy(Transaction::getSymbol)
-        .mapVal(lTxPerStock -> lTxPerStock
-            .foldLeft(new Tuple<>(BigDecimal.ZERO, 0), t -> tx -> {
-              BigDecimal cost = tx.getPrice().multiply(BigDecimal.valueOf(tx.getNumShares()));
-              return new Tuple<>(t._1.add(cost), t._2 + tx.getNumShares());
-            }))
-        .mapVal(t -> t._1.divide(BigDecimal.valueOf(t._2), RoundingMode.HALF_UP)
-                         .setScale(6, RoundingMode.HALF_UP));
+    return weightedAvgPrice(l.foldLeft(Map.empty(), totals -> tx -> addCost(totals, tx)));
   }
-}
\ No newline at end of file
+
+  /** Accumulator step of weightedAvgPrice: adds the cost and number of shares of a buy to the
+   * running totals of its stock, ignores sells. Allows folding over the transactions one at a time,
+   * e.g. straight from DataSource.foldTransactions().
+   */
+  public static Map<Symbol, Tuple<BigDecimal, Integer>> addCost(
+      Map<Symbol, Tuple<BigDecimal, Integer>> totals, Transaction tx) {
+    if (tx.getNumShares() <= 0)
+      return totals;
+
+    BigDecimal cost = tx.getPrice().multiply(BigDecimal.valueOf(tx.getNumShares()));
+    Tuple<BigDecimal, Integer> total = totals.get(tx.getSymbol())
+        .getOrElse(new Tuple<>(BigDecimal.ZERO, 0));
+    return totals.put(tx.getSymbol(),
+        new Tuple<>(total._1.add(cost), total._2 + tx.getNumShares()));
+  }
+
+  public static Map<Symbol, BigDecimal> weightedAvgPrice(
+      final Map<Symbol, Tuple<BigDecimal, Integer>> totals) {
+    return totals.mapVal(t -> t._1.divide(BigDecimal.valueOf(t._2), RoundingMode.HALF_UP)
+        .setScale(6, RoundingMode.HALF_UP));
+  }
+}
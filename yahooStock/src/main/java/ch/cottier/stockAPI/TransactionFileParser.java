@@ -0,0 +1,259 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.Result;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** Parses transaction files with one `date BUY|SELL SYMBOL shares price` per line (e.g.
+ * `2021-02-18 BUY VTI +10 40.11`) straight from the bytes of the file, read through a large
+ * buffer: dates, share counts and prices are decoded digit by digit, without regular expressions
+ * and without creating a String per field. Blank lines are skipped, any other line that doesn't
+ * match the format makes the whole file fail with its line number.
+ */
+final class TransactionFileParser {
+  static final int BUFFER_SIZE = 1 << 20;
+  private final String source;
+  private final ArrayList<Transaction> transactions = new ArrayList<>();
+  private final HashMap<String, String> symbols = new HashMap<>();
+  private byte[] lastDateBytes = new byte[10];
+  private LocalDate lastDate;
+  // set by the parse methods: position after the parsed field
+  private int pos;
+  // set by parseLines when it finds an invalid line
+  private int errorLine;
+  private String errorContent;
+
+  TransactionFileParser(String source) {
+    this.source = source;
+  }
+
+  static Result<java.util.List<Transaction>> parse(Path path) {
+    TransactionFileParser parser = new TransactionFileParser(path.toString());
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      byte[] bytes = buffer.array();
+      int lineNr = 1;
+      boolean eof = false;
+      while (!eof) {
+        eof = channel.read(buffer) < 0;
+        int end = buffer.position();
+        // only complete lines, unless it's the last one of the file
+        int limit = eof ? end : lastIndexOf(bytes, (byte) '\n', end) + 1;
+        if (limit == 0 && end == bytes.length)
+          return Result.failure("Line " + lineNr + " of " + path + " is longer than "
+              + BUFFER_SIZE + " bytes");
+
+        int lines = parser.parseLines(bytes, 0, limit);
+        if (lines < 0)
+          return Result.failure(parser.error(lineNr - 1));
+        lineNr += lines;
+
+        System.arraycopy(bytes, limit, bytes, 0, end - limit);
+        buffer.position(end - limit);
+      }
+      return Result.success(parser.transactions);
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  /** Parses the lines in bytes[from, to) and adds their transactions to the ones parsed so far.
+   * Returns the number of lines, or -1 if one of them is invalid, see error.
+   */
+  int parseLines(byte[] bytes, int from, int to) {
+    int lines = 0;
+    int start = from;
+    while (start < to) {
+      int end = indexOf(bytes, (byte) '\n', start, to);
+      int lineEnd = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+      lines++;
+      if (!parseLine(bytes, start, lineEnd)) {
+        errorLine = lines;
+        errorContent = new String(bytes, start, lineEnd - start, StandardCharsets.UTF_8).strip();
+        return -1;
+      }
+      start = end + 1;
+    }
+    return lines;
+  }
+
+  /** Message for the invalid line found by parseLines, with linesBefore being the number of
+   * lines of the file before the ones given to parseLines.
+   */
+  String error(long linesBefore) {
+    return "Expected `date BUY|SELL symbol shares price` on line " + (linesBefore + errorLine)
+        + " of " + source + ", got: " + errorContent;
+  }
+
+  java.util.List<Transaction> transactions() {
+    return transactions;
+  }
+
+  // False if the line isn't blank and not a valid transaction either
+  private boolean parseLine(byte[] b, int start, int end) {
+    int p = skipBlanks(b, start, end);
+    if (p == end)
+      return true;
+
+    LocalDate date = parseDate(b, p, end);
+    if (date == null)
+      return false;
+
+    int typeStart = skipBlanks(b, pos, end);
+    int typeEnd = tokenEnd(b, typeStart, end);
+    boolean buy = matchesIgnoreCase(b, typeStart, typeEnd, "BUY");
+    if (!buy && !matchesIgnoreCase(b, typeStart, typeEnd, "SELL"))
+      return false;
+
+    int symbolStart = skipBlanks(b, typeEnd, end);
+    int symbolEnd = tokenEnd(b, symbolStart, end);
+    if (symbolStart == symbolEnd)
+      return false;
+    String symbol = new String(b, symbolStart, symbolEnd - symbolStart, StandardCharsets.UTF_8);
+    String known = symbols.putIfAbsent(symbol, symbol);
+
+    long shares = parseInt(b, skipBlanks(b, symbolEnd, end), end);
+    if (shares == Long.MIN_VALUE || (buy ? shares <= 0 : shares >= 0))
+      return false;
+
+    BigDecimal price = parseDecimal(b, skipBlanks(b, pos, end), end);
+    if (price == null || skipBlanks(b, pos, end) != end)
+      return false;
+
+    transactions.add(Transaction.transaction(date, known == null ? symbol : known, (int) shares,
+        price));
+    return true;
+  }
+
+  // yyyy-MM-dd followed by a blank, null if it isn't a valid date
+  private LocalDate parseDate(byte[] b, int p, int end) {
+    if (p + 10 >= end || !isBlank(b[p + 10]) || b[p + 4] != '-' || b[p + 7] != '-')
+      return null;
+    pos = p + 10;
+    if (lastDate != null && java.util.Arrays.equals(b, p, p + 10, lastDateBytes, 0, 10))
+      return lastDate;
+
+    int year = digits(b, p, 4);
+    int month = digits(b, p + 5, 2);
+    int day = digits(b, p + 8, 2);
+    if (year < 0 || month < 0 || day < 0)
+      return null;
+    try {
+      lastDate = LocalDate.of(year, month, day);
+    } catch (DateTimeException e) {
+      return null;
+    }
+    System.arraycopy(b, p, lastDateBytes, 0, 10);
+    return lastDate;
+  }
+
+  // Optionally signed integer fitting in an int, Long.MIN_VALUE if there is none
+  private long parseInt(byte[] b, int p, int end) {
+    boolean negative = p < end && b[p] == '-';
+    if (p < end && (b[p] == '-' || b[p] == '+'))
+      p++;
+    int first = p;
+    long value = 0;
+    for (; p < end && isDigit(b[p]); p++) {
+      value = value * 10 + (b[p] - '0');
+      if (value > Integer.MAX_VALUE)
+        return Long.MIN_VALUE;
+    }
+    if (p == first || (p < end && !isBlank(b[p])))
+      return Long.MIN_VALUE;
+    pos = p;
+    return negative ? -value : value;
+  }
+
+  // Optionally signed decimal with optional fraction, null if there is none
+  private BigDecimal parseDecimal(byte[] b, int p, int end) {
+    int start = p;
+    boolean negative = p < end && b[p] == '-';
+    if (p < end && (b[p] == '-' || b[p] == '+'))
+      p++;
+    long unscaled = 0;
+    int digits = 0;
+    int scale = -1;
+    for (; p < end && !isBlank(b[p]); p++) {
+      if (b[p] == '.' && scale < 0) {
+        scale = 0;
+        continue;
+      }
+      if (!isDigit(b[p]))
+        return null;
+      unscaled = unscaled * 10 + (b[p] - '0');
+      digits++;
+      if (scale >= 0)
+        scale++;
+    }
+    if (digits == 0)
+      return null;
+    pos = p;
+    // beyond 18 digits the long could overflow
+    return digits > 18
+        ? new BigDecimal(new String(b, start, p - start, StandardCharsets.US_ASCII))
+        : BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+  }
+
+  private static int digits(byte[] b, int p, int n) {
+    int value = 0;
+    for (int i = p; i < p + n; i++) {
+      if (!isDigit(b[i]))
+        return -1;
+      value = value * 10 + (b[i] - '0');
+    }
+    return value;
+  }
+
+  private static boolean matchesIgnoreCase(byte[] b, int start, int end, String word) {
+    if (end - start != word.length())
+      return false;
+    for (int i = 0; i < word.length(); i++)
+      if ((b[start + i] & ~0x20) != word.charAt(i))
+        return false;
+    return true;
+  }
+
+  private static int skipBlanks(byte[] b, int p, int end) {
+    while (p < end && isBlank(b[p]))
+      p++;
+    return p;
+  }
+
+  private static int tokenEnd(byte[] b, int p, int end) {
+    while (p < end && !isBlank(b[p]))
+      p++;
+    return p;
+  }
+
+  private static boolean isBlank(byte c) {
+    return c == ' ' || c == '\t' || c == '\r';
+  }
+
+  private static boolean isDigit(byte c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int indexOf(byte[] b, byte c, int from, int to) {
+    for (int i = from; i < to; i++)
+      if (b[i] == c)
+        return i;
+    return to;
+  }
+
+  private static int lastIndexOf(byte[] b, byte c, int end) {
+    for (int i = end - 1; i >= 0; i--)
+      if (b[i] == c)
+        return i;
+    return -1;
+  }
+}
@@ -0,0 +1,138 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Money;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import ch.cottier.functionalUtilities.Vector;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** Value of a portfolio on every trading day of a period, computed by sweeping through the
+ * transactions and the (sorted) price histories of all stocks in lockstep. The value is carried
+ * along and only adjusted for the stocks whose close or number of shares changes on a day, so the
+ * whole series costs O(days + closes + transactions) instead of one valuation per day. Prices
+ * and the value are carried as Money micro-units, converted to BigDecimal once per day of output.
+ */
+final class ValueSeries {
+  private static final long NO_PRICE = PriceMatrix.NO_PRICE;
+  private final Symbol[] symbols;
+  private final PriceHistory[] histories;
+  private final int[] shares;
+  private final long[] lastClose; // NO_PRICE before the first close
+  private long value = Money.ZERO;
+
+  private ValueSeries(Symbol[] symbols, PriceHistory[] histories) {
+    this.symbols = symbols;
+    this.histories = histories;
+    this.shares = new int[symbols.length];
+    this.lastClose = new long[symbols.length];
+    java.util.Arrays.fill(lastClose, NO_PRICE);
+  }
+
+  /** A trading day is a day on which at least one of the stocks traded in lTx (sorted by date) has
+   * a close. The series starts on from or the date of the first transaction, whichever is later.
+   */
+  static Result<List<Tuple<LocalDate, BigDecimal>>> valueSeries(List<Transaction> lTx,
+      LocalDate from, LocalDate to) {
+    if (lTx.isEmpty())
+      return Result.empty();
+
+    LocalDate start = from.isBefore(lTx.head().getDate()) ? lTx.head().getDate() : from;
+    if (start.isAfter(to))
+      return Result.success(List.list());
+
+    java.util.Map<Symbol, Integer> columns = new HashMap<>();
+    lTx.forEach(tx -> columns.putIfAbsent(tx.getSymbol(), columns.size()));
+    Symbol[] symbols = new Symbol[columns.size()];
+    columns.forEach((symbol, col) -> symbols[col] = symbol);
+
+    // a month back, for the last close before start
+    LocalDate lookback = start.minusMonths(1);
+    return Stock.histories(List.of(symbols), lookback, to).flatMap(loaded -> {
+      PriceHistory[] histories = new PriceHistory[symbols.length];
+      for (int col = 0; col < symbols.length; col++)
+        histories[col] = loaded.get(symbols[col])
+                               .getOrElse(PriceHistory.empty())
+                               .range(lookback, to);
+      return new ValueSeries(symbols, histories).sweep(columns, lTx, start, to);
+    });
+  }
+
+  private Result<List<Tuple<LocalDate, BigDecimal>>> sweep(java.util.Map<Symbol, Integer> columns,
+      List<Transaction> lTx, LocalDate start, LocalDate to) {
+    // Next unseen close of every stock, ordered by date: [column, index into its history]
+    PriorityQueue<int[]> cursors = new PriorityQueue<>((c1, c2) ->
+        Integer.compare(epochDay(c1), epochDay(c2)));
+    for (int col = 0; col < symbols.length; col++)
+      if (!histories[col].isEmpty())
+        cursors.add(new int[] {col, 0});
+
+    // Before start only the number of shares and the last closes are needed
+    List<Transaction> rest = lTx;
+    for (; !rest.isEmpty() && rest.head().getDate().isBefore(start); rest = rest.tail())
+      shares[columns.get(rest.head().getSymbol())] += rest.head().getNumShares();
+    while (!cursors.isEmpty() && day(cursors.peek()).isBefore(start))
+      advance(cursors);
+    for (int col = 0; col < symbols.length; col++) {
+      if (shares[col] == 0)
+        continue;
+      if (lastClose[col] == NO_PRICE)
+        return Result.failure("No price saved for " + symbols[col] + " on date " + start);
+      value = Money.add(value, Money.times(lastClose[col], shares[col]));
+    }
+
+    Vector<Tuple<LocalDate, BigDecimal>> series = Vector.empty();
+    while (!cursors.isEmpty() || !rest.isEmpty()) {
+      LocalDate day = cursors.isEmpty() || (!rest.isEmpty()
+          && rest.head().getDate().isBefore(day(cursors.peek())))
+          ? rest.head().getDate()
+          : day(cursors.peek());
+      if (day.isAfter(to))
+        break;
+
+      boolean tradingDay = false;
+      while (!cursors.isEmpty() && day(cursors.peek()).equals(day)) {
+        int col = cursors.peek()[0];
+        long previous = lastClose[col];
+        advance(cursors);
+        if (shares[col] != 0)
+          value = Money.add(value,
+              Money.times(Money.subtract(lastClose[col], previous), shares[col]));
+        tradingDay = true;
+      }
+
+      for (; !rest.isEmpty() && rest.head().getDate().equals(day); rest = rest.tail()) {
+        Transaction tx = rest.head();
+        int col = columns.get(tx.getSymbol());
+        if (lastClose[col] == NO_PRICE)
+          return Result.failure("No price saved for " + tx.getSymbol() + " on date " + day);
+        value = Money.add(value, Money.times(lastClose[col], tx.getNumShares()));
+        shares[col] += tx.getNumShares();
+      }
+
+      if (tradingDay)
+        series = series.append(new Tuple<>(day, Money.toBigDecimal(value)));
+    }
+    return Result.success(series.toList());
+  }
+
+  private LocalDate day(int[] cursor) {
+    return histories[cursor[0]].dateAt(cursor[1]);
+  }
+
+  private int epochDay(int[] cursor) {
+    return histories[cursor[0]].epochDayAt(cursor[1]);
+  }
+
+  // Takes the next close off the queue and makes it the last close of its stock
+  private void advance(PriorityQueue<int[]> cursors) {
+    int[] cursor = cursors.poll();
+    int col = cursor[0];
+    lastClose[col] = histories[col].microsAt(cursor[1]);
+    if (cursor[1] + 1 < histories[col].size())
+      cursors.add(new int[] {col, cursor[1] + 1});
+  }
+}
@@ -0,0 +1,139 @@
+package ch.cottier.stockAPI;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Set;
+import yahoofinance.YahooFinance;
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+
+/** Prices downloaded from Yahoo Finance, every call is a request over the network.
+ */
+public final class YahooPriceSource implements PriceSource {
+  private static final YahooPriceSource INSTANCE = new YahooPriceSource();
+
+  private YahooPriceSource() {}
+
+  public static YahooPriceSource yahooPriceSource() {
+    return INSTANCE;
+  }
+
+  @Override
+  public Result<Tuple<Symbol, BigDecimal>> quote(Symbol symbol) {
+    try {
+      yahoofinance.Stock yfStock = YahooFinance.get(symbol.toString());
+      if (yfStock == null)
+        return Result.failure("Couldn't find stock on Yahoo Finance");
+
+      return toQuote(yfStock);
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  /** All quotes are fetched with a single request.
+   */
+  @Override
+  public Result<Map<Symbol, Tuple<Symbol, BigDecimal>>> quotes(List<Symbol> symbols) {
+    if (symbols.isEmpty())
+      return Result.empty();
+
+    String[] symStrs = symbols.map(Symbol::toString).toArray(new String[0]);
+    try {
+      // includes only the stocks that could successfully be retrieved from Yahoo Finance
+      java.util.Map<String, yahoofinance.Stock> yfStocks = YahooFinance.get(symStrs);
+
+      Set<String> reqSym = new HashSet<>(java.util.List.of(symStrs));
+      reqSym.removeAll(yfStocks.keySet());
+      if (!reqSym.isEmpty())
+        return Result.failure("Couldn't get data on stock(s) " + reqSym);
+
+      return Map.flattenResultVal(symbols.foldLeft(
+          Map.<Symbol, Result<Tuple<Symbol, BigDecimal>>>empty(), m -> symbol ->
+              m.put(symbol, toQuote(yfStocks.get(symbol.toString())))));
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  @Override
+  public Result<List<Tuple<LocalDate, BigDecimal>>> history(Symbol symbol, LocalDate from,
+      LocalDate to) {
+    try {
+      // Yahoo Finance doesn't need the quote of the stock for its history
+      yahoofinance.Stock yfStock = new yahoofinance.Stock(symbol.toString());
+      return Result.success(closes(yfStock.getHistory(requestFrom(from), requestTo(to),
+          Interval.DAILY), from, to));
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  /** All histories are fetched with a single call.
+   */
+  @Override
+  public Result<Map<Symbol, List<Tuple<LocalDate, BigDecimal>>>> histories(List<Symbol> symbols,
+      LocalDate from, LocalDate to) {
+    if (symbols.isEmpty())
+      return Result.success(Map.empty());
+
+    String[] symStrs = symbols.map(Symbol::toString).toArray(new String[0]);
+    try {
+      java.util.Map<String, yahoofinance.Stock> yfStocks =
+          YahooFinance.get(symStrs, requestFrom(from), requestTo(to), Interval.DAILY);
+
+      Map<Symbol, Result<List<Tuple<LocalDate, BigDecimal>>>> res = Map.empty();
+      for (Symbol symbol : symbols) {
+        yahoofinance.Stock yfStock = yfStocks.get(symbol.toString());
+        res = res.put(symbol, yfStock == null
+            ? Result.failure("Couldn't get data on stock " + symbol)
+            : Result.success(closes(yfStock.getHistory(), from, to)));
+      }
+      return Map.flattenResultVal(res);
+    } catch (IOException e) {
+      return Result.failure(e);
+    }
+  }
+
+  private static Result<Tuple<Symbol, BigDecimal>> toQuote(yahoofinance.Stock yfStock) {
+    return yfStock.getQuote() == null || yfStock.getQuote().getPrice() == null
+        ? Result.failure("No current price for stock " + yfStock.getSymbol())
+        : Result.success(new Tuple<>(Symbol.symbol(yfStock.getSymbol(), yfStock.getName()),
+            yfStock.getQuote().getPrice().setScale(6, RoundingMode.HALF_UP)));
+  }
+
+  // The requested range is widened by a day on each side and the quotes filtered on their calendar
+  // day afterwards, so that it doesn't matter in which time zone Yahoo Finance counts the days
+  private static Calendar requestFrom(LocalDate from) {
+    return GregorianCalendar.from(from.minusDays(1).atStartOfDay(ZoneId.systemDefault()));
+  }
+
+  private static Calendar requestTo(LocalDate to) {
+    return GregorianCalendar.from(to.plusDays(2).atStartOfDay(ZoneId.systemDefault()));
+  }
+
+  private static List<Tuple<LocalDate, BigDecimal>> closes(java.util.List<HistoricalQuote> quotes,
+      LocalDate from, LocalDate to) {
+    return List.of(quotes.stream()
+        .filter(quote -> quote.getClose() != null)
+        .map(quote -> new Tuple<>(toLocalDate(quote.getDate()),
+            quote.getClose().setScale(6, RoundingMode.HALF_UP)))
+        .filter(quote -> !quote._1.isBefore(from) && !quote._1.isAfter(to))
+        .sorted(java.util.Comparator.comparing(quote -> quote._1))
+        .toList());
+  }
+
+  private static LocalDate toLocalDate(Calendar date) {
+    return LocalDate.ofInstant(date.toInstant(), date.getTimeZone().toZoneId());
+  }
+}
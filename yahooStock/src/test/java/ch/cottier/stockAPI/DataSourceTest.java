@@ -175,4 +175,86 @@ class DataSourceTest {
     LocalDate expDate = LocalDate.parse("2021-12-12");
     assertSuccess(res).forEach(date -> assertEquals(expDate, date));
   }
-}
\ No newline at end of file
+
+  @Test
+  void ingestTransactions() {
+    Result<List<Transaction>> listTx = readTx(path);
+    Result<Tuple<Ingestion, DataSource>> res = DataSource.openInMemory()
+        .flatMap(ds -> listTx.flatMap(l -> ds.ingestTransactions(l, 3)));
+    assertSuccess(res);
+    listTx.forEach(l -> res.forEach(t -> assertEquals(l.size(), t._1.getNumTransactions())));
+
+    Result<List<Transaction>> resListTx = res.map(Tuple::_2)
+        .flatMap(DataSource::getTransactions)
+        .map(Tuple::_1);
+    assertEquals(listTx, resListTx);
+    assertSuccess(res.map(Tuple::_2).flatMap(DataSource::close));
+  }
+
+  @Test
+  void ingestTransactionsRollback() {
+    // price doesn't fit into NUMERIC(20,3), after the first batch has already been sent
+    List<Transaction> lTx = List.of(
+        Transaction.transaction(date, symbol, nShares, price),
+        Transaction.transaction(date, symbol, nShares, price),
+        Transaction.transaction(date, symbol, nShares, new BigDecimal("1e18")));
+    Result<DataSource> rDS = DataSource.openInMemory();
+    assertFailure(rDS.flatMap(ds -> ds.ingestTransactions(lTx, 2)));
+
+    Result<List<Transaction>> res = rDS.flatMap(DataSource::getTransactions).map(Tuple::_1);
+    assertSuccess(res).forEach(l -> assertTrue(l.isEmpty()));
+
+    assertFailure(rDS.flatMap(ds -> ds.ingestTransactions(lTx, 0)));
+    assertSuccess(rDS.flatMap(DataSource::close));
+  }
+
+  @Test
+  void getFilteredTransactions() {
+    Result<DataSource> rDS = DataSource.openInMemory()
+        .flatMap(ds -> readTx(path).flatMap(ds::insertTransactions));
+
+    Result<List<Transaction>> res = rDS.flatMap(ds -> ds.getTransactions(
+            List.of(Symbol.symbol("VTI")), Result.empty(), Result.empty()))
+        .map(Tuple::_1);
+    assertSuccess(res).forEach(l -> assertEquals(6, l.size()));
+
+    res = rDS.flatMap(ds -> ds.getTransactions(
+            List.of(Symbol.symbol("VTI"), Symbol.symbol("AVUV")),
+            Result.success(LocalDate.parse("2021-09-08")),
+            Result.success(LocalDate.parse("2021-11-29"))))
+        .map(Tuple::_1);
+    List<Transaction> expTx = List.of(
+        Transaction.transaction(LocalDate.parse("2021-09-08"), "AVUV", -200, new BigDecimal("30.00")),
+        Transaction.transaction(LocalDate.parse("2021-09-11"), "AVUV", 1400, new BigDecimal("40.00")),
+        Transaction.transaction(LocalDate.parse("2021-10-12"), "VTI", 100, new BigDecimal("90.00")),
+        Transaction.transaction(LocalDate.parse("2021-11-29"), "AVUV", -1500, new BigDecimal("40.00")));
+    assertEquals(Result.success(expTx), res);
+
+    res = rDS.flatMap(ds -> ds.getTransactions(List.list(), Result.empty(),
+            Result.success(LocalDate.parse("2021-04-09"))))
+        .map(Tuple::_1);
+    assertSuccess(res).forEach(l -> assertEquals(2, l.size()));
+    assertSuccess(rDS.flatMap(DataSource::close));
+  }
+
+  @Test
+  void foldTransactions() {
+    Result<DataSource> rDS = DataSource.openInMemory()
+        .flatMap(ds -> readTx(path).flatMap(ds::insertTransactions));
+
+    // fetch size smaller than the number of rows, result must not depend on it
+    Result<List<Transaction>> res = rDS.flatMap(ds -> ds.foldTransactions(List.list(),
+            Result.empty(), Result.empty(), 2, List.<Transaction>list(), l -> l::prepend))
+        .map(List::reverse);
+    Result<List<Transaction>> expTx = rDS.flatMap(DataSource::getTransactions).map(Tuple::_1);
+    assertEquals(assertSuccess(expTx), res);
+
+    Result<Integer> numShares = rDS.flatMap(ds -> ds.foldTransactions(
+        List.of(Symbol.symbol("VTI")), Result.empty(), Result.empty(),
+        DataSource.DEFAULT_FETCH_SIZE, 0, acc -> tx -> acc + tx.getNumShares()));
+    Result<Integer> expShares = expTx.map(l -> l.filter(tx -> tx.getSymbol().equals(Symbol.symbol("VTI")))
+        .foldLeft(0, acc -> tx -> acc + tx.getNumShares()));
+    assertEquals(expShares, numShares);
+    assertSuccess(rDS.flatMap(DataSource::close));
+  }
+}
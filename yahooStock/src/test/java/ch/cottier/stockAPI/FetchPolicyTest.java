@@ -0,0 +1,73 @@
+package ch.cottier.stockAPI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class FetchPolicyTest {
+
+  static Map<Integer, Integer> keys(int n) {
+    Map<Integer, Integer> m = Map.empty();
+    for (int i = 0; i < n; i++)
+      m = m.put(i, i);
+    return m;
+  }
+
+  static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void fetchAllRespectsConcurrencyLimit() {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    FetchPolicy policy = FetchPolicy.fetchPolicy(3, Duration.ofSeconds(10));
+
+    Map<Integer, Result<Integer>> res = policy.fetchAll(keys(12), i -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      sleep(20);
+      running.decrementAndGet();
+      return Result.success(2 * i);
+    });
+
+    assertEquals(12, res.size());
+    assertEquals(Result.success(keys(12).mapVal(i -> 2 * i)), Map.flattenResultVal(res));
+    assertTrue(maxRunning.get() <= 3, "max concurrent: " + maxRunning.get());
+    assertTrue(maxRunning.get() > 1, "max concurrent: " + maxRunning.get());
+  }
+
+  @Test
+  void fetchAllTimeoutsAndExceptions() {
+    FetchPolicy policy = FetchPolicy.fetchPolicy(4, Duration.ofMillis(50));
+    Map<Integer, Result<Integer>> res = policy.fetchAll(keys(3), i -> {
+      if (i == 1)
+        sleep(2_000);
+      if (i == 2)
+        throw new IllegalStateException("boom");
+      return Result.success(i);
+    });
+
+    assertEquals(Result.success(0), res.get(0).flatMap(r -> r));
+    assertTrue(res.get(1).flatMap(r -> r).isFailure());
+    assertTrue(res.get(2).flatMap(r -> r).isFailure());
+    assertTrue(Map.flattenResultVal(res).isFailure());
+  }
+
+  @Test
+  void invalidPolicy() {
+    assertThrows(IllegalArgumentException.class,
+        () -> FetchPolicy.fetchPolicy(0, Duration.ofSeconds(1)));
+    assertThrows(IllegalArgumentException.class,
+        () -> FetchPolicy.fetchPolicy(1, Duration.ZERO));
+  }
+}
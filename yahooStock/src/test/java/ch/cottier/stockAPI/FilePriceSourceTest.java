@@ -0,0 +1,81 @@
+package ch.cottier.stockAPI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class FilePriceSourceTest {
+  String path = "src/test/resources/prices.csv";
+  Symbol aaa = Symbol.symbol("AAA");
+
+  static <T> Result<T> assertSuccess(Result<T> r) {
+    assertTrue(r.isSuccess(), r.toString());
+    return r;
+  }
+
+  @AfterEach
+  void resetPriceSource() {
+    Stock.useDefaultPriceSource();
+  }
+
+  @Test
+  void quoteAndHistory() {
+    FilePriceSource source = assertSuccess(FilePriceSource.priceSource(path)).getOrThrow();
+
+    assertEquals(Result.success(new Tuple<>(aaa, new BigDecimal("110.000000"))),
+        source.quote(aaa));
+    assertEquals(Result.success(List.of(
+            new Tuple<>(LocalDate.parse("2022-01-05"), new BigDecimal("102.000000")),
+            new Tuple<>(LocalDate.parse("2022-01-07"), new BigDecimal("104.000000")))),
+        source.history(aaa, LocalDate.parse("2022-01-05"), LocalDate.parse("2022-01-09")));
+    assertEquals(Result.success(6),
+        source.history(aaa, LocalDate.parse("2000-01-01"), LocalDate.parse("2030-01-01"))
+              .map(List::size));
+    assertEquals(Result.success(2),
+        source.histories(List.of(aaa, Symbol.symbol("BBB")), LocalDate.parse("2022-01-01"),
+            LocalDate.parse("2022-01-31")).map(m -> m.size()));
+
+    assertTrue(source.quote(Symbol.symbol("CCC")).isFailure());
+    assertTrue(source.quotes(List.of(aaa, Symbol.symbol("CCC"))).isFailure());
+  }
+
+  @Test
+  void invalidFile() {
+    Result<FilePriceSource> source = FilePriceSource.priceSource("src/test/resources/prices_error.csv");
+    assertTrue(source.isFailure());
+    source.forEachOrFail(ignored -> {}).forEach(err -> assertTrue(err.contains("line 3"), err));
+    assertTrue(FilePriceSource.priceSource("src/test/resources/missing.csv").isFailure());
+  }
+
+  @Test
+  void stocksFromFile() {
+    Stock.usePriceSource(assertSuccess(FilePriceSource.priceSource(path)).getOrThrow());
+
+    // Saturday, so the history has to reach back to the Friday before
+    Stock stock = assertSuccess(Stock.stock("AAA", LocalDate.parse("2022-01-08"))).getOrThrow();
+    assertEquals(new BigDecimal("110.000000"), stock.getPrice());
+    assertEquals(Result.success(new BigDecimal("104.000000")),
+        stock.historicalPrice(LocalDate.parse("2022-01-09")));
+    assertEquals(Result.success(new BigDecimal("101.000000")),
+        stock.getPriceOn(LocalDate.parse("2022-01-04")));
+
+    Stock filled = assertSuccess(stock.fillHistoricalData(LocalDate.parse("2022-01-01")))
+        .getOrThrow();
+    assertEquals(Result.success(new BigDecimal("99.000000")),
+        filled.historicalPrice(LocalDate.parse("2022-01-02")));
+
+    Transaction tx1 = Transaction.transaction(LocalDate.parse("2022-01-03"), "AAA", 10,
+        new BigDecimal("100"));
+    Transaction tx2 = Transaction.transaction(LocalDate.parse("2022-01-03"), "BBB", 2,
+        new BigDecimal("50"));
+    assertEquals(Result.success(new BigDecimal("1121.000000")),
+        Portfolio.valueOn(List.of(tx1, tx2), LocalDate.parse("2022-01-05")));
+  }
+}
@@ -0,0 +1,50 @@
+package ch.cottier.stockAPI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class GrowthChainTest {
+
+  // Daily growth factors with 6 decimals, like the ones of Holdings.rateOfReturn
+  static BigDecimal randomFactor(Random rnd) {
+    return BigDecimal.valueOf(1_000_000 + rnd.nextInt(40_001) - 20_000, 6);
+  }
+
+  @Test
+  void rateLikeExactProduct() {
+    Random rnd = new Random(42);
+    for (int run = 0; run < 100; run++) {
+      BigDecimal exact = BigDecimal.ONE;
+      GrowthChain chain = GrowthChain.growthChain();
+      // a decade of trading days
+      for (int i = 0; i < 2_520; i++) {
+        BigDecimal factor = randomFactor(rnd);
+        exact = exact.multiply(factor);
+        chain = chain.times(factor);
+      }
+      assertTrue(exact.precision() > 10_000);
+      assertTrue(chain.product().precision() <= 34);
+      assertEquals(exact.subtract(BigDecimal.ONE).setScale(6, RoundingMode.HALF_UP), chain.rate());
+    }
+  }
+
+  @Test
+  void precision() {
+    GrowthChain chain = GrowthChain.growthChain(new MathContext(5, RoundingMode.HALF_EVEN))
+        .times(new BigDecimal("1.234567"))
+        .times(new BigDecimal("1.1"));
+    assertEquals(new BigDecimal("1.3581"), chain.product());
+    assertEquals(new BigDecimal("0.358100"), chain.rate());
+
+    assertEquals(new BigDecimal("0.000000"), GrowthChain.growthChain().rate());
+    assertThrows(IllegalArgumentException.class,
+        () -> GrowthChain.growthChain(MathContext.UNLIMITED));
+  }
+}
@@ -0,0 +1,78 @@
+package ch.cottier.stockAPI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Map;
+import ch.cottier.functionalUtilities.Result;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedPriceStoreTest {
+  String csv = "src/test/resources/prices.csv";
+  Symbol aaa = Symbol.symbol("AAA");
+
+  @TempDir
+  Path dir;
+
+  @AfterEach
+  void resetPriceSource() {
+    Stock.useDefaultPriceSource();
+  }
+
+  @Test
+  void writeAndRead() {
+    FilePriceSource fromCsv = FilePriceSource.priceSource(csv).getOrThrow();
+    Path store = dir.resolve("prices.aps");
+    assertEquals(Result.success(2), MappedPriceStore.write(store, fromCsv.getHistories()));
+    assertTrue(MappedPriceStore.isPriceStore(store));
+    assertFalse(MappedPriceStore.isPriceStore(Path.of(csv)));
+
+    Map<Symbol, PriceHistory> histories = MappedPriceStore.read(store).getOrThrow();
+    LocalDate from = LocalDate.parse("2000-01-01");
+    LocalDate to = LocalDate.parse("2030-01-01");
+    for (Symbol symbol : List.of(aaa, Symbol.symbol("BBB")))
+      assertEquals(fromCsv.getHistories().get(symbol).getOrThrow().closes(from, to),
+          histories.get(symbol).getOrThrow().closes(from, to));
+
+    // the binary file works wherever a price file does
+    FilePriceSource mapped = FilePriceSource.priceSource(store.toString()).getOrThrow();
+    assertEquals(fromCsv.quote(aaa), mapped.quote(aaa));
+    Stock.usePriceSource(mapped);
+    Stock stock = Stock.stock("AAA", LocalDate.parse("2022-01-08")).getOrThrow();
+    assertEquals(Result.success(new BigDecimal("104.000000")),
+        stock.historicalPrice(LocalDate.parse("2022-01-09")));
+  }
+
+  @Test
+  void emptyStore() {
+    Path store = dir.resolve("empty.aps");
+    assertEquals(Result.success(0), MappedPriceStore.write(store, Map.empty()));
+    assertTrue(MappedPriceStore.read(store).getOrThrow().isEmpty());
+  }
+
+  @Test
+  void corruptStore() throws IOException {
+    Path store = dir.resolve("prices.aps");
+    MappedPriceStore.write(store, FilePriceSource.priceSource(csv).getOrThrow().getHistories());
+    byte[] bytes = Files.readAllBytes(store);
+
+    Path truncated = dir.resolve("truncated.aps");
+    Files.write(truncated, java.util.Arrays.copyOf(bytes, 12));
+    assertTrue(MappedPriceStore.read(truncated).isFailure());
+
+    Path shortColumns = dir.resolve("short.aps");
+    Files.write(shortColumns, java.util.Arrays.copyOf(bytes, bytes.length - 8));
+    assertTrue(MappedPriceStore.read(shortColumns).isFailure());
+
+    assertTrue(MappedPriceStore.read(Path.of(csv)).isFailure());
+  }
+}
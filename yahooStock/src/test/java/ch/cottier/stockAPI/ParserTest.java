@@ -7,12 +7,19 @@ import ch.cottier.functionalUtilities.FileReader;
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Map;
 import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Stream;
 import ch.cottier.functionalUtilities.Tuple;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.Comparator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ParserTest {
   String path = "src/test/resources/testdata.txt";
@@ -135,4 +142,151 @@ class ParserTest {
     Result<Map<Symbol, Integer>> res = listTx.flatMap(l -> l.fpStream().foldLeft(stocks, Parser::checkForNegativeStock));
     assertFailure(res);
   }
-}
\ No newline at end of file
+
+  @Test
+  void parseTransactionFileLikeFileReader(@TempDir Path dir) throws IOException {
+    for (String p : List.of(path, pathAdditional, pathAdditionalStocksError)) {
+      Result<FileReader> fR = FileReader.read(p);
+      Result<List<Transaction>> expected = fR.flatMap(Parser::parseTransactions).map(Tuple::_1);
+      assertSuccess(fR.flatMap(FileReader::close));
+      assertEquals(expected, Parser.parseTransactionFile(new File(p)));
+    }
+
+    Path file = dir.resolve("tx.txt");
+    Files.writeString(file, "\n2021-02-18\tbuy  VTI 10 40.11 \r\n   \r\n"
+        + "2021-02-19 Sell VTI -2 -0.1234567\n2021-02-19 BUY VXUS +1 7");
+    assertEquals(Result.success(List.of(
+            Transaction.transaction(date, symbol, nShares, price),
+            Transaction.transaction(LocalDate.parse("2021-02-19"), "VTI", -2,
+                new BigDecimal("-0.123457")),
+            Transaction.transaction(LocalDate.parse("2021-02-19"), "VXUS", 1, new BigDecimal("7")))),
+        Parser.parseTransactionFile(file.toFile()));
+
+    Files.writeString(file, "");
+    assertEquals(Result.success(List.list()), Parser.parseTransactionFile(file.toFile()));
+  }
+
+  @Test
+  void parseTransactionsLargeFile(@TempDir Path dir) throws IOException {
+    File file = dir.resolve("large.txt").toFile();
+    int n = 50_000;
+    try (PrintWriter w = new PrintWriter(file)) {
+      for (int i = 0; i < n; i++)
+        w.printf("%s BUY SYM%d +%d %d.%02d%n", date.plusDays(i % 1000), i % 7, i + 1, i, i % 100);
+    }
+
+    Result<FileReader> fR = FileReader.read(file);
+    Result<List<Transaction>> txs = fR.flatMap(Parser::parseTransactions).map(Tuple::_1);
+    assertSuccess(fR.flatMap(FileReader::close));
+    assertEquals(Result.success(n), txs.map(List::size));
+    assertEquals(Parser.parseTransactionFile(file), txs);
+  }
+
+  @Test
+  void streamTransactions() {
+    Result<FileReader> fR = FileReader.read(path);
+    Result<List<Transaction>> expected = fR.flatMap(Parser::parseTransactions).map(Tuple::_1);
+    assertSuccess(fR.flatMap(FileReader::close));
+
+    fR = FileReader.read(path);
+    Result<List<Transaction>> streamed = fR.map(Parser::streamTransactions)
+        .flatMap(Stream::flattenResult)
+        .map(Stream::toList);
+    assertSuccess(fR.flatMap(FileReader::close));
+    assertEquals(expected, streamed);
+  }
+
+  @Test
+  void parseTransactionFileErrors(@TempDir Path dir) throws IOException {
+    assertLineError(new File(pathErrorFile), 1);
+
+    Path file = dir.resolve("tx.txt");
+    String valid = "2021-02-18 BUY VTI +10 40.11\n";
+    for (String line : List.of("2021-02-30 BUY VTI 1 1", "2021-2-18 BUY VTI 1 1",
+        "2021-02-18 BUY VTI 1", "2021-02-18 HOLD VTI 1 1", "2021-02-18 BUY VTI 1.5 1",
+        "2021-02-18 BUY VTI 1 1.2.3", "2021-02-18 BUY VTI 1 1 extra",
+        "2021-02-18 BUY VTI 99999999999 1", "2021-02-18 SELL VTI 1 1")) {
+      Files.writeString(file, valid + "\n" + valid + line + "\n" + valid);
+      assertLineError(file.toFile(), 4);
+    }
+
+    assertFailure(Parser.parseTransactionFile(dir.resolve("missing.txt").toFile()));
+  }
+
+  @Test
+  void parseTransactionFileAcrossBuffers(@TempDir Path dir) throws IOException {
+    // several times the size of the read buffer, so lines are split between reads
+    File file = dir.resolve("large.txt").toFile();
+    int n = 3 * TransactionFileParser.BUFFER_SIZE / 30;
+    try (PrintWriter w = new PrintWriter(file)) {
+      for (int i = 0; i < n; i++)
+        w.printf("%s BUY SYM%d +%d %d.%02d%n", date.plusDays(i % 1000), i % 7, i + 1, i, i % 100);
+    }
+
+    List<Transaction> txs = assertSuccess(Parser.parseTransactionFile(file)).getOrThrow();
+    assertEquals(n, txs.size());
+    int i = 0;
+    for (Transaction tx : txs) {
+      assertEquals(Transaction.transaction(date.plusDays(i % 1000), "SYM" + (i % 7), i + 1,
+          new BigDecimal(i + "." + String.format("%02d", i % 100))), tx);
+      i++;
+    }
+  }
+
+  void assertLineError(File file, int lineNr) {
+    assertFailure(Parser.parseTransactionFile(file))
+        .forEachOrFail(ignored -> {})
+        .forEach(err -> assertTrue(err.contains("line " + lineNr + " "), err));
+  }
+
+  @Test
+  void parseSortedTransactionFileLikeSequential(@TempDir Path dir) throws IOException {
+    // ascending, descending and all on one day, with days spanning chunk seams
+    java.util.List<String> lines = new java.util.ArrayList<>();
+    for (int i = 0; i < 200; i++)
+      lines.add(date.plusDays(i / 7) + " BUY SYM" + (i % 5) + " +" + (i + 1) + " " + i + ".5");
+    java.util.List<String> descending = new java.util.ArrayList<>(lines);
+    java.util.Collections.reverse(descending);
+    java.util.List<String> oneDay = lines.stream().map(l -> date + l.substring(10)).toList();
+
+    for (java.util.List<String> content : java.util.List.of(lines, descending, oneDay)) {
+      File file = dir.resolve("tx.txt").toFile();
+      Files.write(file.toPath(), content);
+      Result<List<Transaction>> expected = Parser.parseTransactionFile(file)
+          .map(l -> l.sortFP(Comparator.comparing(Transaction::getDate)));
+      for (long chunkSize : new long[] {1, 37, 500, 1 << 20})
+        assertEquals(expected, Parser.parseSortedTransactionFile(file, 4, chunkSize));
+    }
+
+    File empty = dir.resolve("empty.txt").toFile();
+    Files.writeString(empty.toPath(), "\n\n");
+    assertEquals(Result.success(List.list()), Parser.parseSortedTransactionFile(empty, 4, 1));
+  }
+
+  @Test
+  void parseSortedTransactionFileErrors(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("tx.txt");
+    java.util.List<String> lines = new java.util.ArrayList<>();
+    for (int i = 0; i < 100; i++)
+      lines.add(date.plusDays(i) + " BUY VTI +1 1");
+
+    // line numbers count the lines of all chunks before
+    java.util.List<String> invalid = new java.util.ArrayList<>(lines);
+    invalid.add(60, "");
+    invalid.set(80, "invalid");
+    Files.write(file, invalid);
+    assertFailure(Parser.parseSortedTransactionFile(file.toFile(), 4, 100))
+        .forEachOrFail(ignored -> {})
+        .forEach(err -> assertTrue(err.contains("line 81 "), err));
+
+    // out of order inside a chunk and at a seam, counted in transactions before the wrong one
+    for (int wrong : new int[] {3, 50, 99}) {
+      java.util.List<String> unordered = new java.util.ArrayList<>(lines);
+      unordered.set(wrong, lines.get(0));
+      Files.write(file, unordered);
+      for (long chunkSize : new long[] {1, 100, 1 << 20})
+        assertEquals(Result.failure("Wrong date after line " + wrong),
+            Parser.parseSortedTransactionFile(file.toFile(), 4, chunkSize));
+    }
+  }
+}
@@ -6,9 +6,15 @@ import ch.cottier.functionalUtilities.FileReader;
 import ch.cottier.functionalUtilities.List;
 import ch.cottier.functionalUtilities.Result;
 import ch.cottier.functionalUtilities.Tuple;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class PortfolioTest {
   String path = "src/test/resources/testdata.txt";
@@ -93,4 +99,177 @@ class PortfolioTest {
     assertSuccess(netValue);
     System.out.println(netValue);
   }
-}
\ No newline at end of file
+
+  static Transaction tx(String date, String symbol, int numShares, String price) {
+    return Transaction.transaction(LocalDate.parse(date), symbol, numShares, new BigDecimal(price));
+  }
+
+  @Test
+  void TWRRfromPriceFile() {
+    Stock.usePriceSource(FilePriceSource.priceSource("src/test/resources/prices.csv").getOrThrow());
+    try {
+      LocalDate from = LocalDate.parse("2022-01-03");
+      Result<Portfolio> initPortfolio =
+          Portfolio.portfolio(List.of(tx("2022-01-03", "AAA", 10, "100")), from);
+      List<Transaction> lTx = List.of(
+          tx("2022-01-05", "BBB", 2, "51"),
+          tx("2022-01-07", "AAA", -5, "105"));
+
+      // 1.020000 * 1.017841 * 1.062802 - 1
+      assertEquals(Result.success(new BigDecimal("0.103399")), initPortfolio.flatMap(pf ->
+          Portfolio.TWRR(pf, lTx, from, LocalDate.parse("2022-01-10"))));
+      assertTrue(initPortfolio.flatMap(pf ->
+          Portfolio.TWRR(pf, List.list(), from, LocalDate.parse("2022-01-10"))).isEmpty());
+    } finally {
+      Stock.useDefaultPriceSource();
+    }
+  }
+
+  @Test
+  void growthFactorsFromPriceFile() {
+    Stock.usePriceSource(FilePriceSource.priceSource("src/test/resources/prices.csv").getOrThrow());
+    try {
+      List<Transaction> lTx = List.of(
+          tx("2022-01-03", "AAA", 10, "99"),
+          tx("2022-01-05", "BBB", 2, "51"),
+          tx("2022-01-07", "AAA", -5, "105"));
+
+      // (value + premium when buying at the start) / (value + premium when selling at the end)
+      assertEquals(Result.success(List.of(new BigDecimal("1.030303"), new BigDecimal("1.012478"),
+              new BigDecimal("1.062802"))),
+          Portfolio.growthFactors(lTx, LocalDate.parse("2022-01-10")));
+      assertTrue(Portfolio.growthFactors(lTx.append(tx("2022-01-07", "CCC", 1, "1")),
+          LocalDate.parse("2022-01-10")).isFailure());
+    } finally {
+      Stock.useDefaultPriceSource();
+    }
+  }
+
+  @Test
+  void valuesOnFromPriceFile() {
+    Stock.usePriceSource(FilePriceSource.priceSource("src/test/resources/prices.csv").getOrThrow());
+    try {
+      List<Transaction> lTx = List.of(
+          tx("2022-01-03", "AAA", 10, "99"),
+          tx("2022-01-05", "BBB", 2, "51"),
+          tx("2022-01-07", "AAA", -5, "105"));
+
+      // 2022-01-02 is before the first transaction, 2022-01-08 a Saturday
+      assertEquals(Result.success(List.of(
+              new Tuple<>(LocalDate.parse("2022-01-03"), new BigDecimal("1000.000000")),
+              new Tuple<>(LocalDate.parse("2022-01-05"), new BigDecimal("1121.000000")),
+              new Tuple<>(LocalDate.parse("2022-01-08"), new BigDecimal("621.000000")),
+              new Tuple<>(LocalDate.parse("2022-01-10"), new BigDecimal("660.000000")))),
+          Portfolio.valuesOn(lTx, List.of("2022-01-10", "2022-01-02", "2022-01-03", "2022-01-05",
+              "2022-01-08", "2022-01-05").map(LocalDate::parse)));
+      assertTrue(Portfolio.valuesOn(List.list(), List.of(LocalDate.parse("2022-01-03")))
+          .isEmpty());
+    } finally {
+      Stock.useDefaultPriceSource();
+    }
+  }
+
+  @Test
+  void valueSeriesFromPriceFile() {
+    Stock.usePriceSource(FilePriceSource.priceSource("src/test/resources/prices.csv").getOrThrow());
+    try {
+      List<Transaction> lTx = List.of(
+          tx("2022-01-03", "AAA", 10, "99"),
+          tx("2022-01-05", "BBB", 2, "51"),
+          tx("2022-01-07", "AAA", -5, "105"));
+
+      // one entry per day on which AAA or BBB has a close, the same as valuing each day on its own
+      Result<List<Tuple<LocalDate, BigDecimal>>> series =
+          Portfolio.valueSeries(lTx, LocalDate.parse("2021-12-01"), LocalDate.parse("2022-01-31"));
+      assertEquals(Result.success(List.of("2022-01-03", "2022-01-04", "2022-01-05", "2022-01-07",
+          "2022-01-10")), series.map(l -> l.map(t -> t._1.toString())));
+      assertEquals(series, Portfolio.valuesOn(lTx, series.getOrThrow().map(Tuple::_1)));
+
+      // starting after the first transactions
+      assertEquals(Result.success(List.of(
+              new Tuple<>(LocalDate.parse("2022-01-07"), new BigDecimal("621.000000")))),
+          Portfolio.valueSeries(lTx, LocalDate.parse("2022-01-06"), LocalDate.parse("2022-01-09")));
+      assertEquals(Result.success(List.list()),
+          Portfolio.valueSeries(lTx, LocalDate.parse("2022-01-11"), LocalDate.parse("2022-01-10")));
+      assertTrue(Portfolio.valueSeries(List.list(), LocalDate.parse("2022-01-01"),
+          LocalDate.parse("2022-01-10")).isEmpty());
+    } finally {
+      Stock.useDefaultPriceSource();
+    }
+  }
+
+  @Test
+  void portfolioFromDataSource() {
+    Stock.usePriceSource(FilePriceSource.priceSource("src/test/resources/prices.csv").getOrThrow());
+    try {
+      List<Transaction> lTx = List.of(
+          tx("2022-01-03", "AAA", 10, "99"),
+          tx("2022-01-05", "BBB", 2, "51"),
+          tx("2022-01-07", "AAA", -5, "105"));
+      DataSource ds = assertSuccess(DataSource.openInMemory()
+          .flatMap(d -> d.insertTransactions(lTx))).getOrThrow();
+
+      // folded straight from the database cursor, the same as from the transactions in memory
+      for (String date : new String[] {"2022-01-05", "2022-01-07", "2022-01-10"}) {
+        LocalDate d = LocalDate.parse(date);
+        assertEquals(Portfolio.valueOn(lTx.filter(tx -> !tx.getDate().isAfter(d)), d),
+            Portfolio.portfolio(ds, List.list(), d).flatMap(pf -> pf.valueOn(d)));
+      }
+      assertEquals(Result.success(new BigDecimal("621.000000")),
+          Portfolio.portfolio(ds, List.list(), LocalDate.parse("2022-01-07"))
+              .flatMap(pf -> pf.valueOn(LocalDate.parse("2022-01-07"))));
+      assertEquals(Result.success(new BigDecimal("520.000000")),
+          Portfolio.portfolio(ds, List.of(Symbol.symbol("AAA")), LocalDate.parse("2022-01-07"))
+              .flatMap(pf -> pf.valueOn(LocalDate.parse("2022-01-07"))));
+      assertSuccess(ds.close());
+    } finally {
+      Stock.useDefaultPriceSource();
+    }
+  }
+
+  // Same property as MoneyTest: valuing positions in micro-units gives exactly the BigDecimal
+  // results, scale included, here for random closes (0 to 8 decimals) and numbers of shares
+  @Test
+  void valueOnLikeBigDecimal(@TempDir Path dir) throws IOException {
+    Random rnd = new Random(17);
+    String[] symbols = {"PA", "PB", "PC"};
+    LocalDate from = LocalDate.parse("2022-01-03");
+    StringBuilder csv = new StringBuilder();
+    for (String symbol : symbols)
+      for (int day = 0; day < 10; day++) {
+        int scale = rnd.nextInt(9);
+        long unscaled = (long) (rnd.nextDouble() * 10_000 * Math.pow(10, scale));
+        csv.append(symbol).append(",").append(from.plusDays(day)).append(",")
+           .append(BigDecimal.valueOf(unscaled, scale).toPlainString()).append("\n");
+      }
+    Path prices = Files.writeString(dir.resolve("prices.csv"), csv);
+
+    Stock.usePriceSource(FilePriceSource.priceSource(prices.toString()).getOrThrow());
+    try {
+      for (int run = 0; run < 1_000; run++) {
+        LocalDate date = from.plusDays(rnd.nextInt(10));
+        List<Transaction> lTx = List.list();
+        BigDecimal expectedOn = BigDecimal.ZERO.setScale(6, RoundingMode.HALF_UP);
+        BigDecimal expectedNow = BigDecimal.ZERO.setScale(6, RoundingMode.HALF_UP);
+        for (String symbol : symbols) {
+          int shares = rnd.nextInt(20_000) - 5_000;
+          if (shares == 0)
+            continue;
+          Stock stock = Stock.stock(symbol, from).getOrThrow();
+          lTx = lTx.append(tx(from.toString(), symbol, shares, "1"));
+          expectedOn = expectedOn.add(stock.historicalPrice(date).getOrThrow()
+              .setScale(6, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(shares)));
+          expectedNow = expectedNow.add(stock.getPrice().multiply(BigDecimal.valueOf(shares)));
+        }
+        if (lTx.isEmpty())
+          continue;
+
+        Portfolio pf = Portfolio.portfolio(lTx, from).getOrThrow();
+        assertEquals(Result.success(expectedOn), pf.valueOn(date), date.toString());
+        assertEquals(expectedNow, pf.currentValue());
+      }
+    } finally {
+      Stock.useDefaultPriceSource();
+    }
+  }
+}
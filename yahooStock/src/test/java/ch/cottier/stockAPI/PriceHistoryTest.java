@@ -0,0 +1,95 @@
+package ch.cottier.stockAPI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+class PriceHistoryTest {
+
+  static Tuple<LocalDate, BigDecimal> quote(String date, String close) {
+    return new Tuple<>(LocalDate.parse(date), new BigDecimal(close));
+  }
+
+  @Test
+  void closeOnOrBefore() {
+    // unsorted, with a gap over the weekend, a missing day and a duplicate day
+    PriceHistory history = PriceHistory.priceHistory(List.of(
+        quote("2022-01-07", "103"),
+        quote("2022-01-03", "100"),
+        quote("2022-01-04", "101"),
+        quote("2022-01-10", "104"),
+        quote("2022-01-04", "101.5")));
+
+    assertEquals(4, history.size());
+    assertEquals(Result.success(LocalDate.parse("2022-01-03")), history.firstDate());
+    assertTrue(history.closeOnOrBefore(LocalDate.parse("2022-01-02")).isEmpty());
+    assertEquals(Result.success(new BigDecimal("100.000000")),
+        history.closeOnOrBefore(LocalDate.parse("2022-01-03")));
+    assertEquals(Result.success(new BigDecimal("101.500000")),
+        history.closeOnOrBefore(LocalDate.parse("2022-01-05")));
+    assertEquals(Result.success(new BigDecimal("103.000000")),
+        history.closeOnOrBefore(LocalDate.parse("2022-01-09")));
+    assertEquals(Result.success(new BigDecimal("104.000000")),
+        history.closeOnOrBefore(LocalDate.parse("2023-01-01")));
+    assertTrue(PriceHistory.empty().closeOnOrBefore(LocalDate.parse("2022-01-03")).isEmpty());
+  }
+
+  @Test
+  void merge() {
+    PriceHistory recent = PriceHistory.priceHistory(List.of(
+        quote("2022-02-01", "110"), quote("2022-02-02", "111")));
+    PriceHistory earlier = PriceHistory.priceHistory(List.of(
+        quote("2022-01-31", "109"), quote("2022-02-01", "110.5")));
+
+    PriceHistory merged = recent.merge(earlier);
+    assertEquals(3, merged.size());
+    assertEquals(Result.success(LocalDate.parse("2022-01-31")), merged.firstDate());
+    assertEquals(Result.success(LocalDate.parse("2022-02-02")), merged.lastDate());
+    assertEquals(Result.success(new BigDecimal("110.500000")),
+        merged.closeOnOrBefore(LocalDate.parse("2022-02-01")));
+    assertEquals(3, recent.merge(PriceHistory.empty()).merge(earlier).size());
+    assertEquals(2, recent.size());
+  }
+
+  @Test
+  void closesInRange() {
+    PriceHistory history = PriceHistory.priceHistory(List.of(
+        quote("2022-01-03", "100"), quote("2022-01-04", "101"), quote("2022-01-07", "103")));
+
+    assertEquals(List.of(quote("2022-01-04", "101.000000"), quote("2022-01-07", "103.000000")),
+        history.closes(LocalDate.parse("2022-01-04"), LocalDate.parse("2022-01-09")));
+    assertEquals(3, history.closes(LocalDate.parse("2021-12-01"), LocalDate.parse("2022-01-07"))
+        .size());
+    assertTrue(history.closes(LocalDate.parse("2022-01-05"), LocalDate.parse("2022-01-06"))
+        .isEmpty());
+    assertTrue(history.closes(LocalDate.parse("2022-01-08"), LocalDate.parse("2022-02-01"))
+        .isEmpty());
+    assertEquals(Result.success(new BigDecimal("103.000000")), history.lastClose());
+    assertTrue(PriceHistory.empty().lastClose().isEmpty());
+  }
+
+  @Test
+  void rangeSharesColumns() {
+    PriceHistory history = PriceHistory.priceHistory(List.of(
+        quote("2022-01-03", "100"), quote("2022-01-04", "101"), quote("2022-01-07", "103")));
+
+    PriceHistory range = history.range(LocalDate.parse("2022-01-04"), LocalDate.parse("2022-01-09"));
+    assertEquals(2, range.size());
+    assertEquals(Result.success(LocalDate.parse("2022-01-04")), range.firstDate());
+    assertTrue(range.closeOnOrBefore(LocalDate.parse("2022-01-03")).isEmpty());
+    assertEquals(Result.success(new BigDecimal("101.000000")),
+        range.closeOnOrBefore(LocalDate.parse("2022-01-06")));
+    assertEquals(history.closes(LocalDate.parse("2022-01-04"), LocalDate.parse("2022-01-09")),
+        range.closes(LocalDate.parse("2000-01-01"), LocalDate.parse("2030-01-01")));
+    assertTrue(history.range(LocalDate.parse("2022-01-05"), LocalDate.parse("2022-01-06"))
+        .isEmpty());
+    assertTrue(history.range(LocalDate.parse("2022-01-08"), LocalDate.parse("2022-01-01"))
+        .isEmpty());
+  }
+}
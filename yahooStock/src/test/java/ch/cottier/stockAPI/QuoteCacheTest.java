@@ -0,0 +1,179 @@
+package ch.cottier.stockAPI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QuoteCacheTest {
+  static Symbol symbol = Symbol.symbol("VTI");
+  static LocalDate d1 = LocalDate.parse("2022-01-03");
+
+  @SuppressWarnings("unused")
+  <T> Result<T> assertSuccess(Result<T> r) {
+    assertTrue(r.isSuccess(), r.toString());
+    return r;
+  }
+
+  static Tuple<LocalDate, LocalDate> range(String from, String to) {
+    return new Tuple<>(LocalDate.parse(from), LocalDate.parse(to));
+  }
+
+  // One quote per day, price equals the day of the month, records each requested range
+  static Function<LocalDate, Function<LocalDate, Result<List<Tuple<LocalDate, BigDecimal>>>>>
+  download(java.util.List<Tuple<LocalDate, LocalDate>> requests) {
+    return from -> to -> {
+      requests.add(new Tuple<>(from, to));
+      List<Tuple<LocalDate, BigDecimal>> quotes = List.list();
+      for (LocalDate d = to; !d.isBefore(from); d = d.minusDays(1))
+        quotes = quotes.prepend(new Tuple<>(d,
+            BigDecimal.valueOf(d.getDayOfMonth()).setScale(6)));
+      return Result.success(quotes);
+    };
+  }
+
+  @Test
+  void missingRanges() {
+    LocalDate from = LocalDate.parse("2022-01-01");
+    LocalDate to = LocalDate.parse("2022-01-31");
+    assertEquals(List.of(range("2022-01-01", "2022-01-31")),
+        QuoteCache.missingRanges(List.list(), from, to));
+
+    List<Tuple<LocalDate, LocalDate>> fetched = List.of(
+        range("2021-12-01", "2022-01-05"),
+        range("2022-01-10", "2022-01-20"),
+        range("2022-01-15", "2022-01-25"));
+    assertEquals(List.of(range("2022-01-06", "2022-01-09"), range("2022-01-26", "2022-01-31")),
+        QuoteCache.missingRanges(fetched, from, to));
+
+    assertEquals(List.list(),
+        QuoteCache.missingRanges(List.of(range("2021-01-01", "2022-12-31")), from, to));
+  }
+
+  @Test
+  void historyOnlyDownloadsMissingRanges() {
+    java.util.List<Tuple<LocalDate, LocalDate>> requests = new ArrayList<>();
+    Result<QuoteCache> rCache = DataSource.openInMemory().map(QuoteCache::quoteCache);
+
+    Result<List<Tuple<LocalDate, BigDecimal>>> res = rCache.flatMap(cache ->
+        cache.history(symbol, d1, d1.plusDays(9), download(requests)));
+    assertSuccess(res).forEach(l -> assertEquals(10, l.size()));
+    assertEquals(1, requests.size());
+
+    // Second run over an overlapping range only needs the days after the first range
+    res = rCache.flatMap(cache ->
+        cache.history(symbol, d1.plusDays(5), d1.plusDays(14), download(requests)));
+    assertSuccess(res).forEach(l -> {
+      assertEquals(10, l.size());
+      assertEquals(d1.plusDays(5), l.head()._1);
+    });
+    assertEquals(2, requests.size());
+    assertEquals(new Tuple<>(d1.plusDays(10), d1.plusDays(14)), requests.get(1));
+
+    // Fully cached
+    res = rCache.flatMap(cache -> cache.history(symbol, d1, d1.plusDays(14), download(requests)));
+    assertSuccess(res).forEach(l -> assertEquals(15, l.size()));
+    assertEquals(2, requests.size());
+
+    assertEquals(Result.success(new BigDecimal("7.000000")),
+        rCache.flatMap(cache -> cache.cachedPrice(symbol, LocalDate.parse("2022-01-07"))));
+    assertTrue(rCache.flatMap(cache -> cache.cachedPrice(symbol, d1.minusDays(1))).isEmpty());
+  }
+
+  @Test
+  void todayIsNeverCached() {
+    java.util.List<Tuple<LocalDate, LocalDate>> requests = new ArrayList<>();
+    Result<QuoteCache> rCache = DataSource.openInMemory().map(QuoteCache::quoteCache);
+    LocalDate today = LocalDate.now();
+
+    rCache.flatMap(cache -> cache.history(symbol, today.minusDays(3), today, download(requests)));
+    Result<List<Tuple<LocalDate, BigDecimal>>> res = rCache.flatMap(cache ->
+        cache.history(symbol, today.minusDays(3), today, download(requests)));
+    assertSuccess(res).forEach(l -> assertEquals(4, l.size()));
+    assertEquals(2, requests.size());
+    // as well as the days still trading in New York
+    LocalDate lastClosedDay = QuoteCache.lastClosedDay(Clock.systemDefaultZone());
+    assertEquals(new Tuple<>(lastClosedDay.plusDays(1), today), requests.get(1));
+  }
+
+  @Test
+  void rangesAreCoalesced() {
+    DataSource ds = assertSuccess(DataSource.openInMemory()).getOrThrow();
+    java.util.List<Tuple<LocalDate, LocalDate>> requests = new ArrayList<>();
+    QuoteCache cache = QuoteCache.quoteCache(ds);
+    for (int day = 0; day < 10; day++)
+      assertSuccess(cache.history(symbol, d1.plusDays(day), d1.plusDays(day), download(requests)));
+    assertSuccess(cache.history(symbol, d1.minusDays(3), d1.plusDays(12), download(requests)));
+
+    // adjacent and overlapping fetches leave a single row
+    assertEquals(Result.success(List.of(range("2021-12-31", "2022-01-15"))),
+        ds.getQuoteRanges(symbol).map(Tuple::_1));
+
+    // a gap stays, filling it merges both sides
+    assertSuccess(ds.insertQuotes(symbol, d1.plusDays(20), d1.plusDays(25), List.list()));
+    assertEquals(Result.success(List.of(range("2021-12-31", "2022-01-15"),
+            range("2022-01-23", "2022-01-28"))),
+        ds.getQuoteRanges(symbol).map(Tuple::_1));
+    assertSuccess(ds.insertQuotes(symbol, d1.plusDays(13), d1.plusDays(19), List.list()));
+    assertEquals(Result.success(List.of(range("2021-12-31", "2022-01-28"))),
+        ds.getQuoteRanges(symbol).map(Tuple::_1));
+    assertEquals(Result.success(List.of(range("2022-01-01", "2022-01-09"))),
+        ds.getQuoteRanges(Symbol.symbol("VXUS")).map(t -> DataSource.coalesce(List.of(
+            range("2022-01-05", "2022-01-09"), range("2022-01-01", "2022-01-03"),
+            range("2022-01-02", "2022-01-04"), range("2022-01-06", "2022-01-07")))));
+    assertSuccess(ds.close());
+  }
+
+  @Test
+  void failedInsertKeepsRanges(@TempDir Path dir) throws SQLException {
+    String path = dir.resolve("cache").toString();
+    DataSource ds = assertSuccess(DataSource.open(path)).getOrThrow();
+    assertSuccess(ds.insertQuotes(symbol, d1, d1.plusDays(9), List.list()));
+
+    // storing the merged range fails after the old ranges were deleted in the same transaction
+    try (Connection conn = DriverManager.getConnection("jdbc:h2:" + path);
+        Statement statement = conn.createStatement()) {
+      statement.execute("ALTER TABLE quoteRanges ADD CONSTRAINT shortRanges"
+          + " CHECK (toDate < DATE '2022-02-01')");
+    }
+    Result<DataSource> failed = ds.insertQuotes(symbol, d1.plusDays(10), d1.plusDays(40),
+        List.of(new Tuple<>(d1.plusDays(10), BigDecimal.ONE)));
+    assertTrue(failed.isFailure(), failed.toString());
+    assertEquals(Result.success(List.of(range("2022-01-03", "2022-01-12"))),
+        ds.getQuoteRanges(symbol).map(Tuple::_1));
+    assertEquals(Result.success(List.list()),
+        ds.getQuotes(symbol, d1.plusDays(10), d1.plusDays(10)).map(Tuple::_1));
+    assertSuccess(ds.close());
+  }
+
+  @Test
+  void lastClosedDayInExchangeZone() {
+    // Tokyo is already on the 4th, while New York still trades on the 3rd
+    Instant instant = Instant.parse("2022-01-03T20:00:00Z");
+    assertEquals(LocalDate.parse("2022-01-02"),
+        QuoteCache.lastClosedDay(Clock.fixed(instant, ZoneId.of("Asia/Tokyo"))));
+    assertEquals(LocalDate.parse("2022-01-02"),
+        QuoteCache.lastClosedDay(Clock.fixed(instant, ZoneId.of("America/New_York"))));
+    // nor is the local today stored when the system is behind New York
+    assertEquals(LocalDate.parse("2022-01-02"), QuoteCache.lastClosedDay(
+        Clock.fixed(Instant.parse("2022-01-04T02:00:00Z"), ZoneId.of("Pacific/Honolulu"))));
+    assertEquals(LocalDate.parse("2022-01-03"), QuoteCache.lastClosedDay(
+        Clock.fixed(Instant.parse("2022-01-04T10:00:00Z"), ZoneId.of("Europe/Zurich"))));
+  }
+}
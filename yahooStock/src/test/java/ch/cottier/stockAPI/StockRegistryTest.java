@@ -0,0 +1,156 @@
+package ch.cottier.stockAPI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.cottier.functionalUtilities.List;
+import ch.cottier.functionalUtilities.Result;
+import ch.cottier.functionalUtilities.Tuple;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StockRegistryTest {
+  CountingSource source;
+
+  // Counts the requests reaching the file source
+  static class CountingSource implements PriceSource {
+    final PriceSource source;
+    final AtomicInteger quotes = new AtomicInteger();
+    final AtomicInteger histories = new AtomicInteger();
+
+    CountingSource(PriceSource source) {
+      this.source = source;
+    }
+
+    @Override
+    public Result<Tuple<Symbol, BigDecimal>> quote(Symbol symbol) {
+      quotes.incrementAndGet();
+      return source.quote(symbol);
+    }
+
+    @Override
+    public Result<List<Tuple<LocalDate, BigDecimal>>> history(Symbol symbol, LocalDate from,
+        LocalDate to) {
+      histories.incrementAndGet();
+      return source.history(symbol, from, to);
+    }
+  }
+
+  @BeforeEach
+  void setup() {
+    source = new CountingSource(
+        FilePriceSource.priceSource("src/test/resources/prices.csv").getOrThrow());
+    Stock.usePriceSource(source);
+  }
+
+  @AfterEach
+  void reset() {
+    Stock.useDefaultPriceSource();
+  }
+
+  @Test
+  void sameInstancePerSymbol() {
+    Stock stock = Stock.stock("AAA", LocalDate.parse("2022-01-05")).getOrThrow();
+    assertSame(stock, Stock.stock("AAA", LocalDate.parse("2022-01-07")).getOrThrow());
+    assertSame(stock, Stock.stock("AAA").getOrThrow());
+    assertEquals(1, source.quotes.get());
+    int histories = source.histories.get();
+
+    // earlier date: only the history is extended, the price isn't fetched again
+    Stock extended = Stock.stock("AAA", LocalDate.parse("2022-01-03")).getOrThrow();
+    assertEquals(LocalDate.parse("2022-01-03"), extended.getEarliestHistoricalDate());
+    assertEquals(Result.success(new BigDecimal("100.000000")),
+        extended.historicalPrice(LocalDate.parse("2022-01-03")));
+    assertEquals(1, source.quotes.get());
+    assertTrue(source.histories.get() > histories);
+    assertSame(extended, Stock.stock("AAA", LocalDate.parse("2022-01-04")).getOrThrow());
+
+    // only BBB is missing
+    var stocks = Stock.stocks(List.of("AAA", "BBB")).getOrThrow();
+    assertSame(extended, stocks.get(Symbol.symbol("AAA")).getOrThrow());
+    assertEquals(2, source.quotes.get());
+
+    Stock.clearRegistry();
+    Stock.stock("AAA").getOrThrow();
+    assertEquals(3, source.quotes.get());
+  }
+
+  @Test
+  void concurrentRequestsFetchOnce() {
+    java.util.List<CompletableFuture<Result<Stock>>> futures = new java.util.ArrayList<>();
+    for (int i = 0; i < 8; i++)
+      futures.add(CompletableFuture.supplyAsync(() ->
+          Stock.stock(Symbol.symbol("BBB"), LocalDate.parse("2022-01-05"))));
+
+    Stock first = futures.get(0).join().getOrThrow();
+    futures.forEach(f -> assertSame(first, f.join().getOrThrow()));
+    assertEquals(1, source.quotes.get());
+  }
+
+  @Test
+  void failuresAreNotRegistered() {
+    assertTrue(Stock.stock("CCC").isFailure());
+    assertTrue(Stock.stock("CCC").isFailure());
+    assertEquals(2, source.quotes.get());
+  }
+
+  @Test
+  void updatePriceKeepsLongerHistory() {
+    Stock recent = Stock.stock("AAA", LocalDate.parse("2022-01-05")).getOrThrow();
+    Stock extended = Stock.stock("AAA", LocalDate.parse("2022-01-03")).getOrThrow();
+    assertEquals(LocalDate.parse("2022-01-03"), extended.getEarliestHistoricalDate());
+
+    // updating the older instance doesn't forget the history the registered one has
+    Stock updated = recent.updatePrice().getOrThrow();
+    assertEquals(LocalDate.parse("2022-01-03"), updated.getEarliestHistoricalDate());
+    assertEquals(Result.success(new BigDecimal("100.000000")),
+        updated.historicalPrice(LocalDate.parse("2022-01-03")));
+    assertSame(updated, Stock.stock("AAA").getOrThrow());
+  }
+
+  @Test
+  void hungFetchOnlyDelaysOthers() {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger started = new AtomicInteger();
+    Stock.usePriceSource(new CountingSource(source) {
+      @Override
+      public Result<Tuple<Symbol, BigDecimal>> quote(Symbol symbol) {
+        if (started.getAndIncrement() == 0)
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        return super.quote(symbol);
+      }
+    });
+    Parser.useFetchPolicy(FetchPolicy.fetchPolicy(1, Duration.ofMillis(100)));
+    try {
+      CompletableFuture<Result<Stock>> hung = CompletableFuture.supplyAsync(() ->
+          Stock.stock("AAA"));
+      while (started.get() == 0)
+        Thread.onSpinWait();
+
+      // waits for the hung request no longer than the timeout, then fetches on its own
+      Stock stock = assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+          Stock.stock("AAA").getOrThrow());
+      release.countDown();
+
+      // the hung request started before there was a stock, so it doesn't replace it
+      assertSame(stock, hung.join().getOrThrow());
+      assertSame(stock, Stock.stock("AAA").getOrThrow());
+    } finally {
+      release.countDown();
+      Parser.useFetchPolicy(FetchPolicy.DEFAULT);
+    }
+  }
+}
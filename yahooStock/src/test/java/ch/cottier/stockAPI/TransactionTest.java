@@ -56,4 +56,17 @@ class TransactionTest {
         .put(Symbol.symbol("VTI"), new BigDecimal("43.109451"));
     avgPrice.forEach(m -> assertEquals(expMap, m));
   }
-}
\ No newline at end of file
+
+  @Test
+  void weightedAvgPriceFromCursor() {
+    Result<Map<Symbol, BigDecimal>> avgPrice = inputDataIntoDS()
+        .flatMap(ds -> ds.foldTransactions(List.list(), Result.empty(), Result.empty(),
+            DataSource.DEFAULT_FETCH_SIZE, Map.<Symbol, Tuple<BigDecimal, Integer>>empty(),
+            totals -> tx -> Transaction.addCost(totals, tx)))
+        .map(Transaction::weightedAvgPrice);
+    Result<Map<Symbol, BigDecimal>> expAvgPrice = prepDataInDS()
+        .map(Tuple::_1)
+        .map(Transaction::weightedAvgPrice);
+    assertEquals(assertSuccess(expAvgPrice), avgPrice);
+  }
+}